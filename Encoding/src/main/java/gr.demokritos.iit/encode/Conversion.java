@@ -18,12 +18,20 @@ package gr.demokritos.iit.encode;
 
 import org.apache.commons.cli.*;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.Scanner;
 
-import gr.demokritos.iit.loadinput.CSVRead;
+import gr.demokritos.iit.loadinput.CSVStream;
 
 /**
  *
@@ -35,6 +43,11 @@ import gr.demokritos.iit.loadinput.CSVRead;
  * <br>Splitting space [-100nm,100nm] to a number of even subspaces (<i>-z</i>) and  labelling them with Latin letters.
  * <br>Numbers are thought to measure nanometres*10^Scale (<i>-s</i>)"</p>
  *
+ * <p>Surfaces are read from the input file and encoded one at a time, so memory does not grow
+ * with the number of surfaces in the file. Zones are defined by the first surface.
+ * <br>Surfaces may be encoded on several threads (<i>-threads</i>), each with its own encoder;
+ * they are printed in input order, as in a single-threaded run.</p>
+ *
  * @author  Antonia Tsili
  * @version 1.0
  * @since   2018-08
@@ -97,6 +110,10 @@ public class Conversion {
         output.setRequired(false);
         options.addOption(output);
 
+        Option threads = new Option("threads", "threads", true, "number of threads encoding surfaces (default 1)");
+        threads.setRequired(false);
+        options.addOption(threads);
+
         CommandLineParser parser = new DefaultParser();
         HelpFormatter formatter = new HelpFormatter();
         CommandLine cmd = null;
@@ -128,85 +145,124 @@ public class Conversion {
 
         method = Integer.parseInt(cmd.getOptionValue("m")); // code of preferred method of encoding
 
+        int n_threads = cmd.hasOption("threads") ? Integer.parseInt(cmd.getOptionValue("threads")) : 1;
+        if( n_threads<1 ) {
+            System.out.println("Number of threads must be positive");
+            System.exit(1);
+        }
+        if( n_threads>1 ) {
+            try (CSVStream surfaces = new CSVStream(csvFile,Scale)) {
+                encodeParallel(surfaces, method, n_threads, out_flag==1 ? out_filename : null);
+            }
+            System.out.println();
+            return;
+        }
+
+        // surfaces are read one at a time and encoded as they are read
+        // zones are those of the first surface
         Encoder encoder = null;
-        CSVRead reader = new CSVRead(csvFile,Scale);
-        if( method==6 ) {
-            encoder = new MinMaxRMSEncoder(SpacesNo, reader.SurfTable.get(0));
-            for (int i=1; i<reader.SurfTable.size(); i++) { // for all surfaces in file
+        try (CSVStream surfaces = new CSVStream(csvFile,Scale)) {
+            for (Surface surface : surfaces) { // for all surfaces in file
+                if( encoder==null ) {
+                    encoder = newEncoder(method, surface);
+                } else {
+                    encoder.changeSurface(surface); // next surface to encode
+                }
 
-                //change values from heights to distance from c (rms)
-                encoder.changeHeights(Scale);
+                if( method==6 ) { //change values from heights to distance from c (rms)
+                    encoder.changeHeights(Scale);
+                }
                 // encode in text and print surface
                 encoder.InText();
                 if( out_flag==0 ){ // standard output
                     encoder.printText();
                 } else { // file
                     try{
-                        FileWriter writer = new FileWriter(out_filename,true);
+                        FileOutputStream writer = new FileOutputStream(out_filename,true);
                         encoder.printText(writer);
                     } catch (IOException ex){
                         System.out.println("There was a problem creating/writing to the file");
                         ex.printStackTrace();
                     }
                 }
-
-                encoder.changeSurface(reader.SurfTable.get(i)); // next surface to encode
-            }
-            // print last surface
-            encoder.changeHeights(Scale);
-            encoder.InText();
-            if( out_flag==0 ){ // standard output
-                encoder.printText();
-            } else { // file
-                try{
-                    FileWriter writer = new FileWriter(out_filename,true);
-                    encoder.printText(writer);
-                } catch (IOException ex){
-                    System.out.println("There was a problem creating/writing to the file");
-                    ex.printStackTrace();
-                }
             }
+        }
 
-            System.out.println();
-        } else {
-            if (method == 1)
-                encoder = new SimpleEncoder(SpacesNo, reader.SurfTable.get(0));
-            else if (method == 4)
-                encoder = new MinMaxEncoder(SpacesNo, reader.SurfTable.get(0));
-            for (int i = 1; i < reader.SurfTable.size(); i++) { // for all surfaces in file
+        System.out.println();
+    }
 
-                // encode in text and print surface
-                encoder.InText();
-                if (out_flag == 0) { // standard output
-                    encoder.printText();
-                } else { // file
+    /**
+     * <p>Encode surfaces on several threads, each with its own encoder, and print them in input order.
+     * <br>Surfaces are read on the calling thread while earlier ones are encoded; at most two per
+     * thread are in progress or waiting to be printed, so memory stays bounded. Every encoder
+     * is made from the first surface, so zones are those of the first surface as in a single-threaded
+     * run, and the output is the same.</p>
+     *
+     * @param surfaces      Surfaces to encode
+     * @param method        Code of method of encoding
+     * @param n_threads     Number of threads encoding surfaces
+     * @param out_filename  Output file to append to (null for standard output)
+     * @throws IOException  If output file cannot be opened
+     */
+    static void encodeParallel(CSVStream surfaces, int method, int n_threads, String out_filename) throws IOException {
+        if( !surfaces.hasNext() ) {
+            return;
+        }
+        Surface first = surfaces.next();
+        ThreadLocal<Encoder> encoders = ThreadLocal.withInitial(() -> newEncoder(method, first)); // encoders copy the surface they are made from
+        ExecutorService pool = Executors.newFixedThreadPool(n_threads);
+        ArrayDeque<Future<byte[]>> pending = new ArrayDeque<>(); // reorder buffer, in input order
+        OutputStream out = out_filename==null ? System.out : new BufferedOutputStream(new FileOutputStream(out_filename,true), 1 << 16);
+        try {
+            Surface surface = new Surface(first); // first surface stays unchanged for new encoders
+            while( surface!=null ) {
+                Surface S = surface;
+                pending.addLast(pool.submit(() -> {
+                    Encoder encoder = encoders.get();
+                    encoder.changeSurface(S);
+                    if( method==6 ) { //change values from heights to distance from c (rms)
+                        encoder.changeHeights(Scale);
+                    }
+                    encoder.InText();
+                    return encoder.toBytes(out_filename!=null);
+                }));
+                surface = surfaces.hasNext() ? surfaces.next() : null;
+
+                while( pending.size()>=2*n_threads || (surface==null && !pending.isEmpty()) ) { // print oldest
+                    byte[] text = pending.removeFirst().get();
                     try {
-                        FileWriter writer = new FileWriter(out_filename, true);
-                        encoder.printText(writer);
+                        out.write(text);
                     } catch (IOException ex) {
                         System.out.println("There was a problem creating/writing to the file");
                         ex.printStackTrace();
                     }
                 }
-
-                encoder.changeSurface(reader.SurfTable.get(i)); // next surface to encode
             }
-            // print last surface
-            encoder.InText();
-            if (out_flag == 0) { // standard output
-                encoder.printText();
-            } else { // file
-                try {
-                    FileWriter writer = new FileWriter(out_filename, true);
-                    encoder.printText(writer);
-                } catch (IOException ex) {
-                    System.out.println("There was a problem creating/writing to the file");
-                    ex.printStackTrace();
-                }
-            }
-
-            System.out.println();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            if( e.getCause() instanceof RuntimeException ) throw (RuntimeException) e.getCause();
+            if( e.getCause() instanceof Error ) throw (Error) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+            if( out_filename==null ) out.flush();
+            else out.close();
         }
+    }
 
+    /**
+     * @param method        Code of method of encoding
+     * @param surface       First surface, whose heights define the zones
+     * @return              Encoder of given method
+     */
+    static Encoder newEncoder(int method, Surface surface) {
+        if( method==1 )
+            return new SimpleEncoder(SpacesNo, surface);
+        if( method==4 )
+            return new MinMaxEncoder(SpacesNo, surface);
+        if( method==6 )
+            return new MinMaxRMSEncoder(SpacesNo, surface);
+        throw new IllegalArgumentException("Unknown method of encoding: " + method);
     }
 }
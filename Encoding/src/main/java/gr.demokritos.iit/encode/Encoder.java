@@ -18,13 +18,16 @@ package gr.demokritos.iit.encode;
 
 import gr.demokritos.iit.jinsect.documentModel.representations.DocumentNGramGraph;
 import javafx.util.Pair;
-import java.io.FileWriter;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.util.Iterator;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.Vector;
 
 //import gr.demokritos.iit.utils.BinaryTree;
-import gr.demokritos.iit.utils.ContinuousSplitBT;
+import gr.demokritos.iit.utils.ContinuousSplitSearch;
 import gr.demokritos.iit.utils.TwoDirectSplitBT;
 import gr.demokritos.iit.utils.Linspace;
 
@@ -35,6 +38,10 @@ import gr.demokritos.iit.utils.Linspace;
  * using a particular pattern of symbols.
  * Each text is matched to one area of (nano-)surface.</p>
  *
+ * <p>An encoder holds no static state: its table of zones and their search are built on
+ * construction and only read afterwards, while the surface and text it works on are its own.
+ * Encoders may therefore run on several threads at once, one encoder per thread.</p>
+ *
  */
 abstract class Encoder {
     /**
@@ -42,16 +49,22 @@ abstract class Encoder {
      */
     Surface S;
     /**
-     * Each pair contains the point's index (number/position) and the matched character
+     * Matched character of each point, one byte per point in row-major order
+     * (rows of N points), reused across surfaces
      */
-    Vector<Pair<Integer,Character>> Text;
+    byte[] Text;
     /**
      * Each pair matches a letter to space ( lowest_pair_value,highest_pair_value ] for positive
      * or [ lowest_pair_value,highest_pair_value ) for negative numbers. Zero is included in [ 0,value ]
      */
-    Vector<Pair<Character,Double>> STable;
+    final Vector<Pair<Character,Double>> STable;
 
-    Encoder(int spacesNo, Surface surface) {}
+    /**
+     * @param STable    Table of zones' boundaries matched to characters
+     */
+    Encoder(Vector<Pair<Character,Double>> STable) {
+        this.STable = STable;
+    }
 
     /**
      * <p>Secondary function to change surface member</p>
@@ -60,7 +73,8 @@ abstract class Encoder {
      */
     void changeSurface(Surface S) {
         this.S = S;
-        this.Text.clear();
+        if( Text.length<S.TotalElementNo )
+            this.Text = new byte[S.TotalElementNo];
     }
 
     /**
@@ -72,44 +86,70 @@ abstract class Encoder {
      * <p>Function to produce output texts to standard output</p>
      */
     void printText() {
-        Iterator it = Text.iterator();
-
-        for (int i=1; i<=S.TotalElementNo; i++) {
-            Pair<Integer,Character> p = (Pair<Integer, Character>) it.next();
-            System.out.print(p.getValue());
-            if( i>=S.N && i%(S.N)==0 ) { // reached end of side: N x d + 0 = i
-                System.out.println();
-            }
+        try {
+            BufferedOutputStream out = new BufferedOutputStream(System.out, 1 << 16);
+            writeRows(out);
+            out.write('\n');
+            out.flush();
+        } catch (IOException ex) {
+            System.out.println("There was a problem writing to standard output");
         }
-        System.out.println();
     }
 
     /**
-     * <p>Function to produce output texts to given output file</p>
+     * <p>Function to produce output texts to given output stream, which is closed afterwards</p>
      *
-     * @param writer        File writer
+     * @param stream        Output stream, such as a file opened for appending
      * @throws IOException
-     * @see java.io.FileWriter
+     * @see java.io.FileOutputStream
      */
-    void printText(FileWriter writer) throws IOException {
-        StringBuilder sb = new StringBuilder();
-        Iterator it = Text.iterator();
+    void printText(OutputStream stream) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(stream, 1 << 16)) {
+            out.write(header());
+            writeRows(out);
+            out.write('\n');
+        }
+    }
+
+    /**
+     * <p>Output text of the surface, as printed to a file (with parameters) or to standard output</p>
+     *
+     * @param withHeader    Whether the parameters come first, as in files
+     * @return              Text as bytes
+     */
+    byte[] toBytes(boolean withHeader) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(S.TotalElementNo + S.TotalElementNo/S.N + 128);
+        try {
+            if( withHeader ) out.write(header());
+            writeRows(out);
+        } catch (IOException ex) { // not thrown by byte array
+            throw new UncheckedIOException(ex);
+        }
+        out.write('\n');
+        return out.toByteArray();
+    }
 
+    /**
+     * @return      First line of text in files: parameters as &lt;param_name&gt;:&lt;param_value&gt;
+     */
+    private byte[] header() {
+        StringBuilder sb = new StringBuilder();
         sb.append("rms:").append(String.valueOf((S.rms))); // printing parameters in first column as: <param_name>:<param_value>
         sb.append(":clx:").append(String.valueOf(S.clx));
         sb.append(":cly:").append(String.valueOf(S.cly));
         sb.append(":N:").append(String.valueOf(S.N));
         sb.append('\n');
-        for (int i=1; i<=S.TotalElementNo; i++) {
-            Pair<Integer,Character> p = (Pair<Integer, Character>) it.next();
-            sb.append(p.getValue());
-            if( i>=S.N && i%(S.N)==0 ) { // reached end of side: N x d + 0 = i
-                sb.append('\n');
-            }
+        return sb.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * <p>Write characters of all points, a line per row of N points</p>
+     */
+    private void writeRows(OutputStream out) throws IOException {
+        for (int i=0; i<S.TotalElementNo; i+=S.N) {
+            out.write(Text, i, Math.min(S.N, S.TotalElementNo-i));
+            out.write('\n');
         }
-        sb.append("\n");
-        writer.append(sb.toString());
-        writer.close();
     }
 
     /**
@@ -149,86 +189,161 @@ abstract class Encoder {
  */
 class SimpleEncoder extends Encoder {
 
+    /**
+     * Boundaries of the equal-width zones, from -100 to 100
+     */
+    final double[] bounds;
+    /**
+     * Number of zones on each side of zero
+     */
+    final int half;
+    /**
+     * Width of a zone
+     */
+    final double width;
+
     /**
      * @param spacesNo  Number of spaces to split into
      * @param surface   The surface instance whose heights are to to convert
      */
     SimpleEncoder(int spacesNo, Surface surface) {
-        super(spacesNo,surface);
-        Linspace lin = new Linspace(-100,100,spacesNo+1);
-        double[] bounds = lin.op(); // find boundaries of zones
-
-        STable = new Vector<>(spacesNo+1);
+        this(zoneBounds(spacesNo), surface);
+    }
 
-        if( spacesNo%2 == 0 ){ // use both capital and small letters
-            // small letters correspond to negative values
-            int Index = 0;
-            char A = (char) (97 + spacesNo/2-1); // begin from the last small character
-            Double val;
+    /**
+     * @param bounds    Boundaries of the zones
+     * @param surface   The surface instance whose heights are to to convert
+     */
+    private SimpleEncoder(double[] bounds, Surface surface) {
+        super(table(bounds));
+        int spacesNo = bounds.length-1;
+        this.bounds = bounds;
+        half = spacesNo/2;
+        width = (bounds[spacesNo]-bounds[0]) / spacesNo;
 
-            for (; Index < spacesNo/2 ; Index++) {
-                val = bounds[Index];
-                Pair p = new Pair(A,val);
-                STable.addElement(p);
-                A--;
-            }
-            STable.addElement(new Pair('A',new Double(0)));
-            Index = spacesNo/2+1;
-            A = 65;
-            for (; Index<spacesNo+1; Index++) {
-                val = bounds[Index];
-                Pair p = new Pair(A, val);
-                STable.addElement(p);
-                A++;
-            }
-        }
         S = new Surface(surface);
-        Text = new Vector<>(S.TotalElementNo); // we have to build this
+        Text = new byte[S.TotalElementNo]; // we have to build this
 
     }
 
     /**
-     * <p>Building a tree out of pairs with characters and corresponding range boundaries</p>
+     * @param spacesNo  Number of spaces to split into
+     * @return          Boundaries of the equal-width zones
      */
-    void InText() {
-        // building a tree out of pairs <Character,BoundOfSpace>
-        TwoDirectSplitBT tree = new TwoDirectSplitBT();
-        tree.init(tree.sortedArrayToBST(STable, 0, STable.size() - 1, null));
-
+    private static double[] zoneBounds(int spacesNo) {
+        if( spacesNo%2 != 0 )
+            throw new IllegalArgumentException("Simple encoding needs an even number of spaces: " + spacesNo);
+        Linspace lin = new Linspace(-100,100,spacesNo+1);
+        return lin.op(); // find boundaries of zones
+    }
 
-        for (Pair<Integer,Double> point: S.points) {
-            Double height = point.getValue();
+    /**
+     * @param bounds    Boundaries of the zones, an even number of spaces
+     * @return          Table of boundaries matched to characters
+     */
+    private static Vector<Pair<Character,Double>> table(double[] bounds) {
+        int spacesNo = bounds.length-1;
+        Vector<Pair<Character,Double>> STable = new Vector<>(spacesNo+1);
+
+        // use both capital and small letters
+        // small letters correspond to negative values
+        int Index = 0;
+        char A = (char) (97 + spacesNo/2-1); // begin from the last small character
+        Double val;
+
+        for (; Index < spacesNo/2 ; Index++) {
+            val = bounds[Index];
+            Pair p = new Pair(A,val);
+            STable.addElement(p);
+            A--;
+        }
+        STable.addElement(new Pair('A',new Double(0)));
+        Index = spacesNo/2+1;
+        A = 65;
+        for (; Index<spacesNo+1; Index++) {
+            val = bounds[Index];
+            Pair p = new Pair(A, val);
+            STable.addElement(p);
+            A++;
+        }
+        return STable;
+    }
 
-            // building character array
+    /**
+     * <p>Creating character array, finding each zone by its index instead of searching a tree</p>
+     */
+    void InText() {
+        for (int i=0; i<S.TotalElementNo; i++) {
             // one character per surface point
-            Character ch = tree.search(new Double(height)); // finding corresponding character
-            Text.addElement(new Pair(point.getKey(),ch));
+            Text[i] = (byte) symbol(S.get_height(i));
+        }
+    }
 
+    /**
+     * <p>Character of the zone a height belongs to, with the same boundaries as a search of
+     * {@link TwoDirectSplitBT} over the table: (lowest,highest] for positive heights and zero,
+     * [lowest,highest) for negative ones (and -0.0), 'A' outside [-100,100] and for NaN.
+     * <br>The zone index is computed from the zone width, then moved by at most a step
+     * against the boundaries themselves, which Linspace does not space exactly evenly.</p>
+     *
+     * @param height    Height of point
+     * @return          Matched character
+     */
+    char symbol(double height) {
+        if( Double.compare(height,0)>=0 ) { // first upper bound not below height, among bounds[half+1..2*half]
+            if( height!=height ) return 'A';
+            double x = Math.ceil((height-bounds[0]) / width);
+            int k = (int) Math.max(half+1, Math.min(2*half, x));
+            while( k>half+1 && Double.compare(height, bounds[k-1])<=0 ) k--;
+            while( k<=2*half && Double.compare(height, bounds[k])>0 ) k++;
+            return k>2*half ? 'A' : (char) ('A' + k-half-1);
+        } else { // last lower bound not above height, among bounds[0..half-1]
+            double x = Math.floor((height-bounds[0]) / width);
+            int k = (int) Math.max(0, Math.min(half-1, x));
+            while( k<half-1 && Double.compare(height, bounds[k+1])>=0 ) k++;
+            while( k>=0 && Double.compare(height, bounds[k])<0 ) k--;
+            return k<0 ? 'A' : (char) ('a' + half-1-k);
         }
     }
 }
 
 /**
  *
- * <p>This type of Surface class carries the corresponding heights in sorted order.</p>
+ * <p>This type of Surface class carries the corresponding heights at given ranks of sorted order.</p>
+ * <p>Heights stay in place; the heights of the ranks are selected without sorting all of them.</p>
  *
  */
 class MinMaxSurf extends Surface {
     /**
-     * Minimum height of vector of pairs
+     * Minimum height
      */
     double minH;
     /**
-     * Max height of vector of pairs
+     * Max height
      */
     double maxH;
 
-    MinMaxSurf(Surface S) {
+    /**
+     * @param S         Surface instance
+     * @param ranks     Ranks of heights needed besides the minimum and the maximum
+     */
+    MinMaxSurf(Surface S, int[] ranks) {
         super(S);
-        sort_heights(); // sort heights of surface
+        select_heights(withEnds(ranks, TotalElementNo)); // heights of surface at these ranks
+
+        this.minH = get_sorted(0); // get minimum and max height
+        this.maxH = get_sorted(TotalElementNo-1);
+    }
 
-        this.minH = points.get(0).getValue(); // get minimum and max height of vector of pairs
-        this.maxH = points.get(TotalElementNo-1).getValue(); // pairs of <index,height>
+    /**
+     * @return      Ranks with those of the minimum and the maximum of total points added
+     */
+    static int[] withEnds(int[] ranks, int total) {
+        int[] r = new int[ranks.length+2];
+        System.arraycopy(ranks, 0, r, 0, ranks.length);
+        r[ranks.length] = 0;
+        r[ranks.length+1] = total-1;
+        return r;
     }
 }
 
@@ -240,19 +355,23 @@ class MinMaxEncoder extends Encoder {
     /**
      * Instance of MinMaxSurf with sorted heights
      */
-    MinMaxSurf SortedSurf;
+    final MinMaxSurf SortedSurf;
     /**
      * Average number of points of surface per zone
      */
-    int AvgElementNo;
+    final int AvgElementNo;
     /**
      * Remaining number of points
      */
-    int Remain;
+    final int Remain;
     /**
      * After splitting the range into zones, we keep track of each zone's boundaries
      */
-    double[] bounds;
+    final double[] bounds;
+    /**
+     * Search of zones' boundaries matched to characters
+     */
+    final ContinuousSplitSearch zones;
 
     /**
      * <p>At first, this function creates structure of zones' boundaries beginning from minH and maxH.
@@ -263,18 +382,58 @@ class MinMaxEncoder extends Encoder {
      * @param S             Instance of class Surface
      */
     MinMaxEncoder(int spacesNo, Surface S) {
-        super(spacesNo,S);
+        this(spacesNo, S, null);
+    }
+
+    /**
+     * <p>As above, searching the zones with a given search, such as one shared with encoders of the same zones</p>
+     *
+     * @param spacesNo      Number of spaces to split [minH,maxH] into
+     * @param S             Instance of class Surface
+     * @param zones         Search of the zones' boundaries of S (null to build one)
+     */
+    MinMaxEncoder(int spacesNo, Surface S, ContinuousSplitSearch zones) {
+        this(new MinMaxSurf(S, boundaryRanks(spacesNo, S.get_totalNo())), spacesNo, S, zones);
+    }
+
+    private MinMaxEncoder(MinMaxSurf SortedSurf, int spacesNo, Surface S, ContinuousSplitSearch zones) {
+        this(SortedSurf, zoneBounds(spacesNo, SortedSurf, SortedSurf.minH, SortedSurf.maxH), S, zones);
+    }
+
+    private MinMaxEncoder(MinMaxSurf SortedSurf, double[] bounds, Surface S, ContinuousSplitSearch zones) {
+        super(table(bounds));
+        int spacesNo = bounds.length-1;
 
         AvgElementNo = S.get_totalNo() / spacesNo; // initialize average size of space
         Remain = S.get_totalNo() % spacesNo;
-        SortedSurf = new MinMaxSurf(S);
+        this.SortedSurf = SortedSurf;
+        this.bounds = bounds;
+        this.zones = zones!=null ? zones : search(bounds);
+
+        this.S = new Surface(S);
+        this.Text = new byte[S.TotalElementNo]; // we have to build this
+
+    }
+
+    /**
+     * <p>Zones' boundaries beginning from the minimum and the maximum of sorted values,
+     * splitting spaces by counting elements</p>
+     *
+     * @param spacesNo      Number of spaces to split [min,max] into
+     * @param SortedSurf    Surface with its values at the ranks of {@link #boundaryRanks(int, int)}
+     * @param min           Lowest value
+     * @param max           Highest value
+     * @return              Boundaries in ascending order
+     */
+    static double[] zoneBounds(int spacesNo, Surface SortedSurf, double min, double max) {
+        int AvgElementNo = SortedSurf.get_totalNo() / spacesNo; // average size of space
 
-        // creating array of zones' boundaries beginning from minH and maxH
+        // creating array of zones' boundaries beginning from min and max
         // initializing array on both ends
         // assuming heights tend to accumulate around zero
-        bounds = new double[spacesNo+1]; // initialize array of zones' boundaries
-        double beginLow = SortedSurf.minH; // beginning from lowest height
-        double beginHigh = SortedSurf.maxH; // beginning from highest height
+        double[] bounds = new double[spacesNo+1]; // initialize array of zones' boundaries
+        double beginLow = min; // beginning from lowest height
+        double beginHigh = max; // beginning from highest height
 
         // splitting spaces by counting elements
         // boundaries are mean value of space [last_zone_height,next_height]
@@ -289,14 +448,14 @@ class MinMaxEncoder extends Encoder {
             if( flag>0 ) { // new lower zone
                 bounds[Index] = beginLow;
                 // find mean height between point.height[CountElems] and point.height[CountElems+1]
-                double sumPrevNext = SortedSurf.points.get(CountElems).getValue() + SortedSurf.points.get(CountElems+1).getValue();
+                double sumPrevNext = SortedSurf.get_sorted(CountElems) + SortedSurf.get_sorted(CountElems+1);
                 beginLow = sumPrevNext / (double) 2;
                 if( Index==spacesNo/2 ) break; // no actions needed when half array index reached
 
             } else { // new upper zone
                 bounds[spacesNo-Index] = beginHigh;
                 // find mean height between point.height[N-1-CountElems] and point.height[N-1-CountElems-1]
-                double sumPrevNext = SortedSurf.points.get(SortedSurf.TotalElementNo-1-CountElems).getValue() + SortedSurf.points.get(SortedSurf.TotalElementNo-2-CountElems).getValue();
+                double sumPrevNext = SortedSurf.get_sorted(SortedSurf.TotalElementNo-1-CountElems) + SortedSurf.get_sorted(SortedSurf.TotalElementNo-2-CountElems);
                 beginHigh = sumPrevNext / (double) 2;
 
                 CountElems += (AvgElementNo-1); // index of upper zone's last height
@@ -304,65 +463,95 @@ class MinMaxEncoder extends Encoder {
             }
             flag *= -1;
         }
+        return bounds;
+    }
 
-        STable = new Vector<>(spacesNo+1);
+    /**
+     * @param bounds        Zones' boundaries
+     * @return              Table of boundaries matched to characters from 'A' on
+     */
+    static Vector<Pair<Character,Double>> table(double[] bounds) {
+        Vector<Pair<Character,Double>> STable = new Vector<>(bounds.length);
         char A = 65;
-        for (int i=0; i<spacesNo+1; i++) {
+        for (int i=0; i<bounds.length; i++) {
             STable.addElement(new Pair(A, bounds[i]));
             A++;
         }
+        return STable;
+    }
 
-        this.S = new Surface(S);
-        this.Text = new Vector<>(S.TotalElementNo); // we have to build this
+    /**
+     * @param bounds        Zones' boundaries
+     * @return              Search of boundaries matched to characters from 'A' on
+     */
+    static ContinuousSplitSearch search(double[] bounds) {
+        byte[] symbols = new byte[bounds.length];
+        for (int i=0; i<bounds.length; i++) symbols[i] = (byte) (65 + i);
+        return new ContinuousSplitSearch(bounds, symbols);
+    }
 
+    /**
+     * <p>Ranks of sorted heights read while splitting spaces by counting elements:
+     * the pair around the end of each lower zone and of each upper zone</p>
+     *
+     * @param spacesNo      Number of spaces
+     * @param total         Total number of points
+     * @return              Ranks, lowest first
+     */
+    static int[] boundaryRanks(int spacesNo, int total) {
+        int avg = total / spacesNo;
+        int[] ranks = new int[4*(spacesNo/2) + 2];
+        int k = 0;
+        for (int Index=0; Index<=spacesNo/2; Index++) {
+            int CountElems = (Index+1) * (avg-1);
+            ranks[k++] = CountElems;
+            ranks[k++] = CountElems+1;
+            if( Index<spacesNo/2 ) {
+                ranks[k++] = total-1-CountElems;
+                ranks[k++] = total-2-CountElems;
+            }
+        }
+        return ranks;
     }
 
     /**
-     * <p>Building a tree out of pairs (<i>Character</i>,<i>BoundOfSpace</i>), then creating character array</p>
+     * <p>Searching the zones' boundaries matched to characters, then creating character array</p>
      */
     void InText() {
-        // building a tree out of pairs <Character,BoundOfSpace>
-        ContinuousSplitBT tree = new ContinuousSplitBT();
-        tree.init(tree.sortedArrayToBST(STable, 0, STable.size() - 1, null));
-
-
-        for (Pair<Integer,Double> point: S.points) {
-            Double height = point.getValue();
-
+        for (int i=0; i<S.TotalElementNo; i++) {
             // building character array
             // one character per surface point
-            Character ch = tree.search(new Double(height)); // finding corresponding character
-            Text.addElement(new Pair(point.getKey(),ch));
-
+            Text[i] = zones.search(S.get_height(i)); // finding corresponding character
         }
     }
 }
 
 /**
  *
- * <p>This type of Surface class carries the absolute difference of each height from the rms height in sorted order.</p>
+ * <p>This type of Surface class carries the absolute difference of each height from the rms height at given ranks of sorted order.</p>
  *
  */
 class MinMaxRMS extends Surface {
     /**
-     * Minimum absolute difference in vector of pairs
+     * Minimum absolute difference
      */
     double minR;
     /**
-     * Maximum absolute difference in vector of pairs
+     * Maximum absolute difference
      */
     double maxR;
 
     /**
      * Initialization
-     * @param S     Surface instance
+     * @param S         Surface instance
+     * @param ranks     Ranks of distances needed besides the minimum and the maximum
      */
-    MinMaxRMS(Surface S) {
+    MinMaxRMS(Surface S, int[] ranks) {
         super(S);
-        sort_heights(); // sort dr = abs(height - rms) distances
+        select_heights(MinMaxSurf.withEnds(ranks, TotalElementNo)); // dr = abs(height - rms) distances at these ranks
 
-        this.minR = points.get(0).getValue(); // get minimum and max dr of vector of pairs
-        this.maxR = points.get(TotalElementNo-1).getValue(); // pairs of <index,height>
+        this.minR = get_sorted(0); // get minimum and max dr
+        this.maxR = get_sorted(TotalElementNo-1);
     }
 }
 
@@ -374,19 +563,23 @@ class MinMaxRMSEncoder extends Encoder {
     /**
      * Surface with rms-normalized heights
      */
-    MinMaxRMS SortedSurf;
+    final MinMaxRMS SortedSurf;
     /**
      * Average number of points of surface per zone
      */
-    int AvgElementNo;
+    final int AvgElementNo;
     /**
      * Remaining number of points
      */
-    int Remain;
+    final int Remain;
     /**
      * After splitting the range into zones, we keep track of each zone's boundaries
      */
-    double[] bounds;
+    final double[] bounds;
+    /**
+     * Search of zones' boundaries matched to characters
+     */
+    final ContinuousSplitSearch zones;
 
     /**
      * <p>At first, this function creates structure of zones' boundaries beginning from minR and maxR.
@@ -397,77 +590,47 @@ class MinMaxRMSEncoder extends Encoder {
      * @param S             Instance of class Surface
      */
     MinMaxRMSEncoder(int spacesNo, Surface S) {
-        super(spacesNo,S);
-
-        AvgElementNo = S.get_totalNo() / spacesNo; // initialize average size of space
-        Remain = S.get_totalNo() % spacesNo;
-        SortedSurf = new MinMaxRMS(S);
-
-        // creating array of zones' boundaries beginning from minH and maxH
-        // initializing array on both ends
-        // assuming heights tend to accumulate around zero
-        bounds = new double[spacesNo+1]; // initialize array of zones' boundaries
-        double beginLow = SortedSurf.minR; // beginning from lowest height
-        double beginHigh = SortedSurf.maxR; // beginning from highest height
-
-        // splitting spaces by counting elements
-        // boundaries are mean value of space [last_zone_height,next_height]
-        // and next existing height
-        int CountElems = AvgElementNo-1;
-        int Index = 0; // Index of boundaries' array
-        int flag = 1; // change between high and low boundaries
+        this(spacesNo, S, null);
+    }
 
-        while( Index<=spacesNo/2 ) {
-            // creating zones beginning from lowest height values
-            // changing between lower and higher zones in each turn
-            if( flag>0 ) { // new lower zone
-                bounds[Index] = beginLow;
-                // find mean height between point.height[CountElems] and point.height[CountElems+1]
-                double sumPrevNext = SortedSurf.points.get(CountElems).getValue() + SortedSurf.points.get(CountElems+1).getValue();
-                beginLow = sumPrevNext / (double) 2;
-                if( Index==spacesNo/2 ) break; // no actions needed when half array index reached
+    /**
+     * <p>As above, searching the zones with a given search, such as one shared with encoders of the same zones</p>
+     *
+     * @param spacesNo      Number of spaces to split [minR,maxR] into
+     * @param S             Instance of class Surface
+     * @param zones         Search of the zones' boundaries of S (null to build one)
+     */
+    MinMaxRMSEncoder(int spacesNo, Surface S, ContinuousSplitSearch zones) {
+        this(new MinMaxRMS(S, MinMaxEncoder.boundaryRanks(spacesNo, S.get_totalNo())), spacesNo, S, zones);
+    }
 
-            } else { // new upper zone
-                bounds[spacesNo-Index] = beginHigh;
-                // find mean height between point.height[N-1-CountElems] and point.height[N-1-CountElems-1]
-                double sumPrevNext = SortedSurf.points.get(SortedSurf.TotalElementNo-1-CountElems).getValue() + SortedSurf.points.get(SortedSurf.TotalElementNo-2-CountElems).getValue();
-                beginHigh = sumPrevNext / (double) 2;
+    private MinMaxRMSEncoder(MinMaxRMS SortedSurf, int spacesNo, Surface S, ContinuousSplitSearch zones) {
+        this(SortedSurf, MinMaxEncoder.zoneBounds(spacesNo, SortedSurf, SortedSurf.minR, SortedSurf.maxR), S, zones);
+    }
 
-                CountElems += (AvgElementNo-1); // index of upper zone's last height
-                Index++;
-            }
-            flag *= -1;
-        }
+    private MinMaxRMSEncoder(MinMaxRMS SortedSurf, double[] bounds, Surface S, ContinuousSplitSearch zones) {
+        super(MinMaxEncoder.table(bounds));
+        int spacesNo = bounds.length-1;
 
-        STable = new Vector<>(spacesNo+1);
-        char A = 65;
-        for (int i=0; i<spacesNo+1; i++) {
-            STable.addElement(new Pair(A, bounds[i]));
-            A++;
-        }
+        AvgElementNo = S.get_totalNo() / spacesNo; // initialize average size of space
+        Remain = S.get_totalNo() % spacesNo;
+        this.SortedSurf = SortedSurf;
+        this.bounds = bounds;
+        this.zones = zones!=null ? zones : MinMaxEncoder.search(bounds);
 
         this.S = new Surface(S);
-        this.Text = new Vector<>(S.TotalElementNo); // we have to build this
+        this.Text = new byte[S.TotalElementNo]; // we have to build this
 
     }
 
     /**
-     * <p>Building a tree out of pairs with characters and corresponding range boundaries</p>
+     * <p>Searching the zones' boundaries matched to characters, then creating character array</p>
      */
     void InText() {
-        // building a tree out of pairs <Character,BoundOfSpace>
-        ContinuousSplitBT tree = new ContinuousSplitBT();
-        tree.init(tree.sortedArrayToBST(STable, 0, STable.size() - 1, null));
-
-
-        for (Pair<Integer,Double> point: S.points) {
-            Double height = point.getValue();
-
+        for (int i=0; i<S.TotalElementNo; i++) {
             // building character array
             // one character per surface point
-            Character ch = tree.search(new Double(height)); // finding corresponding character
-            Text.addElement(new Pair(point.getKey(),ch));
-
+            Text[i] = zones.search(S.get_height(i)); // finding corresponding character
         }
     }
 }
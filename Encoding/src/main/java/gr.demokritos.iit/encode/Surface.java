@@ -16,10 +16,9 @@
 
 package gr.demokritos.iit.encode;
 
-import javafx.util.Pair;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.Vector;
+import java.util.Arrays;
+
+import gr.demokritos.iit.utils.Selection;
 
 import static java.lang.Math.abs;
 
@@ -28,6 +27,10 @@ import static java.lang.Math.abs;
  * <br>Each Surface refers to a square part of physical surface that has gone through sampling of its heights.
  * Consequently, each object is defined by a number N of points on each square side and NxN in total.
  * <br>It also carries all necessary fields that characterize the height distribution of the surface's points.
+ * <br>Heights are kept in a flat array, row after row, so that point i (counting from 0) lies on
+ * row i/N and column i%N. Sorting keeps the heights in place and builds a permutation of the
+ * points in order of height instead; when only a few ranks are needed, their heights can be
+ * selected without sorting.
  */
 public class Surface {
 
@@ -54,9 +57,25 @@ public class Surface {
     double cly;
 
     /**
-     * Save points as pairs of (<i>index</i>,<i>height</i>)
+     * Heights of surface points, row-major
+     */
+    double[] heights;
+    /**
+     * Number of heights added so far
+     */
+    int size;
+    /**
+     * Points in ascending order of height (null if not sorted)
+     */
+    int[] order;
+    /**
+     * Ranks selected, in ascending order (null if none)
      */
-    Vector<Pair<Integer,Double>> points;
+    int[] ranks;
+    /**
+     * Height of each selected rank
+     */
+    double[] ranked;
 
     /**
      * <p>Initialization</p>
@@ -74,7 +93,7 @@ public class Surface {
         this.TotalElementNo = total;
         this.N = side;
 
-        points = new Vector<>(total);
+        heights = new double[total];
     }
 
     /**
@@ -89,38 +108,107 @@ public class Surface {
         this.TotalElementNo = S.TotalElementNo;
         this.N = S.N;
 
-        points = new Vector<>(S.points);
+        heights = S.heights.clone();
+        size = S.size;
+        order = S.order==null ? null : S.order.clone();
+        ranks = S.ranks; // never changed, only replaced
+        ranked = S.ranked;
     }
 
     /**
      * <p>Add a height point of the surface into the structure</p>
      *
-     * @param i     Point id
+     * @param i     Point index, row-major from 0
      * @param z     Height of point on surface
      */
-    public void add_height(int i, Double z) {
-        Pair p = new Pair(i,z);
-        points.addElement(p);
+    public void add_height(int i, double z) {
+        heights[i] = z;
+        size = Math.max(size, i+1);
+        order = null;
+        ranks = null;
     }
 
     /**
-     * <p>Sort heights of surface</p>
+     * @param i     Point index, row-major from 0
+     * @return      Height of point on surface
+     */
+    public double get_height(int i) {
+        return heights[i];
+    }
+
+    /**
+     * @param k     Rank of height, from 0 for the lowest
+     * @return      Height of k-th lowest point (surface must be sorted, or rank k selected)
+     */
+    public double get_sorted(int k) {
+        if( order!=null )
+            return heights[order[k]];
+        int p = ranks==null ? -1 : Arrays.binarySearch(ranks, k);
+        if( p<0 )
+            throw new IllegalStateException("Height of rank " + k + " is neither sorted nor selected");
+        return ranked[p];
+    }
+
+    /**
+     * <p>Find the heights of given ranks, as they would be after {@link #sort_heights()},
+     * without sorting all of them</p>
+     *
+     * @param ranks     Ranks of heights, from 0 for the lowest
+     */
+    public void select_heights(int[] ranks) {
+        int[] r = Arrays.stream(ranks).sorted().distinct().toArray();
+        this.ranked = Selection.orderStatistics(heights, size, r);
+        this.ranks = r;
+    }
+
+    /**
+     * <p>Sort heights of surface, keeping points in place: equal heights keep the order of their points</p>
      */
     public void sort_heights() {
-        Collections.sort(points, new Comparator<Pair<Integer, Double>>() {
-            @Override
-            public int compare(final Pair<Integer, Double> o1, final Pair<Integer, Double> o2) {
-                return o1.getValue().compareTo(o2.getValue());
+        int[] order = new int[size];
+        for (int i=0; i<size; i++) order[i] = i;
+        mergeSort(heights, order, new int[size], 0, size);
+        this.order = order;
+    }
+
+    /**
+     * <p>Stable sort of positions [lo,hi) by their height</p>
+     */
+    private static void mergeSort(double[] keys, int[] pos, int[] tmp, int lo, int hi) {
+        if( hi-lo<=16 ) { // insertion sort of short ranges
+            for (int i=lo+1; i<hi; i++) {
+                int p = pos[i];
+                int j = i-1;
+                while( j>=lo && Double.compare(keys[pos[j]], keys[p])>0 ) {
+                    pos[j+1] = pos[j];
+                    j--;
+                }
+                pos[j+1] = p;
             }
-        });
+            return;
+        }
+        int mid = (lo+hi) >>> 1;
+        mergeSort(keys, pos, tmp, lo, mid);
+        mergeSort(keys, pos, tmp, mid, hi);
+        if( Double.compare(keys[pos[mid-1]], keys[pos[mid]])<=0 ) return; // already in order
+
+        System.arraycopy(pos, lo, tmp, lo, hi-lo);
+        int i = lo, j = mid;
+        for (int k=lo; k<hi; k++) {
+            if( j>=hi || (i<mid && Double.compare(keys[tmp[i]], keys[tmp[j]])<=0) )
+                pos[k] = tmp[i++];
+            else
+                pos[k] = tmp[j++];
+        }
     }
 
     /**
-     * <p>Print saved heights of surface points</p>
+     * <p>Print saved heights of surface points (in order of height, if sorted)</p>
      */
     public void print_heights() {
-        for(int i=0; i < TotalElementNo; i++){
-            System.out.println("value: "+points.get(i).getValue()+" index: "+points.get(i).getKey());
+        for(int k=0; k < TotalElementNo; k++){
+            int i = order==null ? k : order[k];
+            System.out.println("value: "+heights[i]+" index: "+(i+1));
         }
     }
 
@@ -132,16 +220,16 @@ public class Surface {
     }
 
     // compute (+ or -)|height-c|
-    public void distance_heights(Double c) {
-        for (int i=0; i<this.points.size(); i++) {
-            double height = points.get(i).getValue();
+    public void distance_heights(double c) {
+        for (int i=0; i<size; i++) {
+            double height = heights[i];
             double dr = abs(height - c);
-            Pair p = null;
             if( height >= 0 )
-                p = new Pair(points.get(i).getKey(),dr);
+                heights[i] = dr;
             else
-                p = new Pair(points.get(i).getKey(),-dr);
-            points.setElementAt(p,i);
+                heights[i] = -dr;
         }
+        order = null; // order of heights may have changed
+        ranks = null;
     }
 }
@@ -0,0 +1,273 @@
+/** 
+* Copyright 2018 Antonia Tsili NCSR Demokritos
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package gr.demokritos.iit.loadinput;
+
+import gr.demokritos.iit.encode.Surface;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * <p>Get surface input from csv file one surface at a time.
+ * <br>Only the next surface (one line of the file) is read ahead, so memory does not grow
+ * with the number of surfaces and each one can be encoded as soon as it is read.
+ * Reading stops at the end of file, at the first line whose number of heights does not match N,
+ * or at an error of the file, as in {@link CSVRead}.</p>
+ *
+ * <p>The file is memory-mapped and scanned as bytes: the parameters of the first column
+ * and every height are parsed in place, without a string per line or per number, and heights
+ * go straight into the primitive storage of the {@link Surface}. Numbers are converted
+ * by {@link DoubleParser} to the same doubles as {@link Double#parseDouble}, which is still
+ * used for numbers of other forms (such as NaN).</p>
+ */
+public class CSVStream implements Iterator<Surface>, Iterable<Surface>, AutoCloseable {
+
+    private final MappedInput in;
+    /**
+     * Multiplier of heights, 10^Scale
+     */
+    private final double unit;
+    /**
+     * Position in file of next line
+     */
+    private long pos = 0;
+    /**
+     * Surface read ahead (null at end of input)
+     */
+    private Surface next;
+
+    /**
+     * <p>Open input file and read first surface</p>
+     *
+     * @param csvFile       Name of file
+     * @param Scale         Choose numbers' relation to nanometres
+     * @throws IOException  If file cannot be opened
+     */
+    public CSVStream(String csvFile, int Scale) throws IOException {
+        this.in = new MappedInput(csvFile);
+        this.unit = Math.pow(10,Scale);
+        this.next = read();
+    }
+
+    /**
+     * @return      Next surface of file, or null at end of input
+     */
+    private Surface read() {
+        try {
+            if( pos>=in.size ) {
+                return null;
+            }
+            return parse();
+        } catch (UncheckedIOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * <p>Parse one line: first column is parameters with colon separator,
+     * rest columns are heights with comma separator</p>
+     *
+     * @return          Surface, or null if number of heights does not match N
+     */
+    private Surface parse() {
+        // parameters as <param_name>:<param_value>
+        double rms = 0, clx = 0, cly = 0;
+        int N = -1;
+        int c = ':';
+        for (int k=0; c==':'; k++) {
+            if( k==1 ) rms = number(true);
+            else if( k==3 ) clx = number(true);
+            else if( k==5 ) cly = number(true);
+            else if( k==7 ) N = integer();
+            else skip();
+            c = in.get(pos++);
+        }
+        if( N<0 ) // fewer parameters than expected
+            throw new NumberFormatException("Missing parameters in input: " + in.text(lineStart(pos-1), pos-1));
+
+        int total = N*N;
+        Surface data = new Surface(rms,clx,cly,total,N);
+        int count = 0;
+        int empty = 0; // empty fields not yet followed by a height
+        while( c==',' ) {
+            int d = in.get(pos);
+            if( d==',' || d=='\n' || d=='\r' || d<0 ) { // empty, ignored at end of line
+                empty++;
+                c = in.get(pos++);
+                continue;
+            }
+            if( empty>0 )
+                throw new NumberFormatException("empty String");
+            double z = number(false);
+            if( count<total ) {
+                data.add_height(count,z*unit);
+            }
+            count++;
+            c = in.get(pos++);
+        }
+        if( c=='\r' && in.get(pos)=='\n' ) {
+            pos++;
+        }
+
+        if( count!=total ) {
+            System.out.println("Error in total number of points in input.");
+            pos = in.size;
+            return null;
+        }
+        return data;
+    }
+
+    /**
+     * <p>Parse number at current position, stopping at the next separator</p>
+     *
+     * @param header    Whether the number is a parameter, ending at ':' as well
+     * @return          Value of number
+     */
+    private double number(boolean header) {
+        long start = pos;
+        int c = in.get(pos);
+        boolean negative = false;
+        if( c=='-' || c=='+' ) {
+            negative = c=='-';
+            c = in.get(++pos);
+        }
+        long w = 0;
+        int digits = 0, q = 0;
+        boolean any = false, exact = true;
+        while( c>='0' && c<='9' ) {
+            any = true;
+            if( w!=0 || c!='0' ) {
+                if( digits<19 ) { w = w*10 + (c-'0'); digits++; }
+                else { q++; exact &= c=='0'; }
+            }
+            c = in.get(++pos);
+        }
+        if( c=='.' ) {
+            c = in.get(++pos);
+            while( c>='0' && c<='9' ) {
+                any = true;
+                if( w!=0 || c!='0' ) {
+                    if( digits<19 ) { w = w*10 + (c-'0'); digits++; q--; }
+                    else exact &= c=='0';
+                } else {
+                    q--;
+                }
+                c = in.get(++pos);
+            }
+        }
+        if( any && (c=='e' || c=='E') ) {
+            c = in.get(++pos);
+            boolean negExp = false;
+            if( c=='-' || c=='+' ) {
+                negExp = c=='-';
+                c = in.get(++pos);
+            }
+            any = c>='0' && c<='9';
+            int e = 0;
+            while( c>='0' && c<='9' ) {
+                if( e<100000 ) e = e*10 + (c-'0');
+                c = in.get(++pos);
+            }
+            q += negExp ? -e : e;
+        }
+
+        if( any && exact && isEnd(c, header) ) {
+            double d = DoubleParser.toDouble(w, q, negative);
+            if( d==d ) return d;
+        }
+        // other forms, left to the library
+        while( !isEnd(c, header) ) {
+            c = in.get(++pos);
+        }
+        return Double.parseDouble(in.text(start, pos));
+    }
+
+    /**
+     * <p>Parse integer at current position, stopping at the next separator</p>
+     */
+    private int integer() {
+        long start = pos;
+        int c = in.get(pos);
+        boolean negative = c=='-';
+        if( c=='-' || c=='+' ) c = in.get(++pos);
+        long v = 0;
+        boolean any = false;
+        while( c>='0' && c<='9' && v<=Integer.MAX_VALUE ) {
+            any = true;
+            v = v*10 + (c-'0');
+            c = in.get(++pos);
+        }
+        if( !any || v>Integer.MAX_VALUE || !isEnd(c, true) ) {
+            while( !isEnd(c, true) ) c = in.get(++pos);
+            throw new NumberFormatException("For input string: \"" + in.text(start, pos) + "\"");
+        }
+        return (int) (negative ? -v : v);
+    }
+
+    /**
+     * <p>Move to the end of current parameter</p>
+     */
+    private void skip() {
+        while( !isEnd(in.get(pos), true) ) pos++;
+    }
+
+    private static boolean isEnd(int c, boolean header) {
+        return c==',' || c=='\n' || c=='\r' || c<0 || (header && c==':');
+    }
+
+    /**
+     * @return      Position of first byte of line holding position p
+     */
+    private long lineStart(long p) {
+        while( p>0 && in.get(p-1)!='\n' && in.get(p-1)!='\r' ) p--;
+        return p;
+    }
+
+    public boolean hasNext() {
+        return next!=null;
+    }
+
+    /**
+     * @return      Next surface of file
+     */
+    public Surface next() {
+        if( next==null ) {
+            throw new NoSuchElementException();
+        }
+        Surface S = next;
+        next = read();
+        return S;
+    }
+
+    /**
+     * @return      This stream, for use in a for-each loop (once)
+     */
+    public Iterator<Surface> iterator() {
+        return this;
+    }
+
+    /**
+     * <p>Close input file</p>
+     */
+    public void close() throws IOException {
+        next = null;
+        in.close();
+    }
+}
@@ -0,0 +1,130 @@
+/** 
+* Copyright 2018 Antonia Tsili NCSR Demokritos
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package gr.demokritos.iit.loadinput;
+
+import java.math.BigInteger;
+
+/**
+ * <p>Conversion of decimal significands and exponents to the nearest double, as {@link Double#parseDouble} gives.
+ * <br>A significand w of at most 19 digits with exponent q, w*10^q, is converted by exact floating point
+ * arithmetic when w &lt; 2^53 and |q| &le; 22 (Clinger), or else by the Eisel-Lemire algorithm: w is
+ * multiplied by a 128-bit approximation of 5^q and the product gives the rounded binary significand,
+ * as in Lemire, "Number Parsing at a Gigabyte per Second" (2021). Cases it does not decide
+ * (subnormal results, exponents beyond the table) are left to {@link Double#parseDouble}.</p>
+ */
+final class DoubleParser {
+
+    /**
+     * Exponents of ten in the table of powers of five
+     */
+    static final int MIN_POW10 = -342, MAX_POW10 = 308;
+
+    /**
+     * Exact powers of ten as doubles
+     */
+    private static final double[] POW10 = new double[23];
+    /**
+     * High and low 64 bits of 5^q, normalized to 128 bits, for q from {@link #MIN_POW10}
+     */
+    private static final long[] POW5_HI = new long[MAX_POW10-MIN_POW10+1];
+    private static final long[] POW5_LO = new long[MAX_POW10-MIN_POW10+1];
+
+    static {
+        for (int i=0; i<POW10.length; i++) {
+            POW10[i] = i==0 ? 1 : POW10[i-1]*10;
+        }
+        BigInteger two128 = BigInteger.ONE.shiftLeft(128);
+        BigInteger mask = BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE);
+        for (int q=MIN_POW10; q<=MAX_POW10; q++) {
+            BigInteger c;
+            if( q<0 ) { // reciprocal rounded up, truncated to 128 bits
+                BigInteger power5 = BigInteger.valueOf(5).pow(-q);
+                int z = power5.subtract(BigInteger.ONE).bitLength();
+                int b = q>=-27 ? z+127 : 2*z+128;
+                c = BigInteger.ONE.shiftLeft(b).divide(power5).add(BigInteger.ONE);
+                while( c.compareTo(two128)>=0 ) c = c.shiftRight(1);
+            } else { // truncated to 128 bits
+                c = BigInteger.valueOf(5).pow(q);
+                int shift = 128 - c.bitLength();
+                c = shift>=0 ? c.shiftLeft(shift) : c.shiftRight(-shift);
+            }
+            POW5_HI[q-MIN_POW10] = c.shiftRight(64).longValue();
+            POW5_LO[q-MIN_POW10] = c.and(mask).longValue();
+        }
+    }
+
+    private DoubleParser() {}
+
+    /**
+     * @param w         Significand, unsigned, of at most 19 digits
+     * @param q         Exponent of ten
+     * @param negative  Whether the number is negative
+     * @return          Nearest double to w*10^q, or NaN if it cannot be decided here
+     */
+    static double toDouble(long w, int q, boolean negative) {
+        if( w==0 ) {
+            return negative ? -0.0 : 0.0;
+        }
+        if( w>0 && w<=(1L<<53) && q>=-22 && q<=22 ) { // both exact, one rounding
+            double d = q<0 ? w / POW10[-q] : w * POW10[q];
+            return negative ? -d : d;
+        }
+        if( q<MIN_POW10 || q>MAX_POW10 ) {
+            return Double.NaN;
+        }
+
+        int lz = Long.numberOfLeadingZeros(w);
+        w <<= lz;
+        int k = q - MIN_POW10;
+        long hi = multiplyHigh(w, POW5_HI[k]);
+        long lo = w * POW5_HI[k];
+        if( (hi & 0x1FF)==0x1FF ) { // lower bits may carry into the result
+            long hi2 = multiplyHigh(w, POW5_LO[k]);
+            lo += hi2;
+            if( Long.compareUnsigned(hi2, lo)>0 ) hi++;
+        }
+        int upperbit = (int) (hi >>> 63);
+        long mantissa = hi >>> (upperbit + 9);
+        int power2 = ((217706 * q) >> 16) + 63 + upperbit - lz + 1023;
+        if( power2<=0 ) { // subnormal
+            return Double.NaN;
+        }
+        if( Long.compareUnsigned(lo, 1)<=0 && q>=-4 && q<=23 && (mantissa & 3)==1
+                && (mantissa << (upperbit + 9))==hi ) { // exactly halfway: round to even
+            mantissa &= ~1L;
+        }
+        mantissa += mantissa & 1;
+        mantissa >>>= 1;
+        if( mantissa>=(2L<<52) ) {
+            mantissa = 1L<<52;
+            power2++;
+        }
+        mantissa &= ~(1L<<52);
+        if( power2>=0x7FF ) {
+            return negative ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+        }
+        long bits = mantissa | ((long) power2 << 52) | (negative ? 1L<<63 : 0);
+        return Double.longBitsToDouble(bits);
+    }
+
+    /**
+     * @return      High 64 bits of the unsigned product
+     */
+    private static long multiplyHigh(long a, long b) {
+        return Math.multiplyHigh(a, b) + ((a >> 63) & b) + ((b >> 63) & a);
+    }
+}
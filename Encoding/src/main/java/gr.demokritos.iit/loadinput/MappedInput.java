@@ -0,0 +1,109 @@
+/** 
+* Copyright 2018 Antonia Tsili NCSR Demokritos
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package gr.demokritos.iit.loadinput;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * <p>Bytes of a file, read through memory mappings of {@link #WINDOW} bytes at a time,
+ * so that files larger than 2GB can be read and little of them is mapped at once.</p>
+ */
+final class MappedInput implements AutoCloseable {
+
+    /**
+     * Bytes mapped at a time
+     */
+    static final int WINDOW = 1 << 27;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    /**
+     * Bytes of file
+     */
+    final long size;
+    /**
+     * Mapped part of file (null before first read)
+     */
+    private MappedByteBuffer buf;
+    /**
+     * Position in file of first mapped byte
+     */
+    private long base = 0;
+    /**
+     * Number of mapped bytes
+     */
+    private int limit = 0;
+
+    /**
+     * @param filename      Name of file
+     * @throws IOException  If file cannot be opened
+     */
+    MappedInput(String filename) throws IOException {
+        this.file = new RandomAccessFile(filename, "r");
+        this.channel = file.getChannel();
+        this.size = channel.size();
+    }
+
+    /**
+     * @param p     Position in file
+     * @return      Byte at position as 0..255, or -1 past end of file
+     */
+    int get(long p) {
+        long off = p - base;
+        if( off<0 || off>=limit ) {
+            if( p>=size ) return -1;
+            map(p);
+            off = 0;
+        }
+        return buf.get((int) off) & 0xFF;
+    }
+
+    /**
+     * <p>Map the window beginning at position p</p>
+     */
+    private void map(long p) {
+        try {
+            limit = (int) Math.min(WINDOW, size-p);
+            buf = channel.map(FileChannel.MapMode.READ_ONLY, p, limit);
+            base = p;
+        } catch (IOException e) {
+            throw new java.io.UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @param from  Position in file of first byte
+     * @param to    Position in file after last byte
+     * @return      Bytes as text (for error messages and rare numbers)
+     */
+    String text(long from, long to) {
+        StringBuilder sb = new StringBuilder();
+        for (long p=from; p<to; p++) {
+            sb.append((char) get(p));
+        }
+        return sb.toString();
+    }
+
+    public void close() throws IOException {
+        buf = null;
+        channel.close();
+        file.close();
+    }
+}
@@ -44,12 +44,23 @@ class Node {
 
 /**
  * <p>A binary tree that distributes the divided spacings and serves for matching the height to a ]n alphabetical character </p>
+ * <p>Each tree owns its nodes, which are not changed after construction, so a tree may be searched
+ * from several threads at once and trees of different encoders do not affect each other.</p>
  */
 public abstract class BinaryTree {
     /**
-     * Root of binary tree with ranges
+     * Root of binary tree with ranges (null for no ranges)
      */
-    static Node root;
+    final Node root;
+
+    /**
+     * <p>Construct balanced tree of ranges</p>
+     *
+     * @param V         Vector of matches between heights and alphabetical characters, in ascending order of heights
+     */
+    BinaryTree(Vector<Pair<Character, Double>> V) {
+        this.root = sortedArrayToBST(V, 0, V.size() - 1, null);
+    }
 
     /**
      * <p>A function that constructs Balanced Binary Search Tree from a sorted array</p>
@@ -82,15 +93,6 @@ public abstract class BinaryTree {
         return node;
     }
 
-    /**
-     * <p>Initialize with result of constructing function</p>
-     *
-     * @param root
-     */
-    public void init(Node root) {
-        this.root = root;
-    }
-
     /**
      * <p>A utility function to print preorder traversal of BST</p>
      *
@@ -16,12 +16,21 @@
 
 package gr.demokritos.iit.utils;
 
+import javafx.util.Pair;
 import java.util.Vector;
 
 /**
  * <p>Class used for dividing ranges that don't spread evenly around 0</p>
  */
 public class ContinuousSplitBT extends BinaryTree {
+
+    /**
+     * @param V     Vector of matches between heights and alphabetical characters, in ascending order of heights
+     */
+    public ContinuousSplitBT(Vector<Pair<Character, Double>> V) {
+        super(V);
+    }
+
     /**
      * <p>Matches <i>height</i> to the character corresponding to space H</p>
      *
@@ -30,12 +39,12 @@ public class ContinuousSplitBT extends BinaryTree {
      */
     public Character search(Double height) {
         // where <height> belongs to H
-        Character tempVal = root.Space.getKey();
-        Node temp = root;
-
         if (root == null) {
             return null;
         }
+        Character tempVal = root.Space.getKey();
+        Node temp = root;
+
         if( Double.compare(height,temp.Space.getValue())>=0 ) {
             temp = root.right;
             while (temp != null) {
@@ -70,10 +79,8 @@ public class ContinuousSplitBT extends BinaryTree {
      * @param V     Vector to be sorted and traversed
      */
     public void print(Vector V) {
-        BinaryTree tree = new ContinuousSplitBT();
-        int n = V.size();
-        root = tree.sortedArrayToBST(V, 0, n - 1, null);
+        BinaryTree tree = new ContinuousSplitBT(V);
         System.out.println("Preorder traversal of constructed BST");
-        tree.preOrder(root);
+        tree.preOrder(tree.root);
     }
 }
@@ -0,0 +1,45 @@
+/** 
+* Copyright 2018 Antonia Tsili NCSR Demokritos
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package gr.demokritos.iit.utils;
+
+/**
+ * <p>Search for dividing ranges that don't spread evenly around 0, matching {@link ContinuousSplitBT}:
+ * a height at or above the middle boundary gets the symbol of the last boundary not above it,
+ * a height below it the symbol of the first boundary not below it.</p>
+ */
+public class ContinuousSplitSearch extends EytzingerSearch {
+
+    /**
+     * @param bounds    Boundaries in ascending order
+     * @param symbols   Symbol matched to each boundary
+     */
+    public ContinuousSplitSearch(double[] bounds, byte[] symbols) {
+        super(bounds, symbols);
+    }
+
+    /**
+     * <p>Matches <i>height</i> to the symbol corresponding to its range</p>
+     *
+     * @param height        Value to be placed in a range
+     * @return              Symbol that corresponds to particular range
+     */
+    public byte search(double height) {
+        if( Double.compare(height, bounds[middle()])>=0 )
+            return symbols[floor(height)];
+        return symbols[ceiling(height)];
+    }
+}
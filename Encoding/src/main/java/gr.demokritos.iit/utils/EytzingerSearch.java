@@ -0,0 +1,118 @@
+/** 
+* Copyright 2018 Antonia Tsili NCSR Demokritos
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package gr.demokritos.iit.utils;
+
+/**
+ * <p>Search of sorted range boundaries matched to symbols, as a replacement of the {@link BinaryTree} classes.
+ * <br>Boundaries are kept in a primitive array in Eytzinger (breadth-first) order: the children of
+ * position k lie at 2k and 2k+1, so a search descends the implicit tree by index arithmetic,
+ * taking the next position from the result of a comparison, with no pointers and no boxing.
+ * The top levels of the tree share a few cache lines.</p>
+ *
+ * <p>Boundaries must be sorted in ascending order (equal ones allowed). They are copied on
+ * construction and never changed, so a search may be shared between threads.</p>
+ */
+public abstract class EytzingerSearch {
+    /**
+     * Boundaries in ascending order
+     */
+    final double[] bounds;
+    /**
+     * Symbol matched to each boundary
+     */
+    final byte[] symbols;
+    /**
+     * Boundaries in Eytzinger order, from position 1
+     */
+    final double[] tree;
+    /**
+     * Ascending order of each boundary in tree (position 0 stands for none, after the last)
+     */
+    final int[] rank;
+
+    /**
+     * @param bounds    Boundaries in ascending order
+     * @param symbols   Symbol matched to each boundary
+     */
+    EytzingerSearch(double[] bounds, byte[] symbols) {
+        if( bounds.length==0 || bounds.length!=symbols.length )
+            throw new IllegalArgumentException("Need one symbol per boundary: " + bounds.length + " boundaries, " + symbols.length + " symbols");
+        int n = bounds.length;
+        this.bounds = bounds.clone();
+        this.symbols = symbols.clone();
+        this.tree = new double[n+1];
+        this.rank = new int[n+1];
+        rank[0] = n;
+        layout(1, 0);
+    }
+
+    /**
+     * <p>Place boundaries from the i-th on into the subtree at position k, in order</p>
+     *
+     * @return      Next boundary to place
+     */
+    private int layout(int k, int i) {
+        if( k>=tree.length ) {
+            return i;
+        }
+        i = layout(2*k, i);
+        tree[k] = bounds[i];
+        rank[k] = i;
+        return layout(2*k+1, i+1);
+    }
+
+    /**
+     * @param height    Value to be placed in a range
+     * @return          Index of the first boundary not below height (number of boundaries if none)
+     */
+    int ceiling(double height) {
+        int k = 1;
+        while( k<tree.length ) {
+            k = 2*k + (Double.compare(tree[k], height)<0 ? 1 : 0);
+        }
+        k >>>= Integer.numberOfTrailingZeros(~k) + 1; // undo right turns after the last left turn
+        return rank[k];
+    }
+
+    /**
+     * @param height    Value to be placed in a range
+     * @return          Index of the last boundary not above height (-1 if none)
+     */
+    int floor(double height) {
+        int k = 1;
+        while( k<tree.length ) {
+            k = 2*k + (Double.compare(tree[k], height)<=0 ? 1 : 0);
+        }
+        k >>>= Integer.numberOfTrailingZeros(~k) + 1; // first boundary above height
+        return rank[k] - 1;
+    }
+
+    /**
+     * @return      Index of the middle boundary, the root of the corresponding {@link BinaryTree}
+     */
+    int middle() {
+        return (bounds.length-1) / 2;
+    }
+
+    /**
+     * <p>Matches <i>height</i> to the symbol corresponding to its range</p>
+     *
+     * @param height        Value to be placed in a range
+     * @return              Symbol that corresponds to particular range
+     */
+    public abstract byte search(double height);
+}
@@ -0,0 +1,138 @@
+/** 
+* Copyright 2018 Antonia Tsili NCSR Demokritos
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package gr.demokritos.iit.utils;
+
+import java.util.Arrays;
+
+/**
+ * <p>Order statistics of primitive values without sorting all of them.</p>
+ *
+ * <p>Values are mapped to long keys that sort like {@link Double#compare} (-0.0 before 0.0,
+ * NaN last), and a multiple quickselect partitions the keys around median-of-three pivots,
+ * descending only into the parts that hold requested ranks. This takes about O(n log k) for
+ * k ranks instead of O(n log n), and falls back to sorting a part that partitions badly.</p>
+ */
+public final class Selection {
+
+    /**
+     * Parts shorter than this are sorted by insertion
+     */
+    private static final int INSERTION = 16;
+
+    private Selection() {}
+
+    /**
+     * @param values    Values to select from (not changed)
+     * @param n         Number of values to use, from the first
+     * @param ranks     Ranks to select, from 0 for the lowest, in ascending order
+     * @return          Value of each rank, in order of {@link Double#compare}
+     */
+    public static double[] orderStatistics(double[] values, int n, int[] ranks) {
+        for (int k=0; k<ranks.length; k++) {
+            if( ranks[k]<0 || ranks[k]>=n || (k>0 && ranks[k]<ranks[k-1]) )
+                throw new IllegalArgumentException("Ranks must be ascending and below " + n + ": " + Arrays.toString(ranks));
+        }
+        long[] keys = new long[n];
+        for (int i=0; i<n; i++) {
+            keys[i] = key(values[i]);
+        }
+        select(keys, 0, n-1, ranks, 0, ranks.length, 2 * (32 - Integer.numberOfLeadingZeros(n)));
+
+        double[] res = new double[ranks.length];
+        for (int k=0; k<ranks.length; k++) {
+            res[k] = value(keys[ranks[k]]);
+        }
+        return res;
+    }
+
+    /**
+     * @return      Key of a value, in the order of {@link Double#compare}
+     */
+    static long key(double v) {
+        long bits = Double.doubleToLongBits(v);
+        return bits ^ ((bits >> 63) & Long.MAX_VALUE); // negative values in reverse
+    }
+
+    /**
+     * @return      Value of a key
+     */
+    static double value(long key) {
+        return Double.longBitsToDouble(key ^ ((key >> 63) & Long.MAX_VALUE));
+    }
+
+    /**
+     * <p>Move the keys of ranks[rlo..rhi) into place within a[lo..hi]</p>
+     */
+    private static void select(long[] a, int lo, int hi, int[] ranks, int rlo, int rhi, int depth) {
+        while( rlo<rhi ) {
+            if( hi-lo<INSERTION ) {
+                insertionSort(a, lo, hi);
+                return;
+            }
+            if( depth--==0 ) { // too many bad pivots
+                Arrays.sort(a, lo, hi+1);
+                return;
+            }
+            int mid = (lo+hi) >>> 1;
+            long p = median(a[lo], a[mid], a[hi]);
+
+            // three-way partition: a[lo..lt) < p, a[lt..gt] == p, a(gt..hi] > p
+            int lt = lo, i = lo, gt = hi;
+            while( i<=gt ) {
+                if( a[i]<p ) swap(a, lt++, i++);
+                else if( a[i]>p ) swap(a, i, gt--);
+                else i++;
+            }
+
+            int r1 = rlo;
+            while( r1<rhi && ranks[r1]<lt ) r1++;
+            int r2 = r1;
+            while( r2<rhi && ranks[r2]<=gt ) r2++; // ranks among keys equal to pivot are in place
+
+            select(a, lo, lt-1, ranks, rlo, r1, depth);
+            lo = gt+1;
+            rlo = r2;
+        }
+    }
+
+    private static long median(long a, long b, long c) {
+        if( a<b ) {
+            if( b<c ) return b;
+            return a<c ? c : a;
+        }
+        if( a<c ) return a;
+        return b<c ? c : b;
+    }
+
+    private static void insertionSort(long[] a, int lo, int hi) {
+        for (int i=lo+1; i<=hi; i++) {
+            long k = a[i];
+            int j = i-1;
+            while( j>=lo && a[j]>k ) {
+                a[j+1] = a[j];
+                j--;
+            }
+            a[j+1] = k;
+        }
+    }
+
+    private static void swap(long[] a, int i, int j) {
+        long t = a[i];
+        a[i] = a[j];
+        a[j] = t;
+    }
+}
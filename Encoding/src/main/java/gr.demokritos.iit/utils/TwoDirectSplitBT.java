@@ -16,12 +16,21 @@
 
 package gr.demokritos.iit.utils;
 
+import javafx.util.Pair;
 import java.util.Vector;
 
 /**
  * <p>Split space range into zones directly</p>
  */
 public class TwoDirectSplitBT extends BinaryTree {
+
+    /**
+     * @param V     Vector of matches between heights and alphabetical characters, in ascending order of heights
+     */
+    public TwoDirectSplitBT(Vector<Pair<Character, Double>> V) {
+        super(V);
+    }
+
     /**
      * <p>Matches <i>height</i> to the character corresponding to space H</p>
      *
@@ -72,10 +81,8 @@ public class TwoDirectSplitBT extends BinaryTree {
      * @param V     Vector to be sorted and traversed
      */
     public void print(Vector V) {
-        BinaryTree tree = new TwoDirectSplitBT();
-        int n = V.size();
-        root = tree.sortedArrayToBST(V, 0, n - 1, null);
+        BinaryTree tree = new TwoDirectSplitBT(V);
         System.out.println("Preorder traversal of constructed BST");
-        tree.preOrder(root);
+        tree.preOrder(tree.root);
     }
 }
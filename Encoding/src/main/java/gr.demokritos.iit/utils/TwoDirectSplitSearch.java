@@ -0,0 +1,50 @@
+/** 
+* Copyright 2018 Antonia Tsili NCSR Demokritos
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package gr.demokritos.iit.utils;
+
+/**
+ * <p>Search for dividing ranges spread around 0, matching {@link TwoDirectSplitBT}: a height at or
+ * above 0 gets the symbol of the first boundary after the middle one not below it, a height below 0
+ * (or -0.0) the symbol of the last boundary before the middle one not above it, and heights beyond
+ * the boundaries get 'A'.</p>
+ */
+public class TwoDirectSplitSearch extends EytzingerSearch {
+
+    /**
+     * @param bounds    Boundaries in ascending order, the middle one standing for 0
+     * @param symbols   Symbol matched to each boundary
+     */
+    public TwoDirectSplitSearch(double[] bounds, byte[] symbols) {
+        super(bounds, symbols);
+    }
+
+    /**
+     * <p>Matches <i>height</i> to the symbol corresponding to its range</p>
+     *
+     * @param height        Value to be placed in a range
+     * @return              Symbol that corresponds to particular range
+     */
+    public byte search(double height) {
+        int mid = middle();
+        if( Double.compare(height, 0)>=0 ) {
+            int k = Math.max(ceiling(height), mid+1);
+            return k<bounds.length ? symbols[k] : (byte) 'A';
+        }
+        int k = Math.min(floor(height), mid-1);
+        return k>=0 ? symbols[k] : (byte) 'A';
+    }
+}
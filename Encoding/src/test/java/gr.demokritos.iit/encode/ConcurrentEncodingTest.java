@@ -0,0 +1,138 @@
+/** 
+* Copyright 2018 Antonia Tsili NCSR Demokritos
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package gr.demokritos.iit.encode;
+
+import gr.demokritos.iit.utils.ContinuousSplitSearch;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * <p>Encoders on several threads, one per thread, all searching the same zones,
+ * give the same texts as a single encoder going through the surfaces in turn.</p>
+ */
+public class ConcurrentEncodingTest {
+
+    private static final int THREADS = 4;
+    private static final int ROUNDS = 8;
+    private static final int N = 64;
+    private static final int SPACES = 20;
+
+    /**
+     * @return      Surfaces of NxN Gaussian heights
+     */
+    private static Surface[] surfaces(int count, long seed) {
+        Random rand = new Random(seed);
+        Surface[] surfaces = new Surface[count];
+        for (int k=0 ; k<count ; k++) {
+            surfaces[k] = new Surface(2.0, 8, 8, N*N, N);
+            for (int i=0 ; i<N*N ; i++) {
+                surfaces[k].add_height(i, 2.0*rand.nextGaussian());
+            }
+        }
+        return surfaces;
+    }
+
+    /**
+     * <p>Encode a copy of a surface as Conversion does (heights of method 6 become distances from rms)</p>
+     */
+    private static byte[] encode(Encoder encoder, Surface S, int method) {
+        encoder.changeSurface(new Surface(S));
+        if( method==6 ) encoder.changeHeights(0);
+        encoder.InText();
+        return encoder.toBytes(true);
+    }
+
+    /**
+     * <p>Encode every surface ROUNDS times on a pool of threads and compare with expected texts</p>
+     */
+    private static void assertSameConcurrently(Surface[] surfaces, int method, byte[][] expected,
+                                               Supplier<Encoder> encoders) throws Exception {
+        ThreadLocal<Encoder> encoder = ThreadLocal.withInitial(encoders);
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<byte[]>> texts = new ArrayList<>();
+            for (int r=0 ; r<ROUNDS ; r++) {
+                for (Surface S : surfaces) {
+                    texts.add(pool.submit(() -> encode(encoder.get(), S, method)));
+                }
+            }
+            for (int k=0 ; k<texts.size() ; k++) {
+                assertArrayEquals("method " + method + ", surface " + (k%surfaces.length),
+                        expected[k%surfaces.length], texts.get(k).get());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void minMaxEncodersShareZones() throws Exception {
+        Surface[] surfaces = surfaces(12, 1);
+        MinMaxEncoder first = new MinMaxEncoder(SPACES, surfaces[0]);
+        ContinuousSplitSearch shared = first.zones;
+        byte[][] expected = new byte[surfaces.length][];
+        for (int k=0 ; k<surfaces.length ; k++) {
+            expected[k] = encode(first, surfaces[k], 4);
+        }
+
+        assertSameConcurrently(surfaces, 4, expected, () -> {
+            MinMaxEncoder encoder = new MinMaxEncoder(SPACES, surfaces[0], shared);
+            assertArrayEquals(first.bounds, encoder.bounds, 0.0);
+            assertSame(shared, encoder.zones);
+            return encoder;
+        });
+    }
+
+    @Test
+    public void minMaxRMSEncodersShareZones() throws Exception {
+        Surface[] surfaces = surfaces(12, 2);
+        MinMaxRMSEncoder first = new MinMaxRMSEncoder(SPACES, surfaces[0]);
+        ContinuousSplitSearch shared = first.zones;
+        byte[][] expected = new byte[surfaces.length][];
+        for (int k=0 ; k<surfaces.length ; k++) {
+            expected[k] = encode(first, surfaces[k], 6);
+        }
+
+        assertSameConcurrently(surfaces, 6, expected, () -> {
+            MinMaxRMSEncoder encoder = new MinMaxRMSEncoder(SPACES, surfaces[0], shared);
+            assertArrayEquals(first.bounds, encoder.bounds, 0.0);
+            assertSame(shared, encoder.zones);
+            return encoder;
+        });
+    }
+
+    @Test
+    public void textsDifferBetweenSurfaces() {
+        Surface[] surfaces = surfaces(2, 3);
+        MinMaxEncoder encoder = new MinMaxEncoder(SPACES, surfaces[0]);
+        byte[] a = encode(encoder, surfaces[0], 4);
+        byte[] b = encode(encoder, surfaces[1], 4);
+        assertTrue("distinct surfaces give distinct texts", !Arrays.equals(a, b));
+    }
+}
@@ -0,0 +1,119 @@
+/** 
+* Copyright 2018 Antonia Tsili NCSR Demokritos
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package gr.demokritos.iit.encode;
+
+import gr.demokritos.iit.utils.ContinuousSplitBT;
+import gr.demokritos.iit.utils.ContinuousSplitSearch;
+import gr.demokritos.iit.utils.TwoDirectSplitBT;
+import gr.demokritos.iit.utils.TwoDirectSplitSearch;
+import javafx.util.Pair;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.Vector;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * <p>{@link ContinuousSplitSearch} and {@link TwoDirectSplitSearch} replace the trees the encoders
+ * used to search; over the same table they must give the character of {@link ContinuousSplitBT}
+ * and {@link TwoDirectSplitBT}, at the boundaries, outside them and for heights with no order.</p>
+ */
+public class SearchEquivalenceTest {
+
+    /**
+     * Tables of boundaries: around zero (odd and even length), on one side of it, with equal
+     * boundaries, and with one or two boundaries only
+     */
+    private static final double[][] TABLES = {
+            {-90, -60, -35, -20, -8, 0, 5, 17, 40, 66, 100},
+            {-3.5, -2, -1.25, -0.5, 0.3, 0.9, 1.7, 2.6},
+            {0.5, 1, 2, 4, 8, 16, 32},
+            {-7, -3, -3, -3, 0, 0, 2, 2, 9},
+            {-1e-9, 0, 0, 0, 1e-9},
+            {1.5},
+            {-2, 2}
+    };
+
+    /**
+     * Heights outside the boundaries or with no order at all
+     */
+    private static final double[] SPECIAL = {
+            0.0, -0.0, Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY,
+            Double.MIN_VALUE, -Double.MIN_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE,
+            150, -150, 1e300, -1e300
+    };
+
+    private static Vector<Pair<Character, Double>> table(double[] bounds) {
+        Vector<Pair<Character, Double>> V = new Vector<>();
+        for (int i=0 ; i<bounds.length ; i++) V.addElement(new Pair<>((char) ('B' + i), bounds[i]));
+        return V;
+    }
+
+    private static byte[] symbols(double[] bounds) {
+        byte[] symbols = new byte[bounds.length];
+        for (int i=0 ; i<bounds.length ; i++) symbols[i] = (byte) ('B' + i);
+        return symbols;
+    }
+
+    /**
+     * @return      Boundaries and their neighbouring doubles, heights below the first and above
+     *              the last, special values, then random heights over and around the boundaries
+     */
+    private static double[] heights(double[] bounds, Random rand) {
+        double min = bounds[0], max = bounds[bounds.length-1];
+        double span = Math.max(max - min, 1);
+        double[] heights = new double[3*bounds.length + 4 + SPECIAL.length + 5000];
+        int k = 0;
+        for (double b : bounds) {
+            heights[k++] = b;
+            heights[k++] = Math.nextUp(b);
+            heights[k++] = Math.nextDown(b);
+        }
+        heights[k++] = min - span;
+        heights[k++] = Math.nextDown(min);
+        heights[k++] = max + span;
+        heights[k++] = Math.nextUp(max);
+        for (double h : SPECIAL) heights[k++] = h;
+        while( k<heights.length ) heights[k++] = min - span + 3*span*rand.nextDouble();
+        return heights;
+    }
+
+    @Test
+    public void continuousSplitSearchAnswersAsTree() {
+        Random rand = new Random(11);
+        for (double[] bounds : TABLES) {
+            ContinuousSplitBT tree = new ContinuousSplitBT(table(bounds));
+            ContinuousSplitSearch search = new ContinuousSplitSearch(bounds, symbols(bounds));
+            for (double h : heights(bounds, rand)) {
+                assertEquals(bounds.length + " boundaries, height=" + h, tree.search(h), (Character) (char) search.search(h));
+            }
+        }
+    }
+
+    @Test
+    public void twoDirectSplitSearchAnswersAsTree() {
+        Random rand = new Random(13);
+        for (double[] bounds : TABLES) {
+            TwoDirectSplitBT tree = new TwoDirectSplitBT(table(bounds));
+            TwoDirectSplitSearch search = new TwoDirectSplitSearch(bounds, symbols(bounds));
+            for (double h : heights(bounds, rand)) {
+                assertEquals(bounds.length + " boundaries, height=" + h, tree.search(h), (Character) (char) search.search(h));
+            }
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/** 
+* Copyright 2018 Antonia Tsili NCSR Demokritos
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package gr.demokritos.iit.encode;
+
+import gr.demokritos.iit.utils.TwoDirectSplitBT;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * <p>{@link SimpleEncoder#symbol(double)} finds zones by index; it must give the character
+ * a search of {@link TwoDirectSplitBT} over the same table gives, boundaries included.</p>
+ */
+public class SimpleEncoderTest {
+
+    /**
+     * Heights outside the zones or with no zone at all
+     */
+    private static final double[] SPECIAL = {
+            0.0, -0.0, Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY,
+            Double.MIN_VALUE, -Double.MIN_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE,
+            100.5, -100.5, 150, -150, 1e300, -1e300
+    };
+
+    private static SimpleEncoder encoder(int spacesNo) {
+        return new SimpleEncoder(spacesNo, new Surface(1, 1, 1, 4, 2));
+    }
+
+    private static void check(SimpleEncoder encoder, TwoDirectSplitBT tree, double height) {
+        assertEquals("z=" + (2*encoder.half) + ", height=" + height, tree.search(height), (Character) encoder.symbol(height));
+    }
+
+    @Test
+    public void sameSymbolAsTreeAtBoundaries() {
+        for (int z=2 ; z<=52 ; z+=2) {
+            SimpleEncoder encoder = encoder(z);
+            TwoDirectSplitBT tree = new TwoDirectSplitBT(encoder.STable);
+            for (double b : encoder.bounds) {
+                check(encoder, tree, b);
+                check(encoder, tree, Math.nextUp(b));
+                check(encoder, tree, Math.nextDown(b));
+            }
+            for (double h : SPECIAL) {
+                check(encoder, tree, h);
+            }
+        }
+    }
+
+    @Test
+    public void sameSymbolAsTreeInsideZones() {
+        Random rand = new Random(42);
+        for (int z=2 ; z<=52 ; z+=2) {
+            SimpleEncoder encoder = encoder(z);
+            TwoDirectSplitBT tree = new TwoDirectSplitBT(encoder.STable);
+            for (int k=0 ; k<10000 ; k++) {
+                check(encoder, tree, 220*rand.nextDouble() - 110);
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void oddNumberOfSpacesRejected() {
+        encoder(5);
+    }
+}
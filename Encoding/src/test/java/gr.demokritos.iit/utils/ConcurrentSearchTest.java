@@ -0,0 +1,151 @@
+/** 
+* Copyright 2018 Antonia Tsili NCSR Demokritos
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package gr.demokritos.iit.utils;
+
+import javafx.util.Pair;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.DoubleFunction;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * <p>Searches built from different tables, searched at the same time from several threads,
+ * each give the answers of their own table.</p>
+ */
+public class ConcurrentSearchTest {
+
+    private static final int THREADS = 4;
+    private static final int ROUNDS = 50;
+
+    /**
+     * Boundaries around zero (middle one at 0), with capital letters
+     */
+    private static final double[] BOUNDS_A = {-90, -60, -35, -20, -8, 0, 5, 17, 40, 66, 100};
+    /**
+     * Boundaries of other ranges, with small letters
+     */
+    private static final double[] BOUNDS_B = {-3.5, -2, -1.25, -0.5, 0, 0.3, 0.9, 1.7, 2.6};
+
+    private static byte[] symbols(double[] bounds, char first) {
+        byte[] symbols = new byte[bounds.length];
+        for (int i=0 ; i<bounds.length ; i++) symbols[i] = (byte) (first + i);
+        return symbols;
+    }
+
+    private static Vector<Pair<Character, Double>> table(double[] bounds, char first) {
+        Vector<Pair<Character, Double>> V = new Vector<>();
+        for (int i=0 ; i<bounds.length ; i++) V.addElement(new Pair<>((char) (first + i), bounds[i]));
+        return V;
+    }
+
+    /**
+     * @return      Boundaries of both tables and their neighbouring doubles, then random heights
+     */
+    private static double[] heights() {
+        List<Double> h = new ArrayList<>();
+        for (double[] bounds : new double[][] {BOUNDS_A, BOUNDS_B}) {
+            for (double b : bounds) {
+                h.add(b);
+                h.add(Math.nextUp(b));
+                h.add(Math.nextDown(b));
+            }
+        }
+        Random rand = new Random(7);
+        for (int k=0 ; k<2000 ; k++) h.add(240*rand.nextDouble() - 120);
+        for (int k=0 ; k<2000 ; k++) h.add(8*rand.nextDouble() - 4);
+        double[] heights = new double[h.size()];
+        for (int k=0 ; k<heights.length ; k++) heights[k] = h.get(k);
+        return heights;
+    }
+
+    private static char[] answers(DoubleFunction<Character> search, double[] heights) {
+        char[] c = new char[heights.length];
+        for (int k=0 ; k<heights.length ; k++) c[k] = search.apply(heights[k]);
+        return c;
+    }
+
+    /**
+     * <p>Search with both functions on a pool of threads, alternately and starting together,
+     * and compare with the answers each gives on its own</p>
+     */
+    private static void assertOwnAnswers(DoubleFunction<Character> a, DoubleFunction<Character> b) throws Exception {
+        double[] heights = heights();
+        char[] expectedA = answers(a, heights);
+        char[] expectedB = answers(b, heights);
+        assertTrue("tables give different answers", !Arrays.equals(expectedA, expectedB));
+
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CyclicBarrier start = new CyclicBarrier(THREADS);
+        try {
+            List<Future<char[]>> results = new ArrayList<>();
+            for (int r=0 ; r<ROUNDS*THREADS ; r++) {
+                DoubleFunction<Character> search = r%2==0 ? a : b;
+                Callable<char[]> task = () -> {
+                    start.await();
+                    return answers(search, heights);
+                };
+                results.add(pool.submit(task));
+            }
+            for (int r=0 ; r<results.size() ; r++) {
+                assertArrayEquals("search " + (r%2==0 ? "A" : "B") + " of round " + r,
+                        r%2==0 ? expectedA : expectedB, results.get(r).get());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void continuousSplitTreesKeepTheirOwnTables() throws Exception {
+        BinaryTree a = new ContinuousSplitBT(table(BOUNDS_A, 'A'));
+        BinaryTree b = new ContinuousSplitBT(table(BOUNDS_B, 'a'));
+        assertOwnAnswers(a::search, b::search);
+    }
+
+    @Test
+    public void twoDirectSplitTreesKeepTheirOwnTables() throws Exception {
+        BinaryTree a = new TwoDirectSplitBT(table(BOUNDS_A, 'A'));
+        BinaryTree b = new TwoDirectSplitBT(table(BOUNDS_B, 'a'));
+        assertOwnAnswers(a::search, b::search);
+    }
+
+    @Test
+    public void continuousSplitSearchesKeepTheirOwnTables() throws Exception {
+        EytzingerSearch a = new ContinuousSplitSearch(BOUNDS_A, symbols(BOUNDS_A, 'A'));
+        EytzingerSearch b = new ContinuousSplitSearch(BOUNDS_B, symbols(BOUNDS_B, 'a'));
+        assertOwnAnswers(h -> (char) a.search(h), h -> (char) b.search(h));
+    }
+
+    @Test
+    public void twoDirectSplitSearchesKeepTheirOwnTables() throws Exception {
+        EytzingerSearch a = new TwoDirectSplitSearch(BOUNDS_A, symbols(BOUNDS_A, 'A'));
+        EytzingerSearch b = new TwoDirectSplitSearch(BOUNDS_B, symbols(BOUNDS_B, 'a'));
+        assertOwnAnswers(h -> (char) a.search(h), h -> (char) b.search(h));
+    }
+}
@@ -0,0 +1,56 @@
+/**
+ * Copyright 2018 Antonia Tsili NCSR Demokritos
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package gr.demokritos.iit.sproduce.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+
+/**
+ * <p>Runs the benchmarks matching a pattern once single-threaded and once
+ * with as many threads as available processors, always with the GC profiler.
+ * <br>Results of each run are saved as <i>jmh-t&lt;threads&gt;.json</i>.</p>
+ *
+ * <p>Arguments (both optional): benchmark pattern and comma separated values of N,
+ * e.g. <i>FastFourier 64,512</i>.
+ * <br>For any other combination of options use <i>org.openjdk.jmh.Main</i>.</p>
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] argv) throws RunnerException {
+        String include = argv.length>0 ? argv[0] : "gr.demokritos.iit.sproduce";
+        int cores = Runtime.getRuntime().availableProcessors();
+        int[] threads = cores>1 ? new int[]{ 1, cores } : new int[]{ 1 };
+
+        for (int t : threads) {
+            ChainedOptionsBuilder opt = new OptionsBuilder()
+                    .include(include)
+                    .threads(t)
+                    .addProfiler(GCProfiler.class)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result("jmh-t" + t + ".json");
+            if( argv.length>1 ) {
+                opt.param("N", argv[1].split(","));
+            }
+            new Runner(opt.build()).run();
+        }
+    }
+}
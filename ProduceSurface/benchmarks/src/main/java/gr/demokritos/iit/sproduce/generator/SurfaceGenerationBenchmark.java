@@ -0,0 +1,176 @@
+/**
+ * Copyright 2018 Antonia Tsili NCSR Demokritos
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package gr.demokritos.iit.sproduce.generator;
+
+import gr.demokritos.iit.sproduce.utils.DoubleGrid;
+import gr.demokritos.iit.sproduce.utils.StageMetrics;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * <p>Construction of the Gaussian filter and generation of whole surfaces
+ * with NxN points, through the filter (by Fourier transforms or recursive sweeps)
+ * or from analytic spectra, into reused buffers and workspaces.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms6g", "-Xmx6g"})
+public class SurfaceGenerationBenchmark {
+
+    /**
+     * Number of points along square side
+     */
+    @Param({"64", "128", "256", "512", "1024", "2048", "4096"})
+    int N;
+
+    /**
+     * Isotropic surface
+     */
+    SurfaceParameters isotropic;
+    /**
+     * Non-isotropic surface
+     */
+    SurfaceParameters nonIsotropic;
+    /**
+     * Isotropic surface of Gaussian autocovariance, analytic spectrum
+     */
+    SurfaceParameters gaussian;
+    /**
+     * Isotropic power-law surface, analytic spectrum
+     */
+    SurfaceParameters powerLaw;
+    /**
+     * Distances from centre along side
+     */
+    double[] L;
+    /**
+     * Destination of filter
+     */
+    DoubleGrid F;
+
+    SurfaceGenerator generator = new SurfaceGenerator();
+    /**
+     * Generator applying the filter by recursive sweeps
+     */
+    SurfaceGenerator recursive = new SurfaceGenerator(StageMetrics.DISABLED, true);
+    /**
+     * Reused output of generation
+     */
+    SurfaceBuffer buffer;
+    /**
+     * Reused off-heap output of generation
+     */
+    SurfaceBuffer offHeapBuffer;
+    /**
+     * Working storage reused by generation
+     */
+    SurfaceWorkspace workspace;
+    /**
+     * Off-heap working storage reused by generation
+     */
+    SurfaceWorkspace offHeapWorkspace;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        isotropic = new SurfaceParameters(N, 100, 2, 8);
+        nonIsotropic = new SurfaceParameters(N, 100, 2, 8, 6);
+        gaussian = isotropic.withAutocovariance(Autocovariance.GAUSSIAN);
+        powerLaw = isotropic.withAutocovariance(Autocovariance.POWER_LAW).withHurst(0.8);
+        L = SurfaceGenerator.meshLine(isotropic);
+        F = DoubleGrid.onHeap(N, N);
+        buffer = new SurfaceBuffer(N);
+        offHeapBuffer = SurfaceBuffer.offHeap();
+        workspace = new SurfaceWorkspace();
+        offHeapWorkspace = SurfaceWorkspace.offHeap();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        offHeapBuffer.close();
+        offHeapWorkspace.close();
+    }
+
+    @Benchmark
+    public double[] meshGrid() {
+        return SurfaceGenerator.meshLine(isotropic);
+    }
+
+    @Benchmark
+    public DoubleGrid filterIsotropic() {
+        SurfaceGenerator.filter(isotropic, L, F);
+        return F;
+    }
+
+    @Benchmark
+    public DoubleGrid filterNonIsotropic() {
+        SurfaceGenerator.filter(nonIsotropic, L, F);
+        return F;
+    }
+
+    @Benchmark
+    public SurfaceBuffer isotropicSurface() throws ImError {
+        generator.generate(isotropic, buffer, workspace);
+        return buffer;
+    }
+
+    @Benchmark
+    public SurfaceBuffer isotropicSurfaceNewWorkspace() throws ImError {
+        generator.generate(isotropic, buffer);
+        return buffer;
+    }
+
+    @Benchmark
+    public SurfaceBuffer nonIsotropicSurface() throws ImError {
+        generator.generate(nonIsotropic, buffer, workspace);
+        return buffer;
+    }
+
+    @Benchmark
+    public SurfaceBuffer recursiveIsotropicSurface() throws ImError {
+        recursive.generate(isotropic, buffer, workspace);
+        return buffer;
+    }
+
+    @Benchmark
+    public SurfaceBuffer recursiveNonIsotropicSurface() throws ImError {
+        recursive.generate(nonIsotropic, buffer, workspace);
+        return buffer;
+    }
+
+    @Benchmark
+    public SurfaceBuffer gaussianSurface() throws ImError {
+        generator.generate(gaussian, buffer, workspace);
+        return buffer;
+    }
+
+    @Benchmark
+    public SurfaceBuffer powerLawSurface() throws ImError {
+        generator.generate(powerLaw, buffer, workspace);
+        return buffer;
+    }
+
+    @Benchmark
+    public SurfaceBuffer offHeapSurface() throws ImError {
+        generator.generate(nonIsotropic, offHeapBuffer, offHeapWorkspace);
+        return offHeapBuffer;
+    }
+}
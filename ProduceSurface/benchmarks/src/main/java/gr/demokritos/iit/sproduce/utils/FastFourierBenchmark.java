@@ -0,0 +1,155 @@
+/**
+ * Copyright 2018 Antonia Tsili NCSR Demokritos
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package gr.demokritos.iit.sproduce.utils;
+
+import edu.princeton.cs.algs4.Complex;
+import edu.princeton.cs.algs4.FFT;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * <p>One and two dimensional Fourier transforms and the element-wise
+ * product of spectra, for square matrices of side N.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms6g", "-Xmx6g"})
+public class FastFourierBenchmark {
+
+    /**
+     * Number of points along square side
+     */
+    @Param({"64", "128", "256", "512", "1024", "2048", "4096"})
+    int N;
+
+    FastFourier fft2;
+    /**
+     * One row of N complex numbers
+     */
+    Complex[] row;
+    /**
+     * NxN matrix of complex numbers
+     */
+    Complex[][] grid;
+    /**
+     * Second NxN matrix, multiplier of grid
+     */
+    Complex[][] other;
+    /**
+     * Result of multiplication
+     */
+    Complex[][] out;
+    /**
+     * Real and imaginary parts of grid, row-major
+     */
+    double[] gridRe, gridIm;
+    /**
+     * Working copy of grid for the in-place transforms
+     */
+    double[] workRe, workIm;
+    /**
+     * Real and imaginary parts of other, row-major
+     */
+    double[] otherRe, otherIm;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random rand = new Random(N);
+        fft2 = new FastFourier(N, N);
+
+        double[][] heights = new double[N][N];
+        double[][] filter = new double[N][N];
+        for (int i=0 ; i<N ; i++) {
+            for (int j=0 ; j<N ; j++) {
+                heights[i][j] = rand.nextGaussian();
+                filter[i][j] = rand.nextDouble();
+            }
+        }
+        grid = fft2.double2Complex(heights);
+        other = fft2.double2Complex(filter);
+        row = grid[0];
+        out = new Complex[N][N];
+
+        gridRe = new double[N*N];
+        gridIm = new double[N*N];
+        otherRe = new double[N*N];
+        otherIm = new double[N*N];
+        for (int i=0 ; i<N ; i++) {
+            for (int j=0 ; j<N ; j++) {
+                gridRe[i*N+j] = heights[i][j];
+                otherRe[i*N+j] = filter[i][j];
+            }
+        }
+        workRe = new double[N*N];
+        workIm = new double[N*N];
+    }
+
+    @Benchmark
+    public Complex[] fft1D() {
+        return FFT.fft(row);
+    }
+
+    @Benchmark
+    public Complex[][] fTransform() {
+        return fft2.FTransform(grid);
+    }
+
+    @Benchmark
+    public Complex[][] iFTransform() {
+        return fft2.iFTransform(grid);
+    }
+
+    @Benchmark
+    public Complex[][] complexArrayMult() {
+        fft2.ComplexArray_mult(grid, other, out);
+        return out;
+    }
+
+    /**
+     * In-place transform on flat arrays, including the copy of its input
+     */
+    @Benchmark
+    public double[] fTransformFlat() {
+        System.arraycopy(gridRe, 0, workRe, 0, N*N);
+        System.arraycopy(gridIm, 0, workIm, 0, N*N);
+        fft2.FTransform(workRe, workIm);
+        return workRe;
+    }
+
+    /**
+     * In-place inverse transform on flat arrays, including the copy of its input
+     */
+    @Benchmark
+    public double[] iFTransformFlat() {
+        System.arraycopy(gridRe, 0, workRe, 0, N*N);
+        System.arraycopy(gridIm, 0, workIm, 0, N*N);
+        fft2.iFTransform(workRe, workIm);
+        return workRe;
+    }
+
+    @Benchmark
+    public double[] complexArrayMultFlat() {
+        fft2.ComplexArray_mult(gridRe, gridIm, otherRe, otherIm, workRe, workIm);
+        return workRe;
+    }
+}
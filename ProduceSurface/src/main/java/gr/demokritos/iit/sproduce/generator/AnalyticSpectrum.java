@@ -0,0 +1,96 @@
+/** 
+* Copyright 2018 Antonia Tsili NCSR Demokritos
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package gr.demokritos.iit.sproduce.generator;
+
+
+/**
+ * <p>Amplitude spectrum of an autocovariance family in closed form, evaluated on the
+ * frequency grid row by row. Carried by the families of {@link Autocovariance} that
+ * have one; see there for the amplitudes.</p>
+ *
+ * <p>Implementations hold no state and may be shared between threads.</p>
+ */
+interface AnalyticSpectrum {
+
+    /**
+     * Gaussian autocovariance: exp(-q&sup2;/8), separable into one factor per column and one per row
+     */
+    AnalyticSpectrum GAUSSIAN = new AnalyticSpectrum() {
+        public double[] columns(double[] qx2, double hurst) {
+            double[] c = new double[qx2.length];
+            for (int j=0 ; j<c.length ; j++) {
+                c[j] = Math.exp( -qx2[j]/8 );
+            }
+            return c;
+        }
+        public void row(double qy2, double[] columns, double hurst, double[] w) {
+            double fy = Math.exp( -qy2/8 );
+            for (int j=0 ; j<w.length ; j++) {
+                w[j] = fy*columns[j];
+            }
+        }
+    };
+
+    /**
+     * Exponential autocovariance: (1+q&sup2;)<sup>-3/4</sup>
+     */
+    AnalyticSpectrum EXPONENTIAL = new AnalyticSpectrum() {
+        public double[] columns(double[] qx2, double hurst) {
+            return qx2;
+        }
+        public void row(double qy2, double[] columns, double hurst, double[] w) {
+            for (int j=0 ; j<w.length ; j++) {
+                double s = 1 + qy2 + columns[j];
+                w[j] = 1 / (Math.sqrt(s) * Math.sqrt(Math.sqrt(s))); // s^(-3/4)
+            }
+        }
+    };
+
+    /**
+     * Power-law (fractal) spectrum: (1+q&sup2;)<sup>-(1+H)/2</sup>
+     */
+    AnalyticSpectrum POWER_LAW = new AnalyticSpectrum() {
+        public double[] columns(double[] qx2, double hurst) {
+            return qx2;
+        }
+        public void row(double qy2, double[] columns, double hurst, double[] w) {
+            double exponent = -(1 + hurst)/2;
+            for (int j=0 ; j<w.length ; j++) {
+                w[j] = Math.pow(1 + qy2 + columns[j], exponent);
+            }
+        }
+    };
+
+    /**
+     * <p>Per column part of the amplitudes, computed once per surface</p>
+     *
+     * @param qx2       (k<sub>x</sub>clx)&sup2; of every column
+     * @param hurst     Hurst exponent
+     * @return          Values handed to {@link #row(double, double[], double, double[])}
+     */
+    double[] columns(double[] qx2, double hurst);
+
+    /**
+     * <p>Amplitudes of one row of the frequency grid</p>
+     *
+     * @param qy2       (k<sub>y</sub>cly)&sup2; of the row
+     * @param columns   Result of {@link #columns(double[], double)}
+     * @param hurst     Hurst exponent
+     * @param w         Destination of amplitudes
+     */
+    void row(double qy2, double[] columns, double hurst, double[] w);
+}
@@ -0,0 +1,102 @@
+/** 
+* Copyright 2018 Antonia Tsili NCSR Demokritos
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package gr.demokritos.iit.sproduce.generator;
+
+import java.util.Locale;
+
+
+/**
+ * <p>Family of the autocovariance function of generated surfaces.</p>
+ *
+ * <p>{@link #EXPONENTIAL_FILTER} is the original method: an exponential filter is
+ * built in space and Fourier transformed. The other families give the amplitude
+ * spectrum (square root of the power spectral density) in closed form on the
+ * frequency grid, so no filter and no filter transform are needed. With wavenumbers
+ * k<sub>x</sub>, k<sub>y</sub> = 2&pi;m/rL and q&sup2; = (k<sub>x</sub>clx)&sup2; + (k<sub>y</sub>cly)&sup2;
+ * the amplitudes are:
+ * <ul>
+ *      <li>{@link #GAUSSIAN}: exp(-q&sup2;/8), for C(r) = h&sup2;exp(-x&sup2;/clx&sup2; - y&sup2;/cly&sup2;)</li>
+ *      <li>{@link #EXPONENTIAL}: (1+q&sup2;)<sup>-3/4</sup>, for C(r) = h&sup2;exp(-&radic;(x&sup2;/clx&sup2; + y&sup2;/cly&sup2;))</li>
+ *      <li>{@link #POWER_LAW}: (1+q&sup2;)<sup>-(1+H)/2</sup>, a self-affine (fractal) surface of Hurst
+ *          exponent H above wavenumber 1/cl and flat below it; H = 0.5 gives the exponential family</li>
+ * </ul>
+ * Amplitudes are normalized so that the RMS height is h.</p>
+ *
+ * <p>{@link #MEASURED} takes the amplitudes from a {@link MeasuredSpectrum} estimated
+ * out of measured height maps, attached through {@link SurfaceParameters#withSpectrum(MeasuredSpectrum)}.</p>
+ */
+public enum Autocovariance {
+
+    /**
+     * Exponential filter built in space and transformed (original method)
+     */
+    EXPONENTIAL_FILTER(null),
+
+    /**
+     * Gaussian autocovariance, analytic spectrum
+     */
+    GAUSSIAN(AnalyticSpectrum.GAUSSIAN),
+
+    /**
+     * Exponential autocovariance, analytic spectrum
+     */
+    EXPONENTIAL(AnalyticSpectrum.EXPONENTIAL),
+
+    /**
+     * Spectrum estimated from measured height maps
+     */
+    MEASURED(null),
+
+    /**
+     * Power-law (fractal) spectrum of given Hurst exponent, analytic
+     */
+    POWER_LAW(AnalyticSpectrum.POWER_LAW);
+
+    /**
+     * Spectrum in closed form (null if transformed from a filter or measured)
+     */
+    private final AnalyticSpectrum analytic;
+
+    Autocovariance(AnalyticSpectrum analytic) {
+        this.analytic = analytic;
+    }
+
+    /**
+     * @return      Whether the amplitude spectrum is known without transforming a filter
+     *              (in closed form or measured)
+     */
+    public boolean isSpectral() {
+        return this!=EXPONENTIAL_FILTER;
+    }
+
+    /**
+     * @param name      Name of family, in any case
+     * @return          Family of given name
+     * @throws IllegalArgumentException     If there is no such family
+     */
+    public static Autocovariance forName(String name) {
+        return valueOf(name.trim().toUpperCase(Locale.ROOT));
+    }
+
+    /**
+     * @return      Spectrum in closed form, or null for families without one
+     *              ({@link #EXPONENTIAL_FILTER} and {@link #MEASURED})
+     */
+    AnalyticSpectrum analytic() {
+        return analytic;
+    }
+}
@@ -0,0 +1,181 @@
+/** 
+* Copyright 2018 Antonia Tsili NCSR Demokritos
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package gr.demokritos.iit.sproduce.generator;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.Set;
+
+
+/**
+ * <p>Journal of a batch run which allows an interrupted run to be resumed.</p>
+ *
+ * <p>The journal is kept next to the output file (<i>&lt;output&gt;.journal</i>).
+ * Its first line holds N and every other setting of the run that changes the output,
+ * <br><i># N:&lt;N&gt;(:&lt;option&gt;:&lt;value&gt;)* row,ID,seed,offset</i>
+ * <br>and a run is resumed only with the same ones.
+ * After a surface has been written and synced to the output file, one line is appended:
+ * <br><i>row,ID,seed,offset</i>
+ * <br>where row is the position of the parameters in the input file (0 for the first
+ * line after the header), ID the first column of that line, seed the seed of the random
+ * heights and offset the size of the output file including that surface.</p>
+ *
+ * <p>On resume the output file is truncated to the last recorded offset, removing any
+ * surface that was partly written, and recorded rows are skipped. A journal line that
+ * was cut short is discarded.</p>
+ */
+final class BatchJournal implements AutoCloseable {
+
+    /**
+     * Appended to name of output file
+     */
+    static final String SUFFIX = ".journal";
+
+    /**
+     * Rows already written
+     */
+    private final Set<Integer> done = new HashSet<>();
+    /**
+     * Size of output file including last recorded surface
+     */
+    private long committed;
+    /**
+     * Journal, open for appending
+     */
+    private final FileOutputStream journal;
+
+    /**
+     * <p>Open the journal of an output file. An existing journal is continued,
+     * otherwise a new one is started and the output file is emptied.</p>
+     *
+     * @param out_filename  Name of output file
+     * @param N             Number of surface points (along square side) of the run
+     * @param settings      Other settings of the run that change the output
+     *                      (&lt;option&gt;:&lt;value&gt; pairs separated by colons, empty if none)
+     * @throws IOException  If journal or output cannot be read or written,
+     *                      or they do not belong to the same run
+     */
+    BatchJournal(String out_filename, int N, String settings) throws IOException {
+        File out = new File(out_filename);
+        File file = new File(out_filename + SUFFIX);
+        String run = "N:" + N + (settings.isEmpty() ? "" : ":" + settings);
+        String header = "# " + run + " row,ID,seed,offset\n";
+
+        long valid = 0; // length of journal up to its last complete line
+        if( file.exists() ) {
+            byte[] content = Files.readAllBytes(file.toPath());
+            int begin = 0;
+            for (int k=0 ; k<content.length ; k++) {
+                if( content[k]!='\n' ) continue;
+                String line = new String(content, begin, k-begin, StandardCharsets.US_ASCII);
+                if( begin==0 ) {
+                    if( !line.equals(header.trim()) )
+                        throw new IOException("Journal " + file + " does not belong to a run with " + run + ": " + line);
+                } else if( !parse(line) ) {
+                    break;
+                }
+                begin = k+1;
+                valid = begin;
+            }
+        }
+
+        long length = out.exists() ? out.length() : 0;
+        if( length<committed )
+            throw new IOException("Output file " + out + " is shorter than its journal records");
+        try (RandomAccessFile raf = new RandomAccessFile(out, "rw")) {
+            raf.setLength(committed); // drop partly written surface (or everything on a new run)
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(valid);
+        }
+
+        journal = new FileOutputStream(file, true);
+        if( valid==0 ) {
+            journal.write(header.getBytes(StandardCharsets.US_ASCII));
+            journal.getFD().sync();
+        }
+    }
+
+    /**
+     * <p>Read one journal line</p>
+     *
+     * @return      False if line is not a complete record
+     */
+    private boolean parse(String line) {
+        String[] fields = line.split(",");
+        if( fields.length!=4 ) return false;
+        try {
+            int row = Integer.parseInt(fields[0]);
+            Long.parseLong(fields[2]);
+            long offset = Long.parseLong(fields[3]);
+            done.add(row);
+            committed = offset;
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @param row   Position of parameters in input file
+     * @return      Whether the surface of this row has already been written
+     */
+    boolean isDone(int row) {
+        return done.contains(row);
+    }
+
+    /**
+     * @return      Number of surfaces already written
+     */
+    int completed() {
+        return done.size();
+    }
+
+    /**
+     * @return      Size of output file including last recorded surface
+     */
+    long committedOffset() {
+        return committed;
+    }
+
+    /**
+     * <p>Record a surface whose bytes have been synced to the output file</p>
+     *
+     * @param row       Position of parameters in input file
+     * @param id        ID of input line
+     * @param seed      Seed of random heights
+     * @param offset    Size of output file including this surface
+     * @throws IOException
+     */
+    void record(int row, String id, long seed, long offset) throws IOException {
+        String line = row + "," + id + "," + seed + "," + offset + "\n";
+        journal.write(line.getBytes(StandardCharsets.US_ASCII));
+        journal.getFD().sync();
+        done.add(row);
+        committed = offset;
+    }
+
+    @Override
+    public void close() throws IOException {
+        journal.close();
+    }
+}
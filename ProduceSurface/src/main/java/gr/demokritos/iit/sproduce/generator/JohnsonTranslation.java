@@ -0,0 +1,268 @@
+/** 
+* Copyright 2018 Antonia Tsili NCSR Demokritos
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package gr.demokritos.iit.sproduce.generator;
+
+
+/**
+ * <p>Translation of a standard normal variable z into a variable of given
+ * skewness and kurtosis (Pearson's, 3 for normal) by one of Johnson's curves:
+ * <ul>
+ *      <li>S<sub>U</sub> (unbounded) y = sinh((z-&gamma;)/&delta;), for kurtosis above that of the lognormal of the same skewness</li>
+ *      <li>S<sub>B</sub> (bounded) y = 1/(1+exp(-(z-&gamma;)/&delta;)), for kurtosis below it</li>
+ *      <li>normal (identity) for skewness 0 and kurtosis 3</li>
+ * </ul>
+ * The result is standardized to zero mean and unit variance.</p>
+ *
+ * <p>&gamma; and &delta; are fitted to the positive skewness by damped Newton
+ * (Levenberg&ndash;Marquardt) iterations on the moments, which are exact for
+ * S<sub>U</sub> and computed by quadrature for S<sub>B</sub>; a negative
+ * skewness is obtained by reflection.</p>
+ */
+public final class JohnsonTranslation {
+
+    /**
+     * Johnson curves
+     */
+    public enum Type { NORMAL, SU, SB }
+
+    /**
+     * Points of quadrature over [-Z_MAX,Z_MAX] (odd, for Simpson's rule)
+     */
+    private static final int QUADRATURE_POINTS = 2001;
+    private static final double Z_MAX = 9.0;
+
+    private final Type type;
+    private final double gamma;
+    private final double delta;
+    /**
+     * -1 if reflected for negative skewness
+     */
+    private final double sign;
+    private final double mean;
+    private final double sd;
+    private final double skewness;
+    private final double kurtosis;
+
+    private JohnsonTranslation(Type type, double gamma, double delta, double sign) {
+        this.type = type;
+        this.gamma = gamma;
+        this.delta = delta;
+        this.sign = sign;
+        double[] m = moments(type, gamma, delta);
+        this.mean = m[0];
+        this.sd = Math.sqrt(m[1]);
+        this.skewness = sign*m[2];
+        this.kurtosis = m[3];
+    }
+
+    /**
+     * <p>Fit the curve of given moments</p>
+     *
+     * @param skewness      Target skewness
+     * @param kurtosis      Target kurtosis (3 for normal), above skewness&sup2;+1
+     * @return              Translation whose result has (nearly) the given moments
+     * @throws IllegalArgumentException     If no distribution has these moments
+     */
+    public static JohnsonTranslation fit(double skewness, double kurtosis) {
+        if( !(kurtosis > skewness*skewness + 1) )
+            throw new IllegalArgumentException("No distribution has skewness " + skewness + " and kurtosis " + kurtosis);
+        double s = Math.abs(skewness);
+        double sign = skewness<0 ? -1 : 1;
+        if( s<1e-9 && Math.abs(kurtosis-3)<1e-9 )
+            return new JohnsonTranslation(Type.NORMAL, 0, 1, 1);
+
+        Type type = kurtosis>lognormalKurtosis(s) ? Type.SU : Type.SB;
+        double[] p = type==Type.SU
+                ? new double[]{ 0, Math.log(1/Math.sqrt(Math.log(Math.sqrt(Math.max(2*kurtosis-2, 4.0001)) - 1))) }
+                : new double[]{ 0, 0 };
+        p = solve(type, p, s, kurtosis);
+        return new JohnsonTranslation(type, p[0], Math.exp(p[1]), sign);
+    }
+
+    /**
+     * <p>Kurtosis of the lognormal distribution of given skewness,
+     * the border between S<sub>U</sub> and S<sub>B</sub></p>
+     */
+    static double lognormalKurtosis(double skewness) {
+        double lo = 1, hi = 2;
+        while( (hi+2)*Math.sqrt(hi-1) < skewness ) hi *= 2;
+        for (int k=0 ; k<100 ; k++) { // skewness (w+2)sqrt(w-1) increases with w
+            double w = (lo+hi)/2;
+            if( (w+2)*Math.sqrt(w-1) < skewness ) lo = w; else hi = w;
+        }
+        double w = (lo+hi)/2;
+        return w*w*w*w + 2*w*w*w + 3*w*w - 3;
+    }
+
+    /**
+     * <p>Levenberg&ndash;Marquardt on (&gamma;, ln &delta;) for residuals of skewness and kurtosis</p>
+     */
+    private static double[] solve(Type type, double[] p, double skewness, double kurtosis) {
+        double[] r = residuals(type, p, skewness, kurtosis);
+        double cost = r[0]*r[0] + r[1]*r[1];
+        double lambda = 1e-3;
+        for (int it=0 ; it<500 && cost>1e-20 ; it++) {
+            double[][] J = new double[2][2];
+            for (int c=0 ; c<2 ; c++) {
+                double step = 1e-6 * Math.max(1, Math.abs(p[c]));
+                double[] up = p.clone(), down = p.clone();
+                up[c] += step;
+                down[c] -= step;
+                double[] ru = residuals(type, up, skewness, kurtosis);
+                double[] rd = residuals(type, down, skewness, kurtosis);
+                J[0][c] = (ru[0]-rd[0]) / (2*step);
+                J[1][c] = (ru[1]-rd[1]) / (2*step);
+            }
+            // (J'J + lambda diag(J'J)) dp = -J'r
+            double a = J[0][0]*J[0][0] + J[1][0]*J[1][0];
+            double b = J[0][0]*J[0][1] + J[1][0]*J[1][1];
+            double d = J[0][1]*J[0][1] + J[1][1]*J[1][1];
+            double g0 = J[0][0]*r[0] + J[1][0]*r[1];
+            double g1 = J[0][1]*r[0] + J[1][1]*r[1];
+            boolean improved = false;
+            while( !improved && lambda<1e12 ) {
+                double a1 = a*(1+lambda) + 1e-12, d1 = d*(1+lambda) + 1e-12;
+                double det = a1*d1 - b*b;
+                double[] q = { p[0] - (d1*g0 - b*g1)/det, p[1] - (a1*g1 - b*g0)/det };
+                q[1] = Math.max(-6, Math.min(6, q[1]));
+                double[] rq = residuals(type, q, skewness, kurtosis);
+                double c = rq[0]*rq[0] + rq[1]*rq[1];
+                if( c<cost ) {
+                    p = q;
+                    r = rq;
+                    cost = c;
+                    lambda = Math.max(lambda/3, 1e-12);
+                    improved = true;
+                } else {
+                    lambda *= 4;
+                }
+            }
+            if( !improved ) break;
+        }
+        return p;
+    }
+
+    private static double[] residuals(Type type, double[] p, double skewness, double kurtosis) {
+        double[] m = moments(type, p[0], Math.exp(p[1]));
+        if( Double.isNaN(m[2]) || Double.isNaN(m[3]) || Double.isInfinite(m[3]) )
+            return new double[]{ 1e10, 1e10 };
+        return new double[]{ m[2]-skewness, (m[3]-kurtosis)/Math.max(1, kurtosis) };
+    }
+
+    /**
+     * <p>Mean, variance, skewness and kurtosis of the untransformed curve</p>
+     */
+    static double[] moments(Type type, double gamma, double delta) {
+        if( type==Type.NORMAL ) return new double[]{ 0, 1, 0, 3 };
+        if( type==Type.SU ) { // closed form, Johnson (1949)
+            double w = Math.exp(1/(delta*delta));
+            double W = -gamma/delta; // y = sinh((z-gamma)/delta) is y = sinh(z/delta + W) with W = -gamma/delta
+            double m1 = Math.sqrt(w) * Math.sinh(W);
+            double m2 = 0.5 * (w-1) * (w*Math.cosh(2*W) + 1);
+            double m3 = 0.25 * Math.sqrt(w) * (w-1)*(w-1) * (w*(w+2)*Math.sinh(3*W) + 3*Math.sinh(W));
+            double m4 = 0.125 * (w-1)*(w-1) * (w*w*(w*w*w*w + 2*w*w*w + 3*w*w - 3)*Math.cosh(4*W)
+                    + 4*w*w*(w+2)*Math.cosh(2*W) + 3*(2*w+1));
+            return new double[]{ m1, m2, m3/Math.pow(m2, 1.5), m4/(m2*m2) };
+        }
+        // S_B by Simpson's rule over the normal density
+        double h = 2*Z_MAX / (QUADRATURE_POINTS-1);
+        double[] raw = new double[5];
+        for (int k=0 ; k<QUADRATURE_POINTS ; k++) {
+            double z = -Z_MAX + k*h;
+            double weight = (k==0 || k==QUADRATURE_POINTS-1) ? 1 : (k%2==1 ? 4 : 2);
+            weight *= h/3 * Math.exp(-z*z/2) / Math.sqrt(2*Math.PI);
+            double y = 1 / (1 + Math.exp(-(z-gamma)/delta));
+            double yk = weight;
+            for (int n=0 ; n<5 ; n++) {
+                raw[n] += yk;
+                yk *= y;
+            }
+        }
+        double m = raw[1]/raw[0];
+        double c2 = raw[2]/raw[0] - m*m;
+        double c3 = raw[3]/raw[0] - 3*m*raw[2]/raw[0] + 2*m*m*m;
+        double c4 = raw[4]/raw[0] - 4*m*raw[3]/raw[0] + 6*m*m*raw[2]/raw[0] - 3*m*m*m*m;
+        return new double[]{ m, c2, c3/Math.pow(c2, 1.5), c4/(c2*c2) };
+    }
+
+    /**
+     * <p>Inverse of the standard normal distribution function
+     * (Acklam's rational approximation, relative error below 1.2e-9)</p>
+     *
+     * @param p     Probability in (0,1)
+     * @return      z such that P(Z&lt;z) = p
+     */
+    public static double normalQuantile(double p) {
+        final double[] a = { -3.969683028665376e+01, 2.209460984245205e+02, -2.759285104469687e+02,
+                1.383577518672690e+02, -3.066479806614716e+01, 2.506628277459239e+00 };
+        final double[] b = { -5.447609879822406e+01, 1.615858368580409e+02, -1.556989798598866e+02,
+                6.680131188771972e+01, -1.328068155288572e+01 };
+        final double[] c = { -7.784894002430293e-03, -3.223964580411365e-01, -2.400758277161838e+00,
+                -2.549732539343734e+00, 4.374664141464968e+00, 2.938163982698783e+00 };
+        final double[] d = { 7.784695709041462e-03, 3.224671290700398e-01, 2.445134137142996e+00,
+                3.754408661907416e+00 };
+        if( p<0.02425 ) {
+            double q = Math.sqrt(-2*Math.log(p));
+            return (((((c[0]*q+c[1])*q+c[2])*q+c[3])*q+c[4])*q+c[5]) / ((((d[0]*q+d[1])*q+d[2])*q+d[3])*q+1);
+        }
+        if( p>1-0.02425 ) {
+            return -normalQuantile(1-p);
+        }
+        double q = p-0.5, r = q*q;
+        return (((((a[0]*r+a[1])*r+a[2])*r+a[3])*r+a[4])*r+a[5])*q / (((((b[0]*r+b[1])*r+b[2])*r+b[3])*r+b[4])*r+1);
+    }
+
+    /**
+     * @param z     Standard normal value
+     * @return      Translated value, standardized
+     */
+    public double transform(double z) {
+        double y;
+        switch (type) {
+            case SU:
+                y = Math.sinh((z-gamma)/delta);
+                break;
+            case SB:
+                y = 1 / (1 + Math.exp(-(z-gamma)/delta));
+                break;
+            default:
+                return z;
+        }
+        return sign * (y-mean) / sd;
+    }
+
+    /**
+     * @return      Johnson curve
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return      Skewness of the fitted curve
+     */
+    public double getSkewness() {
+        return skewness;
+    }
+
+    /**
+     * @return      Kurtosis of the fitted curve
+     */
+    public double getKurtosis() {
+        return kurtosis;
+    }
+}
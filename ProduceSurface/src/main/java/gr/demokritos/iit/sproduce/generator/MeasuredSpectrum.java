@@ -0,0 +1,407 @@
+/** 
+* Copyright 2018 Antonia Tsili NCSR Demokritos
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package gr.demokritos.iit.sproduce.generator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import gr.demokritos.iit.sproduce.utils.FastFourier;
+
+
+/**
+ * <p>Power spectrum of measured surfaces (such as AFM height maps), estimated by
+ * Welch's method, for synthesizing any number of surfaces with the same statistics
+ * through {@link Autocovariance#MEASURED}.</p>
+ *
+ * <p>Every measured MxM map is cut into NxN windows which overlap by half along
+ * both axes. Each window has its mean removed, is multiplied by a separable Hann
+ * window and Fourier transformed, and the squared magnitudes of all windows of all
+ * maps are averaged. The result is normalized by the energy of the Hann window, so
+ * that its sum divided by N&sup2; is the variance of the heights, and symmetrized so
+ * that synthesized surfaces are real. The amplitude spectrum is its square root.</p>
+ *
+ * <p>The spectrum describes distances in points of the measured maps: surfaces
+ * synthesized from it have the spacing of the measured ones. RMS height and
+ * correlation lengths (first lag where the autocorrelation drops below 1/e) are
+ * kept along with it.</p>
+ *
+ * <p>A spectrum may be saved to and loaded from a cache file which also records the
+ * measured files it came from, so that it is estimated again only when they change.</p>
+ */
+public final class MeasuredSpectrum {
+
+    /**
+     * First bytes of a cache file ("MPSD")
+     */
+    static final int MAGIC = 0x4D505344;
+    /**
+     * Version of cache file format
+     */
+    static final byte VERSION = 1;
+
+    /**
+     * Number of points along side of window
+     */
+    private final int N;
+    /**
+     * NxN amplitudes (square root of power spectrum), row-major
+     */
+    private final double[] amplitude;
+    /**
+     * Number of windows averaged
+     */
+    private final int windows;
+    private final double rms;
+    /**
+     * Correlation lengths in points
+     */
+    private final double clx, cly;
+    /**
+     * Description of measured files (empty if not from files)
+     */
+    private final String source;
+
+    private MeasuredSpectrum(int N, double[] amplitude, int windows, double rms, double clx, double cly, String source) {
+        this.N = N;
+        this.amplitude = amplitude;
+        this.windows = windows;
+        this.rms = rms;
+        this.clx = clx;
+        this.cly = cly;
+        this.source = source;
+    }
+
+    /**
+     * @return      Number of points along side of window (and of synthesized surfaces)
+     */
+    public int getN() {
+        return N;
+    }
+
+    /**
+     * @return      Number of windows averaged
+     */
+    public int getWindows() {
+        return windows;
+    }
+
+    /**
+     * @return      RMS height of measured maps
+     */
+    public double getRms() {
+        return rms;
+    }
+
+    /**
+     * @return      Correlation length along rows (x axis), in points
+     */
+    public double getClx() {
+        return clx;
+    }
+
+    /**
+     * @return      Correlation length along columns (y axis), in points
+     */
+    public double getCly() {
+        return cly;
+    }
+
+    /**
+     * <p>Copy one row of amplitudes</p>
+     *
+     * @param i         Row of frequency grid
+     * @param dst       Array of at least N values
+     */
+    public void amplitudes(int i, double[] dst) {
+        System.arraycopy(amplitude, i*N, dst, 0, N);
+    }
+
+    /**
+     * <p>Accumulates windowed power spectra of measured maps</p>
+     */
+    public static final class Estimator {
+        private final int N;
+        private final FastFourier fft2;
+        private final double[] hann;
+        private final double[] power;
+        private final double[] re, im;
+        private final double energy;
+        private int windows = 0;
+
+        /**
+         * @param N     Number (power of 2) of points along side of window
+         */
+        public Estimator(int N) {
+            if( N<2 || Integer.bitCount(N)!=1 )
+                throw new IllegalArgumentException("Number of points must be a power of 2: " + N);
+            this.N = N;
+            this.fft2 = new FastFourier(N,N);
+            this.hann = new double[N];
+            for (int k=0 ; k<N ; k++) {
+                hann[k] = 0.5 * (1 - Math.cos(2*Math.PI*k/N));
+            }
+            double e = 0;
+            for (int k=0 ; k<N ; k++) {
+                e += hann[k]*hann[k];
+            }
+            this.energy = e*e; // of separable 2D window
+            this.power = new double[N*N];
+            this.re = new double[N*N];
+            this.im = new double[N*N];
+        }
+
+        /**
+         * <p>Add all half-overlapping windows of one measured map</p>
+         *
+         * @param heights   MxM heights, row-major
+         * @param M         Number of points along side of map, at least N
+         */
+        public void add(double[] heights, int M) {
+            if( M<N || heights.length<M*M )
+                throw new IllegalArgumentException("Map of " + M + " points along side is smaller than window of " + N);
+            int step = Math.max(1, N/2);
+            for (int i0=0 ; i0+N<=M ; i0+=step) {
+                for (int j0=0 ; j0+N<=M ; j0+=step) {
+                    addWindow(heights, M, i0, j0);
+                }
+            }
+        }
+
+        private void addWindow(double[] heights, int M, int i0, int j0) {
+            double mean = 0;
+            for (int i=0 ; i<N ; i++) {
+                for (int j=0 ; j<N ; j++) {
+                    mean += heights[(i0+i)*M + j0+j];
+                }
+            }
+            mean /= (double) N*N;
+
+            for (int i=0 ; i<N ; i++) {
+                for (int j=0 ; j<N ; j++) {
+                    re[i*N+j] = (heights[(i0+i)*M + j0+j] - mean) * hann[i] * hann[j];
+                    im[i*N+j] = 0;
+                }
+            }
+            fft2.FTransform(re, im);
+            for (int k=0 ; k<power.length ; k++) {
+                power[k] += re[k]*re[k] + im[k]*im[k];
+            }
+            windows++;
+        }
+
+        /**
+         * @return      Number of windows added so far
+         */
+        public int windows() {
+            return windows;
+        }
+
+        /**
+         * @return      Average spectrum of all windows added
+         * @throws IllegalStateException    If no window was added
+         */
+        public MeasuredSpectrum build() {
+            return build("");
+        }
+
+        MeasuredSpectrum build(String source) {
+            if( windows==0 )
+                throw new IllegalStateException("No measured window to estimate spectrum from");
+
+            double[] P = new double[N*N];
+            double sum = 0;
+            for (int i=0 ; i<N ; i++) {
+                int i2 = (N-i) % N;
+                for (int j=0 ; j<N ; j++) {
+                    int j2 = (N-j) % N;
+                    double p = (power[i*N+j] + power[i2*N+j2]) / (2 * windows * energy); // symmetric, for real surfaces
+                    P[i*N+j] = p;
+                    sum += p;
+                }
+            }
+
+            // autocorrelation is the inverse transform of the power spectrum
+            System.arraycopy(P, 0, re, 0, P.length);
+            Arrays.fill(im, 0);
+            fft2.iFTransform(re, im);
+            double[] acfX = new double[N];
+            double[] acfY = new double[N];
+            for (int k=0 ; k<N ; k++) {
+                acfX[k] = re[k];
+                acfY[k] = re[k*N];
+            }
+
+            double[] amplitude = new double[N*N];
+            for (int k=0 ; k<P.length ; k++) {
+                amplitude[k] = Math.sqrt(P[k]);
+            }
+            return new MeasuredSpectrum(N, amplitude, windows, Math.sqrt(sum)/N,
+                    correlationLength(acfX), correlationLength(acfY), source);
+        }
+    }
+
+    /**
+     * <p>First lag (interpolated) where the autocorrelation drops below 1/e, at most N/2</p>
+     */
+    static double correlationLength(double[] acf) {
+        int N = acf.length;
+        if( !(acf[0]>0) ) return 1;
+        double level = acf[0] / Math.E;
+        for (int k=1 ; k<=N/2 ; k++) {
+            if( acf[k]<level ) {
+                return k-1 + (acf[k-1]-level) / (acf[k-1]-acf[k]);
+            }
+        }
+        return N/2;
+    }
+
+    /**
+     * <p>Estimate the spectrum from measured maps in the text format of surfaces
+     * (parameters with N:&lt;M&gt; in the first column, MxM heights after it, one map per line)</p>
+     *
+     * @param N             Number (power of 2) of points along side of window
+     * @param filenames     Files of measured maps
+     * @return              Average spectrum of all windows of all maps
+     * @throws IOException  If a file cannot be read or a line is not a square map
+     */
+    public static MeasuredSpectrum estimate(int N, List<String> filenames) throws IOException {
+        Estimator estimator = new Estimator(N);
+        for (String filename : filenames) {
+            try (BufferedReader reader = new BufferedReader(new FileReader(filename), 1 << 16)) {
+                String line;
+                int lineNo = 0;
+                while( (line = reader.readLine()) != null ) {
+                    lineNo++;
+                    if( line.trim().isEmpty() ) continue;
+                    String[] fields = line.split(",");
+                    int M = (int) Math.round(Math.sqrt(fields.length - 1));
+                    if( M*M != fields.length-1 )
+                        throw new IOException(filename + ":" + lineNo + ": " + (fields.length-1) + " heights do not form a square map");
+                    double[] heights = new double[M*M];
+                    for (int k=0 ; k<heights.length ; k++) {
+                        heights[k] = Double.parseDouble(fields[k+1]);
+                    }
+                    if( M>=N ) estimator.add(heights, M);
+                }
+            }
+        }
+        if( estimator.windows()==0 )
+            throw new IOException("No measured map has at least " + N + " points along side");
+        return estimator.build(fingerprint(filenames));
+    }
+
+    /**
+     * <p>Load the spectrum from the cache file if it was estimated from the same,
+     * unchanged files with the same window, otherwise estimate it and save it there</p>
+     *
+     * @param cache         Name of cache file
+     * @param N             Number (power of 2) of points along side of window
+     * @param filenames     Files of measured maps (empty to use the cache as it is)
+     * @return              Spectrum
+     * @throws IOException  If files cannot be read or written
+     */
+    public static MeasuredSpectrum loadOrEstimate(String cache, int N, List<String> filenames) throws IOException {
+        File f = new File(cache);
+        if( f.isFile() ) {
+            MeasuredSpectrum cached = load(cache);
+            if( cached.N==N && (filenames.isEmpty() || cached.source.equals(fingerprint(filenames))) )
+                return cached;
+        }
+        if( filenames.isEmpty() )
+            throw new IOException("No spectrum of " + N + " points in " + cache + " and no measured files to estimate it");
+        MeasuredSpectrum spectrum = estimate(N, filenames);
+        spectrum.save(cache);
+        return spectrum;
+    }
+
+    /**
+     * <p>Names, sizes and modification times of files</p>
+     */
+    static String fingerprint(List<String> filenames) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (String filename : filenames) {
+            File f = new File(filename);
+            if( !f.isFile() )
+                throw new IOException("Measured file not found: " + filename);
+            if( sb.length()>0 ) sb.append(';');
+            sb.append(f.getCanonicalPath()).append(':').append(f.length()).append(':').append(f.lastModified());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * <p>Write spectrum to cache file</p>
+     *
+     * @param filename      Name of cache file
+     * @throws IOException  If there was an error creating or writing to file
+     */
+    public void save(String filename) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeUTF(source);
+            out.writeInt(N);
+            out.writeInt(windows);
+            out.writeDouble(rms);
+            out.writeDouble(clx);
+            out.writeDouble(cly);
+            for (double a : amplitude) {
+                out.writeDouble(a);
+            }
+        }
+    }
+
+    /**
+     * <p>Read spectrum from cache file</p>
+     *
+     * @param filename      Name of cache file
+     * @return              Spectrum
+     * @throws IOException  If file cannot be read or is not a spectrum
+     */
+    public static MeasuredSpectrum load(String filename) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(filename), 1 << 16))) {
+            if( in.readInt()!=MAGIC )
+                throw new IOException("Not a measured spectrum: " + filename);
+            int version = in.readByte();
+            if( version!=VERSION )
+                throw new IOException("Unsupported spectrum version " + version + ": " + filename);
+            String source = in.readUTF();
+            int N = in.readInt();
+            if( N<2 || Integer.bitCount(N)!=1 )
+                throw new IOException("Corrupt spectrum: " + filename);
+            int windows = in.readInt();
+            double rms = in.readDouble();
+            double clx = in.readDouble();
+            double cly = in.readDouble();
+            double[] amplitude = new double[N*N];
+            for (int k=0 ; k<amplitude.length ; k++) {
+                amplitude[k] = in.readDouble();
+            }
+            return new MeasuredSpectrum(N, amplitude, windows, rms, clx, cly, source);
+        }
+    }
+}
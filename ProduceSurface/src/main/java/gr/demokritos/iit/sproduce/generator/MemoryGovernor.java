@@ -0,0 +1,160 @@
+/** 
+* Copyright 2018 Antonia Tsili NCSR Demokritos
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package gr.demokritos.iit.sproduce.generator;
+
+
+/**
+ * <p>Admits surfaces for concurrent generation only while their estimated peak
+ * memory fits into a budget, so that the number of surfaces in progress follows
+ * their size: many small surfaces at once, few (at least one) large ones.</p>
+ *
+ * <p>Callers reserve {@link #estimate(SurfaceParameters)} bytes before generating
+ * a surface and release them once its buffer is no longer needed. A surface larger
+ * than the whole budget is admitted when nothing else is in progress.
+ * Callers whose threads keep a {@link SurfaceWorkspace} between surfaces reserve
+ * only the {@link #result(SurfaceParameters)} of each surface, and keep what the
+ * workspaces may hold reserved for as long as they keep them.</p>
+ *
+ * <p>Off-heap surfaces should be governed by a budget of direct memory
+ * (-XX:MaxDirectMemorySize, which defaults to the maximum heap size).</p>
+ */
+public final class MemoryGovernor {
+
+    /**
+     * Part of the maximum heap size used as default budget
+     */
+    static final double DEFAULT_HEAP_FRACTION = 0.75;
+
+    /**
+     * Bytes that may be reserved at once
+     */
+    private final long budget;
+    /**
+     * Bytes reserved at the moment
+     */
+    private long reserved = 0;
+
+    /**
+     * <p>Governor with a budget of {@link #defaultBudget()} bytes</p>
+     */
+    public MemoryGovernor() {
+        this(defaultBudget());
+    }
+
+    /**
+     * @param budget    Bytes that may be reserved at once
+     */
+    public MemoryGovernor(long budget) {
+        if( budget<=0 )
+            throw new IllegalArgumentException("Memory budget must be positive: " + budget);
+        this.budget = budget;
+    }
+
+    /**
+     * @return      Three quarters of the maximum heap size
+     */
+    public static long defaultBudget() {
+        return (long) (Runtime.getRuntime().maxMemory() * DEFAULT_HEAP_FRACTION);
+    }
+
+    /**
+     * <p>Peak bytes taken by the Fourier transforms while generating one surface and keeping
+     * it until printed: four NxN working grids (two for analytic spectra, which need no filter) and the
+     * NxN result, plus single rows and twiddle tables, and for non-Gaussian surfaces the
+     * buffers of {@link MomentCorrection}.
+     * The same amount is taken on the heap or, for off-heap buffers, in direct memory.</p>
+     *
+     * @param params    Surface parameters
+     * @return          Estimated bytes
+     */
+    public static long estimate(SurfaceParameters params) {
+        return result(params) + SurfaceWorkspace.bytes(params, false);
+    }
+
+    /**
+     * <p>Peak bytes taken while generating one surface with the given generator:
+     * recursive sweeps need a single NxN working grid besides the result</p>
+     *
+     * @param params    Surface parameters
+     * @param generator Generator of the surface
+     * @return          Estimated bytes
+     */
+    public static long estimate(SurfaceParameters params, SurfaceGenerator generator) {
+        return result(params) + SurfaceWorkspace.bytes(params, generator.isRecursive(params));
+    }
+
+    /**
+     * <p>Bytes of the NxN result, single rows and twiddle tables</p>
+     *
+     * @param params    Surface parameters
+     * @return          Estimated bytes
+     */
+    static long result(SurfaceParameters params) {
+        long N = params.getN();
+        return Double.BYTES * N * N + 16 * Double.BYTES * N;
+    }
+
+    /**
+     * @return      Bytes that may be reserved at once
+     */
+    public long budget() {
+        return budget;
+    }
+
+    /**
+     * @return      Bytes reserved at the moment
+     */
+    public synchronized long reserved() {
+        return reserved;
+    }
+
+    /**
+     * <p>Reserve bytes if they fit into what is left of the budget
+     * (or if nothing is reserved at all)</p>
+     *
+     * @param bytes     Bytes to reserve
+     * @return          Whether the bytes were reserved
+     */
+    public synchronized boolean tryAcquire(long bytes) {
+        if( reserved>0 && reserved+bytes>budget ) return false;
+        reserved += bytes;
+        return true;
+    }
+
+    /**
+     * <p>Wait until bytes fit into what is left of the budget and reserve them</p>
+     *
+     * @param bytes     Bytes to reserve
+     * @throws InterruptedException     If interrupted while waiting
+     */
+    public synchronized void acquire(long bytes) throws InterruptedException {
+        while( !tryAcquire(bytes) ) {
+            wait();
+        }
+    }
+
+    /**
+     * <p>Give back bytes reserved before</p>
+     *
+     * @param bytes     Bytes to release
+     */
+    public synchronized void release(long bytes) {
+        reserved -= bytes;
+        if( reserved<0 ) reserved = 0;
+        notifyAll();
+    }
+}
@@ -0,0 +1,277 @@
+/** 
+* Copyright 2018 Antonia Tsili NCSR Demokritos
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package gr.demokritos.iit.sproduce.generator;
+
+import java.util.Arrays;
+
+import gr.demokritos.iit.sproduce.utils.DoubleGrid;
+import gr.demokritos.iit.sproduce.utils.FastFourier;
+
+
+/**
+ * <p>Turns a Gaussian surface into one of given skewness and kurtosis with
+ * (nearly) the same power spectrum.</p>
+ *
+ * <p>Quantiles of the standard normal distribution, one per point, are translated
+ * through the fitted {@link JohnsonTranslation} and given the mean and RMS of the
+ * Gaussian heights, which gives the sorted target heights.
+ * Then two steps alternate, starting from the Gaussian surface:
+ * <ol>
+ *      <li>the Fourier magnitudes are replaced by those of the Gaussian surface, keeping the phases</li>
+ *      <li>the heights are replaced, rank for rank, by the target values</li>
+ * </ol>
+ * so the result has exactly the target distribution and a spectrum that converges
+ * to the target one (iterated amplitude adjusted transform). Iterations stop when
+ * the relative spectral mismatch falls below {@link #TARGET_MISMATCH} or changes by
+ * less than {@link #TOLERANCE} of itself, or after {@link #MAX_ITERATIONS}.</p>
+ *
+ * <p>All transform and sorting buffers are allocated once, on the Java heap,
+ * and reused across iterations and across surfaces of the same or smaller N.
+ * An instance must be used by one thread at a time.</p>
+ */
+final class MomentCorrection {
+
+    /**
+     * Spectral mismatch below which iterations stop
+     */
+    static final double TARGET_MISMATCH = 1e-3;
+    /**
+     * Relative change of spectral mismatch below which iterations stop
+     */
+    static final double TOLERANCE = 1e-3;
+    /**
+     * Most iterations per surface
+     */
+    static final int MAX_ITERATIONS = 100;
+
+    private int N = 0;
+    private FastFourier fft2;
+    /**
+     * Current heights
+     */
+    private double[] y;
+    /**
+     * Transform of current heights
+     */
+    private double[] re, im;
+    /**
+     * Target Fourier magnitudes
+     */
+    private double[] magnitude;
+    /**
+     * Target heights, sorted
+     */
+    private double[] target;
+    /**
+     * Positions of heights in sorted order
+     */
+    private int[] order;
+    /**
+     * Iterations of last correction
+     */
+    private int iterations;
+    /**
+     * Relative spectral mismatch after last correction
+     */
+    private double mismatch;
+
+    /**
+     * <p>Correct heights in place</p>
+     *
+     * @param params    Surface parameters, with skewness and kurtosis
+     * @param heights   NxN Gaussian heights, replaced by corrected ones
+     */
+    void apply(SurfaceParameters params, DoubleGrid heights) {
+        prepare(params.getN());
+        int n = N*N;
+        for (int i=0 ; i<N ; i++) {
+            heights.getRow(i, y, i*N);
+        }
+
+        // target spectrum of the Gaussian surface
+        System.arraycopy(y, 0, re, 0, n);
+        Arrays.fill(im, 0, n, 0);
+        fft2.FTransform(re, im);
+        double norm = 0;
+        for (int k=0 ; k<n ; k++) {
+            magnitude[k] = Math.hypot(re[k], im[k]);
+            norm += magnitude[k]*magnitude[k];
+        }
+        norm = Math.sqrt(norm);
+
+        // target distribution: Johnson translation of normal quantiles, with the mean and RMS of the Gaussian surface
+        double mean = 0, var = 0;
+        for (int k=0 ; k<n ; k++) mean += y[k];
+        mean /= n;
+        for (int k=0 ; k<n ; k++) var += (y[k]-mean)*(y[k]-mean);
+        JohnsonTranslation johnson = JohnsonTranslation.fit(params.getSkewness(), params.getKurtosis());
+        double tMean = 0, tVar = 0;
+        for (int k=0 ; k<n ; k++) {
+            target[k] = johnson.transform(JohnsonTranslation.normalQuantile((k+0.5)/n));
+            tMean += target[k];
+        }
+        tMean /= n;
+        for (int k=0 ; k<n ; k++) tVar += (target[k]-tMean)*(target[k]-tMean);
+        double tScale = tVar>0 ? Math.sqrt(var/tVar) : 0;
+        for (int k=0 ; k<n ; k++) {
+            target[k] = mean + (target[k]-tMean) * tScale;
+        }
+        Arrays.sort(target, 0, n);
+
+        // start from the ranks of the Gaussian surface
+        remap();
+        double previous = Double.MAX_VALUE;
+        iterations = 0;
+        mismatch = 0;
+        while( iterations<MAX_ITERATIONS ) {
+            System.arraycopy(y, 0, re, 0, n);
+            Arrays.fill(im, 0, n, 0);
+            fft2.FTransform(re, im);
+            double error = 0;
+            for (int k=0 ; k<n ; k++) {
+                double m = Math.hypot(re[k], im[k]);
+                error += (m-magnitude[k])*(m-magnitude[k]);
+                if( m>0 ) {
+                    re[k] *= magnitude[k]/m;
+                    im[k] *= magnitude[k]/m;
+                } else {
+                    re[k] = magnitude[k];
+                }
+            }
+            mismatch = norm>0 ? Math.sqrt(error)/norm : 0;
+            if( mismatch<=TARGET_MISMATCH || Math.abs(previous-mismatch) <= TOLERANCE*mismatch ) break; // converged
+            previous = mismatch;
+
+            fft2.iFTransform(re, im);
+            System.arraycopy(re, 0, y, 0, n);
+            remap();
+            iterations++;
+        }
+
+        for (int i=0 ; i<N ; i++) {
+            heights.setRow(i, y, i*N);
+        }
+    }
+
+    /**
+     * @return      Iterations of last correction
+     */
+    int iterations() {
+        return iterations;
+    }
+
+    /**
+     * @return      Relative spectral mismatch ||F|-|F<sub>target</sub>|| / |F<sub>target</sub>| of last correction
+     */
+    double mismatch() {
+        return mismatch;
+    }
+
+    /**
+     * <p>Allocate buffers for N, unless there is room for it already</p>
+     */
+    private void prepare(int N) {
+        if( this.N==N ) return;
+        this.N = N;
+        int n = N*N;
+        fft2 = new FastFourier(N,N);
+        if( y!=null && y.length>=n ) return;
+        y = new double[n];
+        re = new double[n];
+        im = new double[n];
+        magnitude = new double[n];
+        target = new double[n];
+        order = new int[n];
+    }
+
+    /**
+     * @return      Bytes of buffers held at the moment
+     */
+    long bytes() {
+        return y==null ? 0 : (long) y.length * (5*Double.BYTES + Integer.BYTES);
+    }
+
+    /**
+     * @param N     Number of surface points (along square side)
+     * @return      Bytes of buffers for NxN heights
+     */
+    static long bytes(int N) {
+        return (long) N * N * (5*Double.BYTES + Integer.BYTES);
+    }
+
+    /**
+     * <p>Replace heights by target values of the same rank</p>
+     */
+    private void remap() {
+        int n = N*N;
+        System.arraycopy(y, 0, re, 0, n); // sort keys, transform buffer is free here
+        for (int k=0 ; k<n ; k++) order[k] = k;
+        sort(re, order, 0, n-1);
+        for (int k=0 ; k<n ; k++) {
+            y[order[k]] = target[k];
+        }
+    }
+
+    /**
+     * <p>Quicksort of keys, moving positions along</p>
+     */
+    static void sort(double[] keys, int[] pos, int lo, int hi) {
+        while( hi-lo>16 ) {
+            int mid = (lo+hi) >>> 1;
+            // median of three as pivot
+            if( keys[mid]<keys[lo] ) swap(keys, pos, mid, lo);
+            if( keys[hi]<keys[lo] ) swap(keys, pos, hi, lo);
+            if( keys[hi]<keys[mid] ) swap(keys, pos, hi, mid);
+            double pivot = keys[mid];
+            int i = lo, j = hi;
+            while( i<=j ) {
+                while( keys[i]<pivot ) i++;
+                while( keys[j]>pivot ) j--;
+                if( i<=j ) swap(keys, pos, i++, j--);
+            }
+            // recurse into smaller part, loop on larger
+            if( j-lo < hi-i ) {
+                sort(keys, pos, lo, j);
+                lo = i;
+            } else {
+                sort(keys, pos, i, hi);
+                hi = j;
+            }
+        }
+        for (int i=lo+1 ; i<=hi ; i++) { // insertion sort of short ranges
+            double k = keys[i];
+            int p = pos[i];
+            int j = i-1;
+            while( j>=lo && keys[j]>k ) {
+                keys[j+1] = keys[j];
+                pos[j+1] = pos[j];
+                j--;
+            }
+            keys[j+1] = k;
+            pos[j+1] = p;
+        }
+    }
+
+    private static void swap(double[] keys, int[] pos, int a, int b) {
+        double k = keys[a];
+        keys[a] = keys[b];
+        keys[b] = k;
+        int p = pos[a];
+        pos[a] = pos[b];
+        pos[b] = p;
+    }
+}
@@ -18,6 +18,9 @@ package gr.demokritos.iit.sproduce.generator;
 
 import org.apache.commons.cli.*;
 
+import gr.demokritos.iit.sproduce.utils.StageMetrics;
+import gr.demokritos.iit.sproduce.utils.StageMetrics.Stage;
+
 import org.jzy3d.chart.Chart;
 import org.jzy3d.chart.ChartLauncher;
 import org.jzy3d.chart.factories.AWTChartComponentFactory;
@@ -31,7 +34,10 @@ import org.jzy3d.plot3d.rendering.canvas.Quality;
 
 import java.io.*;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Locale;
+import java.util.Random;
 
 /**
  * <p>Application which creates a file with a list of real numbers
@@ -50,6 +56,32 @@ import java.util.List;
  * parameters, or through standard input for one surface at a time.
  * Output can be forwarded through file (<i>-out</i>), or standard output, in which case
  * a 3D image is produced.
+ * Time and allocations of each generation stage can be written to a JSON or CSV
+ * file (<i>-metrics</i>) at the end of the run.
+ * For very large N the surface grids may be kept outside the Java heap (<i>-offheap</i>).
+ * The exponential filter may be applied by recursive sweeps in O(N&sup2;) (<i>-recursive</i>)
+ * instead of Fourier transforms, with the same result up to rounding and less memory.
+ * A long run from an input file may be made resumable (<i>-resume</i>): a journal of the
+ * written surfaces is kept next to the output file and a rerun with the same options continues after the last one.
+ * Instead of whole surfaces, square tiles (<i>-tile</i>) cut every <i>-stride</i> points
+ * (or overlapping by <i>-overlap</i> points) out of each surface may be printed.
+ * Each surface may be followed by variants of it: mirror images, rotations, transposition
+ * and circular shifts (<i>-augment</i>), read from the same buffer without copies.
+ * Heights may be written rounded to a fixed resolution (<i>-quantize</i>), delta coded
+ * along rows and compressed, to be read back through {@link QuantizedSurfaceReader}.
+ * Besides the original exponential filter, surfaces of Gaussian, exponential or power-law
+ * (<i>-hurst</i>) autocovariance may be generated from analytic spectra (<i>-acf</i>).
+ * Each surface may instead give a sequence of correlated frames evolving in time
+ * (<i>-frames</i>, with correlation time <i>-tau</i>).
+ * Heights may follow a non-Gaussian distribution of given skewness and kurtosis
+ * (<i>-skewness</i>, <i>-kurtosis</i>, or the input file columns with <i>-moments</i>).
+ * Surfaces may be band-limited (<i>-cutoff</i>): spatial frequencies above the cutoff are
+ * zero, and the inverse transform skips them.
+ * Surfaces matching measured height maps (<i>-measured</i>) may be synthesized
+ * (<i>-clones</i>) from their power spectrum, which can be cached in a file (<i>-psd</i>).
+ * Surfaces of an input file may be generated on several threads (<i>-threads</i>); only as
+ * many are kept in progress as fit into a memory budget (<i>-memory</i>), and they are
+ * printed in input order.
  *
  * @author  Antonia Tsili
  * @version 1.0
@@ -101,6 +133,98 @@ public class ProduceSurface {
         output.setRequired(false);
         options.addOption(output);
 
+        Option resume = new Option("resume", "resume", false, "journal written surfaces and continue an interrupted run");
+        resume.setRequired(false);
+        options.addOption(resume);
+
+        Option seed = new Option("seed", "seed", true, "seed of random heights");
+        seed.setRequired(false);
+        options.addOption(seed);
+
+        Option tile = new Option("tile", "tile", true, "print tiles with this number of points along side instead of whole surfaces");
+        tile.setRequired(false);
+        options.addOption(tile);
+
+        Option stride = new Option("stride", "stride", true, "points between origins of neighbouring tiles (default: tile side)");
+        stride.setRequired(false);
+        options.addOption(stride);
+
+        Option augment = new Option("augment", "augment", true, "print after each surface its variants: comma separated flip_x, flip_y, rot90, rot180, rot270, transpose, antitranspose, shift:<rows>:<cols> or all");
+        augment.setRequired(false);
+        options.addOption(augment);
+
+        Option overlap = new Option("overlap", "overlap", true, "points shared by neighbouring tiles (instead of stride)");
+        overlap.setRequired(false);
+        options.addOption(overlap);
+
+        Option quantize = new Option("quantize", "quantize", true, "write heights rounded to this resolution, delta coded and compressed (needs output file)");
+        quantize.setRequired(false);
+        options.addOption(quantize);
+
+        Option acf = new Option("acf", "autocovariance", true, "autocovariance family: exponential_filter (default), exponential, gaussian or power_law");
+        acf.setRequired(false);
+        options.addOption(acf);
+
+        Option hurst = new Option("hurst", "hurst", true, "Hurst exponent (0,1] of power_law family (default 0.5)");
+        hurst.setRequired(false);
+        options.addOption(hurst);
+
+        Option frames = new Option("frames", "frames", true, "number of time-evolving frames produced out of each surface");
+        frames.setRequired(false);
+        options.addOption(frames);
+
+        Option tau = new Option("tau", "tau", true, "correlation time of frames, in frames (default 10)");
+        tau.setRequired(false);
+        options.addOption(tau);
+
+        Option moments = new Option("moments", "moments", false, "match Skewness and Kurtosis columns of input file (non-Gaussian heights)");
+        moments.setRequired(false);
+        options.addOption(moments);
+
+        Option skewness = new Option("skewness", "skewness", true, "skewness of heights (default 0)");
+        skewness.setRequired(false);
+        options.addOption(skewness);
+
+        Option kurtosis = new Option("kurtosis", "kurtosis", true, "kurtosis of heights (default 3, Gaussian)");
+        kurtosis.setRequired(false);
+        options.addOption(kurtosis);
+
+        Option cutoff = new Option("cutoff", "cutoff", true, "highest spatial frequency kept, in cycles per unit of length");
+        cutoff.setRequired(false);
+        options.addOption(cutoff);
+
+        Option measured = new Option("measured", "measured", true, "files (comma separated) of measured height maps whose spectrum is cloned");
+        measured.setRequired(false);
+        options.addOption(measured);
+
+        Option psd = new Option("psd", "psd", true, "cache file of the spectrum of measured maps");
+        psd.setRequired(false);
+        options.addOption(psd);
+
+        Option clones = new Option("clones", "clones", true, "number of surfaces synthesized from measured spectrum (default 1)");
+        clones.setRequired(false);
+        options.addOption(clones);
+
+        Option threads = new Option("threads", "threads", true, "number of threads generating surfaces of the input file");
+        threads.setRequired(false);
+        options.addOption(threads);
+
+        Option memory = new Option("memory", "memory", true, "megabytes that surfaces in progress may take (default: 3/4 of max heap)");
+        memory.setRequired(false);
+        options.addOption(memory);
+
+        Option offheap = new Option("offheap", "offheap", false, "keep surface grids outside the Java heap");
+        offheap.setRequired(false);
+        options.addOption(offheap);
+
+        Option recursive = new Option("recursive", "recursive", false, "apply the exponential filter by recursive sweeps instead of Fourier transforms");
+        recursive.setRequired(false);
+        options.addOption(recursive);
+
+        Option metrics_ = new Option("metrics", "metrics", true, "file (.json or .csv) for per stage timings");
+        metrics_.setRequired(false);
+        options.addOption(metrics_);
+
         CommandLineParser parser = new DefaultParser();
         HelpFormatter formatter = new HelpFormatter();
         CommandLine cmd = null;
@@ -120,11 +244,39 @@ public class ProduceSurface {
         int y_flag 	       = 0;
         int out_flag       = 0;
         int in_flag        = 0;
-        double[] args_     = new double[5];
+        double[] args_     = new double[8];
+        StageMetrics metrics = cmd.hasOption("metrics") ? new StageMetrics() : StageMetrics.DISABLED;
+        SurfaceGenerator generator = new SurfaceGenerator(metrics, cmd.hasOption("recursive"));
+        SurfaceBuffer buffer = cmd.hasOption("offheap") ? SurfaceBuffer.offHeap() : new SurfaceBuffer(); // reused for all surfaces
+        SurfaceWorkspace workspace = cmd.hasOption("offheap") ? SurfaceWorkspace.offHeap() : new SurfaceWorkspace(); // likewise
         args_[0] = Double.parseDouble((String) cmd.getOptionValue("N"));
+        args_[5] = cmd.hasOption( "skewness" ) ? Double.parseDouble(cmd.getOptionValue("skewness")) : 0.0;
+        args_[6] = cmd.hasOption( "kurtosis" ) ? Double.parseDouble(cmd.getOptionValue("kurtosis")) : 3.0;
+        args_[7] = cmd.hasOption( "cutoff" ) ? Double.parseDouble(cmd.getOptionValue("cutoff")) : 0.0;
+        // settings shared by all surfaces, checked once so that only input rows can be skipped
+        String run_error = null;
+        int n_points = (int)args_[0];
+        if( n_points<2 || Integer.bitCount(n_points)!=1 || n_points!=args_[0] )
+            run_error = "Number of points must be a power of 2: " + cmd.getOptionValue("N");
+        else if( !cmd.hasOption( "moments" ) && !(args_[6] > args_[5]*args_[5] + 1) )
+            run_error = "Kurtosis must exceed skewness squared plus one: " + args_[5] + ", " + args_[6];
+        else if( !(args_[7]>=0) )
+            run_error = "Cutoff frequency must not be negative: " + args_[7];
+        if( run_error!=null ) {
+            System.out.println(run_error);
+            formatter.printHelp("utility-name", options);
+            System.exit(1);
+        }
+
+        boolean clone_flag = cmd.hasOption( "measured" ) || cmd.hasOption( "psd" );
 
         // check if the input file name argument has been passed
-        if( !cmd.hasOption( "in" ) ) { // if not, we use standard input
+        if( clone_flag ) { // parameters come from the measured spectrum
+            if( cmd.hasOption( "in" ) ) {
+                System.out.println("Give either input file or measured maps");
+                System.exit(1);
+            }
+        } else if( !cmd.hasOption( "in" ) ) { // if not, we use standard input
 
             System.out.println("No input file detected. Using command line...");
 
@@ -149,24 +301,150 @@ public class ProduceSurface {
             y_flag = 1;
         }
 
+            if( cmd.hasOption( "resume" ) && !( in_flag==1 && cmd.hasOption( "out" )) ) {
+                System.out.println("Resuming needs both input and output file");
+                System.exit(1);
+            }
+
             if( cmd.hasOption( "out" ) ){
                 out_filename = cmd.getOptionValue("out");
                 out_flag = 1;
 
                 // check if file exists
                 File f = new File(out_filename);
-                // erase content if exists
-                if(f.exists() && !f.isDirectory()) {
+                // erase content if exists (journal of resumable run decides what to keep)
+                if(f.exists() && !f.isDirectory() && !cmd.hasOption( "resume" )) {
                     FileWriter writer = new FileWriter(out_filename);
                     writer.write("");
                     writer.close();
                 }
             }
 
+        SurfaceTiling tiling = null; // whole surfaces
+        if( cmd.hasOption( "tile" ) ) {
+            if( cmd.hasOption( "stride" ) && cmd.hasOption( "overlap" ) ) {
+                System.out.println("Give either stride or overlap of tiles");
+                System.exit(1);
+            }
+            int tile_side = Integer.parseInt(cmd.getOptionValue("tile"));
+            int tile_stride = tile_side;
+            if( cmd.hasOption( "stride" ) ) tile_stride = Integer.parseInt(cmd.getOptionValue("stride"));
+            if( cmd.hasOption( "overlap" ) ) tile_stride = tile_side - Integer.parseInt(cmd.getOptionValue("overlap"));
+            if( tile_side<1 || tile_side>(int)args_[0] ) {
+                System.out.println("Tile side must be between 1 and the number of surface points N");
+                System.exit(1);
+            }
+            if( tile_stride<1 ) {
+                System.out.println("Stride of tiles must be positive (overlap smaller than tile side)");
+                System.exit(1);
+            }
+            tiling = new SurfaceTiling(tile_side, tile_stride);
+        }
+
+        SurfaceAugmentation augmentation = null; // surfaces alone
+        if( cmd.hasOption( "augment" ) ) {
+            if( tiling!=null ) {
+                System.out.println("Give either tiles or augmentation variants");
+                System.exit(1);
+            }
+            try {
+                augmentation = new SurfaceAugmentation(cmd.getOptionValue("augment"));
+            } catch (IllegalArgumentException e) {
+                System.out.println(e.getMessage());
+                System.exit(1);
+            }
+        }
+
+        double resolution = 0; // text output
+        if( cmd.hasOption( "quantize" ) ) {
+            if( out_flag==0 ) {
+                System.out.println("Quantized output needs an output file");
+                System.exit(1);
+            }
+            resolution = Double.parseDouble(cmd.getOptionValue("quantize"));
+        }
+
+        Autocovariance family = Autocovariance.EXPONENTIAL_FILTER;
+        double hurst_exponent = 0.5;
+        try {
+            if( cmd.hasOption( "acf" ) ) family = Autocovariance.forName(cmd.getOptionValue("acf"));
+        } catch (IllegalArgumentException e) {
+            System.out.println("Unknown autocovariance family: " + cmd.getOptionValue("acf"));
+            System.exit(1);
+        }
+        if( family==Autocovariance.MEASURED ) { // its spectrum comes only through -measured or -psd
+            System.out.println("Measured spectra are given through -measured or -psd, not -acf");
+            System.exit(1);
+        }
+        if( cmd.hasOption( "hurst" ) ) hurst_exponent = Double.parseDouble(cmd.getOptionValue("hurst"));
+        if( !(hurst_exponent>0 && hurst_exponent<=1) ) {
+            System.out.println("Hurst exponent must be in (0,1]");
+            System.exit(1);
+        }
+
+        int n_threads = cmd.hasOption( "threads" ) ? Integer.parseInt(cmd.getOptionValue("threads")) : 1;
+        if( n_threads<1 ) {
+            System.out.println("Number of threads must be positive");
+            System.exit(1);
+        }
+
+        int n_frames = cmd.hasOption( "frames" ) ? Integer.parseInt(cmd.getOptionValue("frames")) : 1;
+        double rho = 0;
+        if( n_frames<1 || (n_frames>1 && n_threads>1) ) {
+            System.out.println("Number of frames must be positive and frames are produced on one thread");
+            System.exit(1);
+        }
+        if( n_frames>1 ) rho = SurfaceSequence.correlation(cmd.hasOption( "tau" ) ? Double.parseDouble(cmd.getOptionValue("tau")) : 10);
+
+        // seed of every surface is derived from this one
+        long base_seed = cmd.hasOption( "seed" ) ? Long.parseLong(cmd.getOptionValue("seed")) : new Random().nextLong();
+
+        // synthesize surfaces matching measured maps
+        if( clone_flag ) {
+            List<String> measured_files = new ArrayList<String>();
+            if( cmd.hasOption( "measured" ) ) measured_files.addAll(Arrays.asList(cmd.getOptionValue("measured").split(",")));
+            MeasuredSpectrum spectrum = cmd.hasOption( "psd" )
+                    ? MeasuredSpectrum.loadOrEstimate(cmd.getOptionValue("psd"), (int)args_[0], measured_files)
+                    : MeasuredSpectrum.estimate((int)args_[0], measured_files);
+            System.out.println("Spectrum of " + spectrum.getWindows() + " measured windows, rms height " + spectrum.getRms());
+
+            SurfaceParameters params = cloneParameters(cmd, spectrum);
+            int n_clones = cmd.hasOption( "clones" ) ? Integer.parseInt(cmd.getOptionValue("clones")) : 1;
+            SurfaceOutput surface_output = new SurfaceOutput(out_flag==1 ? out_filename : null,tiling,augmentation,resolution,false);
+            SurfacePipeline pipeline = null;
+            try {
+                if( n_threads>1 ) {
+                    MemoryGovernor governor = cmd.hasOption( "memory" )
+                            ? new MemoryGovernor((long) (Double.parseDouble(cmd.getOptionValue("memory")) * (1L << 20)))
+                            : new MemoryGovernor();
+                    pipeline = new SurfacePipeline(generator,surface_output,null,governor,n_threads,cmd.hasOption( "offheap" ),metrics);
+                }
+                for (int k=0 ; k<n_clones ; k++) {
+                    SurfaceParameters clone = params.withSeed(rowSeed(base_seed, k));
+                    if( pipeline!=null )
+                        pipeline.submit(clone,k,String.valueOf(k));
+                    else if( n_frames>1 )
+                        produceSequence(clone,buffer,surface_output,k,n_frames,rho,metrics);
+                    else
+                        produce(generator,clone,buffer,workspace,surface_output,k,metrics);
+                }
+                if( pipeline!=null ) pipeline.finish();
+            } finally {
+                if( pipeline!=null ) pipeline.close();
+                surface_output.close();
+            }
+
         // read from standard input
-        if( in_flag==0 ) {
-            RandomGaussSurfaceGenerator RG = produce(args_,y_flag,out_flag,out_filename);
-            plot_surface(RG);
+        } else if( in_flag==0 ) {
+            SurfaceParameters params = parameters(args_,y_flag,family,hurst_exponent);
+            if( cmd.hasOption( "seed" ) ) params = params.withSeed(base_seed);
+            SurfaceOutput surface_output = new SurfaceOutput(out_flag==1 ? out_filename : null,tiling,augmentation,resolution,false);
+            if( n_frames>1 )
+                produceSequence(params,buffer,surface_output,0,n_frames,rho,metrics); // last frame is plotted
+            else
+                produce(generator,params,buffer,workspace,surface_output,0,metrics);
+            surface_output.close();
+            plot_surface(buffer);
 
 //            CSVReader reader = new CSVReader();
 //            reader.test("stdin_results.csv");
@@ -174,10 +452,26 @@ public class ProduceSurface {
         // read from csv file with multiple surface parameters
         } else {
             BufferedReader reader = null;
+            BatchJournal journal = null;
             String line       = "";
             y_flag            = 0;
+            int row           = 0; // position of parameters in input file
+            SurfaceOutput surface_output = new SurfaceOutput(out_flag==1 ? out_filename : null,tiling,augmentation,resolution,cmd.hasOption( "resume" ));
+            SurfacePipeline pipeline = null; // sequential into reused buffer
             try {
 
+                if( cmd.hasOption( "resume" ) ) {
+                    journal = new BatchJournal(out_filename, (int)args_[0],
+                            runSettings(cmd,tiling,augmentation,resolution,family,hurst_exponent,args_,n_frames,rho));
+                    if( journal.completed()>0 )
+                        System.out.println("Resuming after " + journal.completed() + " surfaces.");
+                }
+                if( n_threads>1 ) {
+                    MemoryGovernor governor = cmd.hasOption( "memory" )
+                            ? new MemoryGovernor((long) (Double.parseDouble(cmd.getOptionValue("memory")) * (1L << 20)))
+                            : new MemoryGovernor();
+                    pipeline = new SurfacePipeline(generator,surface_output,journal,governor,n_threads,cmd.hasOption( "offheap" ),metrics);
+                }
                 reader = new BufferedReader(new FileReader(in_filename));
                 line = reader.readLine(); // get first line with names of parameters
                 String[] all_params = line.split(cvsSplitBy);
@@ -185,17 +479,39 @@ public class ProduceSurface {
                     if( all_params[i].equals("cly") )
                         y_flag = 1;
                 }
-                while ((line = reader.readLine()) != null) {
+                for ( ; (line = reader.readLine()) != null ; row++) {
+                    if( journal!=null && journal.isDone(row) ) continue; // written before interruption
+
                     // use comma as separator
                     all_params = line.split(cvsSplitBy);
 
-                    args_[1] = Math.sqrt(Double.parseDouble(all_params[6]));
-                    args_[2] = Double.parseDouble(all_params[1]);
-                    args_[3] = Double.parseDouble(all_params[2]);
-                    if( y_flag==1 ) args_[4] = Double.parseDouble(all_params[3]);
+                    long row_seed = rowSeed(base_seed, row);
+                    SurfaceParameters params;
+                    try {
+                        args_[1] = Math.sqrt(Double.parseDouble(all_params[6]));
+                        args_[2] = Double.parseDouble(all_params[1]);
+                        args_[3] = Double.parseDouble(all_params[2]);
+                        if( y_flag==1 ) args_[4] = Double.parseDouble(all_params[3]);
+                        if( cmd.hasOption( "moments" ) ) {
+                            args_[5] = Double.parseDouble(all_params[4]);
+                            args_[6] = Double.parseDouble(all_params[5]);
+                        }
+                        params = parameters(args_,y_flag,family,hurst_exponent).withSeed(row_seed);
+                    } catch (IllegalArgumentException e) { // values of this row only, the rest was checked above
+                        System.out.println("Skipped row " + (row+1) + " (" + all_params[0] + ") of input file: " + e.getMessage());
+                        continue;
+                    }
 
-                    RandomGaussSurfaceGenerator RG = produce(args_,y_flag,out_flag,out_filename);
+                    if( pipeline!=null ) { // printed in input order as memory allows
+                        pipeline.submit(params,row,all_params[0]);
+                        continue;
+                    }
+                    long offset = n_frames>1
+                            ? produceSequence(params,buffer,surface_output,row,n_frames,rho,metrics)
+                            : produce(generator,params,buffer,workspace,surface_output,row,metrics);
+                    if( journal!=null ) journal.record(row, all_params[0], row_seed, offset);
                 }
+                if( pipeline!=null ) pipeline.finish();
             } catch (FileNotFoundException e) {
                 e.printStackTrace();
             } catch (IOException e) {
@@ -208,44 +524,178 @@ public class ProduceSurface {
                         e.printStackTrace();
                     }
                 }
+                if (pipeline != null) {
+                    pipeline.close();
+                }
+                surface_output.close();
+                if (journal != null) {
+                    journal.close();
+                }
             }
 
         }
 
+        buffer.close();
+        workspace.close();
+        if( metrics.isEnabled() ) {
+            metrics.dump(cmd.getOptionValue("metrics"));
+        }
     }
 
     /**
-     * <p>This function creates a surface generator instance,
-     * which is loaded with all the needed and provided parameters.
-     * <br>The resulting surface is a member of the generator class.</p>
+     * <p>Surface parameters out of the values read from input</p>
      *
-     * @param args_         Parameters read from input
+     * @param args_         Parameters read from input (N,length,rms_height,clx,cly,skewness,kurtosis,cutoff)
      * @param y_flag        Determines whether surface will be (non-)isotropic
-     * @param out_flag      Determines whether output will be printed to file
-     * @param out_filename  Name of output file
-     * @return              Instance of surface generator
-     * @throws ImError      If Fourier transformation did not succeed
-     * @throws IOException  If there was an error creating or writing to file
+     * @param family        Family of autocovariance function
+     * @param hurst         Hurst exponent of power-law family
+     * @return              Parameters of one surface
      */
-    static protected RandomGaussSurfaceGenerator produce(double[] args_, int y_flag, int out_flag, String out_filename) throws ImError, IOException {
-        RandomGaussSurfaceGenerator RG;
+    static protected SurfaceParameters parameters(double[] args_, int y_flag, Autocovariance family, double hurst) {
+        SurfaceParameters params;
         if( y_flag==0 )
-            RG = new RandomGaussSurfaceGenerator(args_); // isotropic
+            params = new SurfaceParameters((int)args_[0],args_[1],args_[2],args_[3]); // isotropic
         else
-            RG = new RandomGaussSurfaceGenerator(args_,args_[4]); // non-isotropic,last argument is cly
+            params = new SurfaceParameters((int)args_[0],args_[1],args_[2],args_[3],args_[4]); // non-isotropic,last argument is cly
+        return params.withAutocovariance(family).withHurst(hurst).withMoments(args_[5],args_[6]).withCutoff(args_[7]);
+    }
 
-        if( out_flag==0 ){ // standard output
-            RG.printArray(RG.Surf);
-        } else {
-            try{
-                FileWriter writer = new FileWriter(out_filename,true);
-                RG.printArray(writer,RG.Surf);
-            } catch (IOException ex){
-                System.out.println("There was a problem creating/writing to the file");
-                ex.printStackTrace();
+    /**
+     * <p>Parameters of surfaces cloned from a measured spectrum. Distances are in points
+     * of the measured maps unless a length is given; RMS height and correlation lengths
+     * are the measured ones unless given.</p>
+     *
+     * @param cmd           Command line
+     * @param spectrum      Spectrum of measured maps
+     * @return              Parameters of the measured family
+     */
+    static protected SurfaceParameters cloneParameters(CommandLine cmd, MeasuredSpectrum spectrum) {
+        int N = spectrum.getN();
+        double rL = cmd.hasOption( "rL" ) ? Double.parseDouble(cmd.getOptionValue("rL")) : N;
+        double h = cmd.hasOption( "h" ) ? Double.parseDouble(cmd.getOptionValue("h")) : spectrum.getRms();
+        double clx = cmd.hasOption( "clx" ) ? Double.parseDouble(cmd.getOptionValue("clx")) : spectrum.getClx() * rL / N;
+        double cly = cmd.hasOption( "cly" ) ? Double.parseDouble(cmd.getOptionValue("cly")) : spectrum.getCly() * rL / N;
+        double skewness = cmd.hasOption( "skewness" ) ? Double.parseDouble(cmd.getOptionValue("skewness")) : 0.0;
+        double kurtosis = cmd.hasOption( "kurtosis" ) ? Double.parseDouble(cmd.getOptionValue("kurtosis")) : 3.0;
+        double cutoff = cmd.hasOption( "cutoff" ) ? Double.parseDouble(cmd.getOptionValue("cutoff")) : 0.0;
+        return new SurfaceParameters(N, rL, h, clx, cly).withSpectrum(spectrum).withMoments(skewness, kurtosis).withCutoff(cutoff);
+    }
+
+    /**
+     * <p>Options besides N that change what is written for a row, in the form
+     * &lt;option&gt;:&lt;value&gt;(:&lt;option&gt;:&lt;value&gt;)*, empty if all are left at their defaults.
+     * A run is resumed only with the same settings.</p>
+     *
+     * @param cmd           Command line
+     * @param tiling        Tiling of surfaces (null for whole surfaces)
+     * @param augmentation  Variants printed after each surface (null for none)
+     * @param resolution    Resolution of quantized output (0 for text)
+     * @param family        Family of autocovariance function
+     * @param hurst         Hurst exponent of power-law family
+     * @param args_         Parameters given on command line (skewness, kurtosis and cutoff at 5..7)
+     * @param n_frames      Number of frames per surface
+     * @param rho           Correlation of neighbouring frames
+     * @return              Settings of the run
+     */
+    static protected String runSettings(CommandLine cmd, SurfaceTiling tiling, SurfaceAugmentation augmentation,
+                                        double resolution, Autocovariance family, double hurst, double[] args_,
+                                        int n_frames, double rho) {
+        StringBuilder sb = new StringBuilder();
+        if( resolution>0 ) sb.append(":quantize:").append(resolution);
+        if( tiling!=null ) sb.append(":tile:").append(tiling.tile).append(":stride:").append(tiling.stride);
+        if( augmentation!=null ) sb.append(":augment:").append(augmentation.spec());
+        if( family!=Autocovariance.EXPONENTIAL_FILTER ) sb.append(":acf:").append(family.name().toLowerCase(Locale.ROOT));
+        if( family==Autocovariance.POWER_LAW ) sb.append(":hurst:").append(hurst);
+        if( cmd.hasOption( "moments" ) ) sb.append(":moments:input");
+        else if( args_[5]!=0 || args_[6]!=3 ) sb.append(":skewness:").append(args_[5]).append(":kurtosis:").append(args_[6]);
+        if( args_[7]>0 ) sb.append(":cutoff:").append(args_[7]);
+        if( n_frames>1 ) sb.append(":frames:").append(n_frames).append(":rho:").append(rho);
+        if( cmd.hasOption( "recursive" ) ) sb.append(":filter:recursive");
+        return sb.length()==0 ? "" : sb.substring(1);
+    }
+
+    /**
+     * <p>Seed of the surface on given row of the input file, spread over all
+     * 64 bits so that neighbouring rows get unrelated random heights</p>
+     *
+     * @param base_seed     Seed of the run
+     * @param row           Position of parameters in input file
+     * @return              Seed of row
+     */
+    static protected long rowSeed(long base_seed, int row) {
+        long z = base_seed + (row+1) * 0x9E3779B97F4A7C15L; // SplitMix64
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * <p>This function generates one surface into the given buffer
+     * and prints it to standard output or appends it to the output file.</p>
+     *
+     * @param generator     Surface generator
+     * @param params        Parameters of the surface
+     * @param buffer        Buffer to receive the surface
+     * @param workspace     Working storage of the generator
+     * @param output        Where and how the surface is printed
+     * @param id            Identifier of surface in output (position of parameters in input)
+     * @param metrics       Where stage timings are recorded
+     * @return              Size of output file after writing (-1 for standard output)
+     * @throws ImError      If Fourier transformation did not succeed
+     * @throws IOException  If there was an error writing to a synced file
+     */
+    static protected long produce(SurfaceGenerator generator, SurfaceParameters params, SurfaceBuffer buffer,
+                                  SurfaceWorkspace workspace, SurfaceOutput output, int id, StageMetrics metrics)
+            throws ImError, IOException {
+        generator.generate(params, buffer, workspace);
+
+        StageMetrics.Timer timer = metrics.start(params.getN());
+        long offset = -1;
+        try {
+            offset = output.write(buffer, id);
+        } catch (IOException ex){
+            if( output.sync ) throw ex; // must not be journaled as written
+            System.out.println("There was a problem creating/writing to the file");
+            ex.printStackTrace();
+        }
+        timer.lap(Stage.PRINT);
+        return offset;
+    }
+
+    /**
+     * <p>This function produces a sequence of time-evolving frames out of one surface's
+     * parameters and prints each frame as soon as it is ready, tagged with ":frame:&lt;t&gt;".</p>
+     *
+     * @param params        Parameters of the surface
+     * @param buffer        Buffer to receive the frames (holds the last one at the end)
+     * @param output        Where and how the frames are printed
+     * @param id            Identifier of surface in output (position of parameters in input)
+     * @param n_frames      Number of frames
+     * @param rho           Correlation of neighbouring frames
+     * @param metrics       Where stage timings are recorded
+     * @return              Size of output file after the last frame (-1 for standard output)
+     * @throws ImError      If Fourier transformation did not succeed
+     * @throws IOException  If there was an error writing to a synced file
+     */
+    static protected long produceSequence(SurfaceParameters params, SurfaceBuffer buffer, SurfaceOutput output,
+                                          int id, int n_frames, double rho, StageMetrics metrics) throws ImError, IOException {
+        long offset = -1;
+        try (SurfaceSequence sequence = new SurfaceSequence(params, rho, buffer.isOffHeap(), metrics)) {
+            for (int t=0 ; t<n_frames ; t++) {
+                sequence.next(buffer);
+
+                StageMetrics.Timer timer = metrics.start(params.getN());
+                try {
+                    offset = output.write(buffer, id, ":frame:" + t);
+                } catch (IOException ex){
+                    if( output.sync ) throw ex; // must not be journaled as written
+                    System.out.println("There was a problem creating/writing to the file");
+                    ex.printStackTrace();
+                }
+                timer.lap(Stage.PRINT);
             }
         }
-        return RG;
+        return offset;
     }
 
     /**
@@ -254,12 +704,12 @@ public class ProduceSurface {
      * <br>It provokes a pop-up window with the correspondent figure, that can also be
      * turned at will using the cursor. The produced image is saved as a file.</p>
      *
-     * @param RG            Instance of surface generator class
+     * @param S             Generated surface
      * @throws IOException
      * @see org.jzy3d.chart
      */
-    static protected void plot_surface(RandomGaussSurfaceGenerator RG) throws IOException {
-        double[][] distDataProp = RG.Surf;
+    static protected void plot_surface(SurfaceBuffer S) throws IOException {
+        double[][] distDataProp = S.toArray();
 
         // Build a polygon list
         List<Polygon> polygons = new ArrayList<Polygon>();
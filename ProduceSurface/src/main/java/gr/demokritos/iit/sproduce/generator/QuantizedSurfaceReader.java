@@ -0,0 +1,230 @@
+/** 
+* Copyright 2018 Antonia Tsili NCSR Demokritos
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package gr.demokritos.iit.sproduce.generator;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+
+/**
+ * <p>Reads back the records of {@link QuantizedSurfaceWriter} one surface at a
+ * time and one row at a time, so that only one compressed block is held in memory.</p>
+ *
+ * <p>Typical use:
+ * <pre>
+ *  while( reader.next() ) {
+ *      for (int i=0 ; i&lt;reader.rows() ; i++) reader.readRow(row);
+ *  }
+ * </pre></p>
+ */
+public final class QuantizedSurfaceReader implements Closeable {
+
+    private final DataInputStream in;
+    private final Inflater inflater = new Inflater();
+
+    private String header;
+    private int rows = 0;
+    private int cols = 0;
+    private double resolution;
+    /**
+     * Rows of current surface not yet read
+     */
+    private int rowsLeft = 0;
+    /**
+     * Rows of current block not yet read
+     */
+    private int blockRowsLeft = 0;
+
+    private byte[] raw = new byte[0];
+    private int rawPosition = 0;
+    private int rawLength = 0;
+    private byte[] compressed = new byte[0];
+
+    /**
+     * @param in        Input, closed along with reader
+     */
+    public QuantizedSurfaceReader(InputStream in) {
+        this.in = new DataInputStream(in);
+    }
+
+    /**
+     * <p>Move to the next surface, skipping rows of the current one which were not read</p>
+     *
+     * @return              False at the end of input
+     * @throws IOException  If input is not a surface record
+     */
+    public boolean next() throws IOException {
+        while( rowsLeft>0 ) { // skip rest of current surface without inflating
+            rowsLeft -= blockRowsLeft;
+            blockRowsLeft = 0;
+            if( rowsLeft>0 ) {
+                int blockRows = in.readInt();
+                in.readInt();
+                skipFully(in.readInt());
+                blockRowsLeft = blockRows;
+            }
+        }
+
+        int first = in.read();
+        if( first<0 ) return false;
+        int magic = (first << 24) | (in.readUnsignedByte() << 16) | in.readUnsignedShort();
+        if( magic!=QuantizedSurfaceWriter.MAGIC )
+            throw new IOException("Not a quantized surface record");
+        int version = in.readByte();
+        if( version!=QuantizedSurfaceWriter.VERSION )
+            throw new IOException("Unsupported record version " + version);
+
+        header = in.readUTF();
+        rows = in.readInt();
+        cols = in.readInt();
+        resolution = in.readDouble();
+        rowsLeft = rows;
+        blockRowsLeft = 0;
+        return true;
+    }
+
+    /**
+     * @return      Parameters of current surface, as in text output
+     */
+    public String header() {
+        return header;
+    }
+
+    /**
+     * @return      Number of rows of current surface
+     */
+    public int rows() {
+        return rows;
+    }
+
+    /**
+     * @return      Number of heights per row of current surface
+     */
+    public int cols() {
+        return cols;
+    }
+
+    /**
+     * @return      Step of heights of current surface
+     */
+    public double resolution() {
+        return resolution;
+    }
+
+    /**
+     * <p>Read next row of current surface</p>
+     *
+     * @param dst           Array of at least cols() values to receive heights
+     * @throws IOException  If input ended or is corrupt
+     */
+    public void readRow(double[] dst) throws IOException {
+        if( rowsLeft==0 )
+            throw new IllegalStateException("No rows left in surface");
+        if( blockRowsLeft==0 )
+            readBlock();
+
+        long q = 0;
+        for (int j=0 ; j<cols ; j++) {
+            long zigzag = 0;
+            int shift = 0;
+            byte b;
+            do {
+                if( rawPosition==rawLength )
+                    throw new IOException("Corrupt block: row runs past its end");
+                b = raw[rawPosition++];
+                zigzag |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while( b<0 );
+            q += (zigzag >>> 1) ^ -(zigzag & 1);
+            dst[j] = q * resolution;
+        }
+        blockRowsLeft--;
+        rowsLeft--;
+    }
+
+    /**
+     * <p>Read all remaining rows of current surface</p>
+     *
+     * @return              Heights, one array per row (rows already read are left empty)
+     * @throws IOException  If input ended or is corrupt
+     */
+    public double[][] readSurface() throws IOException {
+        double[][] S = new double[rows][];
+        for (int i=rows-rowsLeft ; i<rows ; i++) {
+            S[i] = new double[cols];
+            readRow(S[i]);
+        }
+        return S;
+    }
+
+    /**
+     * <p>Read and inflate next block of rows</p>
+     */
+    private void readBlock() throws IOException {
+        blockRowsLeft = in.readInt();
+        rawLength = in.readInt();
+        int length = in.readInt();
+        if( blockRowsLeft<1 || blockRowsLeft>rowsLeft || rawLength<0 || length<0 )
+            throw new IOException("Corrupt block header");
+
+        if( compressed.length<length ) compressed = new byte[length];
+        if( raw.length<rawLength ) raw = new byte[rawLength];
+        in.readFully(compressed, 0, length);
+
+        inflater.reset();
+        inflater.setInput(compressed, 0, length);
+        try {
+            int n = 0;
+            while( n<rawLength && !inflater.finished() ) {
+                int k = inflater.inflate(raw, n, rawLength - n);
+                if( k==0 && (inflater.needsInput() || inflater.needsDictionary()) ) break;
+                n += k;
+            }
+            if( n!=rawLength )
+                throw new IOException("Corrupt block: " + n + " of " + rawLength + " bytes");
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt block", e);
+        }
+        rawPosition = 0;
+    }
+
+    private void skipFully(int n) throws IOException {
+        while( n>0 ) {
+            int k = (int) in.skip(n);
+            if( k<=0 ) {
+                if( in.read()<0 ) throw new EOFException();
+                k = 1;
+            }
+            n -= k;
+        }
+    }
+
+    /**
+     * <p>Release the decompressor and close input</p>
+     *
+     * @throws IOException
+     */
+    public void close() throws IOException {
+        inflater.end();
+        in.close();
+    }
+}
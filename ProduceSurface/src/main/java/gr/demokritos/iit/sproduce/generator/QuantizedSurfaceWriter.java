@@ -0,0 +1,233 @@
+/** 
+* Copyright 2018 Antonia Tsili NCSR Demokritos
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package gr.demokritos.iit.sproduce.generator;
+
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+
+/**
+ * <p>Compact binary output of surfaces: heights are rounded to multiples of a
+ * fixed resolution, each row is coded as differences of neighbouring heights
+ * and rows are compressed in blocks of about {@link #BLOCK_SIZE} bytes.
+ * <br>Heights read back through {@link QuantizedSurfaceReader} differ from the
+ * generated ones by at most half the resolution.</p>
+ *
+ * <p>Every surface is a self-contained record, so records may be appended to
+ * an existing file:
+ * <ul>
+ *      <li>int {@link #MAGIC}, byte {@link #VERSION}</li>
+ *      <li>header as modified UTF-8 (parameters as in text output), int rows, int cols, double resolution</li>
+ *      <li>blocks of whole rows until all rows are written, each as
+ *          int rows in block, int raw length, int compressed length and the deflated bytes</li>
+ * </ul>
+ * Within a block every height is the zigzag varint of its difference from the
+ * previous height of the same row (the first one of a row from zero), in units of resolution.</p>
+ */
+public final class QuantizedSurfaceWriter implements SurfaceSink, Closeable {
+
+    /**
+     * First bytes of every record ("QSRF")
+     */
+    public static final int MAGIC = 0x51535246;
+    /**
+     * Version of record format
+     */
+    public static final byte VERSION = 1;
+    /**
+     * Uncompressed bytes after which a block is closed (at the end of a row)
+     */
+    public static final int BLOCK_SIZE = 1 << 20;
+
+    private DataOutputStream out;
+    private final double resolution;
+    private final Deflater deflater;
+
+    /**
+     * Uncompressed bytes of current block
+     */
+    private byte[] raw = new byte[BLOCK_SIZE + 1024];
+    private int rawLength = 0;
+    /**
+     * Compressed bytes of current block
+     */
+    private byte[] compressed = new byte[1 << 16];
+    private int blockRows = 0;
+    private int rowsLeft = 0;
+    private int cols = 0;
+
+    /**
+     * @param out           Output, closed along with writer
+     * @param resolution    Step of heights after quantization
+     */
+    public QuantizedSurfaceWriter(OutputStream out, double resolution) {
+        this(out, resolution, Deflater.BEST_SPEED);
+    }
+
+    /**
+     * <p>Writer without output until {@link #redirect(OutputStream)}, so that one writer,
+     * with its buffers and compressor, serves records appended to several streams</p>
+     *
+     * @param resolution    Step of heights after quantization
+     */
+    public QuantizedSurfaceWriter(double resolution) {
+        this(null, resolution, Deflater.BEST_SPEED);
+    }
+
+    /**
+     * @param out           Output, closed along with writer
+     * @param resolution    Step of heights after quantization
+     * @param level         Compression level (0-9)
+     */
+    public QuantizedSurfaceWriter(OutputStream out, double resolution, int level) {
+        if( !(resolution>0) || Double.isInfinite(resolution) )
+            throw new IllegalArgumentException("Resolution must be positive: " + resolution);
+        this.out = out==null ? null : new DataOutputStream(out);
+        this.resolution = resolution;
+        this.deflater = new Deflater(level);
+    }
+
+    /**
+     * @return      Step of heights after quantization
+     */
+    public double getResolution() {
+        return resolution;
+    }
+
+    /**
+     * <p>Write a whole surface as one record</p>
+     *
+     * @param S             Surface
+     * @throws IOException
+     */
+    public void write(SurfaceBuffer S) throws IOException {
+        SurfaceWriter.write(this, S);
+    }
+
+    public void begin(String header, int rows, int cols) throws IOException {
+        if( rowsLeft>0 )
+            throw new IllegalStateException("Previous surface has " + rowsLeft + " rows missing");
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeUTF(header);
+        out.writeInt(rows);
+        out.writeInt(cols);
+        out.writeDouble(resolution);
+        this.rowsLeft = rows;
+        this.cols = cols;
+        this.rawLength = 0;
+        this.blockRows = 0;
+    }
+
+    public void row(double[] heights) throws IOException {
+        if( rowsLeft==0 )
+            throw new IllegalStateException("No rows left in surface");
+        if( raw.length - rawLength < 10*cols ) // longest varint per height
+            raw = Arrays.copyOf(raw, rawLength + 10*cols);
+
+        long previous = 0;
+        for (int j=0 ; j<cols ; j++) {
+            double scaled = Math.rint(heights[j] / resolution);
+            if( !(Math.abs(scaled) < (double) (1L << 62)) )
+                throw new IllegalArgumentException("Height " + heights[j] + " cannot be quantized with resolution " + resolution);
+            long q = (long) scaled;
+            long delta = q - previous;
+            previous = q;
+            long zigzag = (delta << 1) ^ (delta >> 63);
+            while( (zigzag & ~0x7FL) != 0 ) {
+                raw[rawLength++] = (byte) ((zigzag & 0x7F) | 0x80);
+                zigzag >>>= 7;
+            }
+            raw[rawLength++] = (byte) zigzag;
+        }
+        blockRows++;
+        rowsLeft--;
+        if( rawLength>=BLOCK_SIZE || rowsLeft==0 )
+            writeBlock();
+    }
+
+    public void end() throws IOException {
+        if( rowsLeft>0 )
+            throw new IllegalStateException("Surface has " + rowsLeft + " rows missing");
+    }
+
+    /**
+     * <p>Compress current rows and write them as one block</p>
+     */
+    private void writeBlock() throws IOException {
+        deflater.reset();
+        deflater.setInput(raw, 0, rawLength);
+        deflater.finish();
+        int length = 0;
+        while( !deflater.finished() ) {
+            if( length==compressed.length )
+                compressed = Arrays.copyOf(compressed, 2*compressed.length);
+            length += deflater.deflate(compressed, length, compressed.length - length);
+        }
+        out.writeInt(blockRows);
+        out.writeInt(rawLength);
+        out.writeInt(length);
+        out.write(compressed, 0, length);
+        rawLength = 0;
+        blockRows = 0;
+    }
+
+    /**
+     * <p>Write the next records to another output, between records. The previous
+     * output is left as it is, so it should have been flushed.</p>
+     *
+     * @param out           Output of next records
+     */
+    public void redirect(OutputStream out) {
+        if( rowsLeft>0 )
+            throw new IllegalStateException("Surface has " + rowsLeft + " rows missing");
+        this.out = new DataOutputStream(out);
+    }
+
+    /**
+     * <p>Flush output, keeping the compressor for more records</p>
+     *
+     * @throws IOException
+     */
+    public void flush() throws IOException {
+        if( out!=null ) out.flush();
+    }
+
+    /**
+     * <p>Flush output and release the compressor, leaving output open</p>
+     *
+     * @throws IOException
+     */
+    public void finish() throws IOException {
+        deflater.end();
+        flush();
+    }
+
+    /**
+     * <p>Release the compressor and close output</p>
+     *
+     * @throws IOException
+     */
+    public void close() throws IOException {
+        deflater.end();
+        if( out!=null ) out.close();
+    }
+}
@@ -16,16 +16,10 @@
 
 package gr.demokritos.iit.sproduce.generator;
 
-import java.util.*;
 import java.io.*;
-import java.lang.Math;
-import java.math.BigDecimal;
-import java.math.RoundingMode;
 
-import edu.princeton.cs.algs4.Complex;
-
-import gr.demokritos.iit.sproduce.utils.FastFourier;
-import gr.demokritos.iit.sproduce.utils.Linspace;
+import gr.demokritos.iit.sproduce.utils.StageMetrics;
+import gr.demokritos.iit.sproduce.utils.StageMetrics.Stage;
 
 
 /**
@@ -35,6 +29,9 @@ import gr.demokritos.iit.sproduce.utils.Linspace;
  * length of the surface side, h is the RMS height and clx and cly are the
  * correlation lengths in x and y. Omitting cly makes the surface isotropic.</p>
  *
+ * <p>Generation is done by {@link SurfaceGenerator}; this class keeps the result
+ * as a matrix for the command line application.</p>
+ *
  */
 public class RandomGaussSurfaceGenerator {
 
@@ -59,22 +56,14 @@ public class RandomGaussSurfaceGenerator {
      */
     double cly;
 
-    /**
-     * Heights in real numbers
-     */
-    protected double[][] RandomRoughSurf;
-    /**
-     * All rows of same column with the same point (needed for transformation)
-     */
-    protected double[][] meshGridX;
-    /**
-     * All columns of same row with the same point (needed for transformation)
-     */
-    protected double[][] meshGridY;
     /**
      * Height results
      */
     public double[][] Surf;
+    /**
+     * Timing and allocations of generation stages
+     */
+    StageMetrics metrics;
 
     /**
      * <p>For a non-isotropic surface</p>
@@ -84,176 +73,58 @@ public class RandomGaussSurfaceGenerator {
      * @throws ImError  If Fourier transformation did not succeed
      */
     RandomGaussSurfaceGenerator(double[] args, double cly) throws ImError{
-        this.N   = (int)args[0];
-        this.rL  = args[1];
-        this.H   = args[2];
-        this.clx = args[3];
-        this.cly = cly;
-
-        meshGrid();		  // init members meshGridX, meshGridY
-        RandomSurfaceH(); // init member RandomRoughSurf
-        double[][] GF = GaussianFilter(cly);
-
-        /*
-         * correlation of surface including convolution (faltung), inverse
-         * Fourier transform and normalizing prefactors
-         */
-
-        FastFourier fft2 = new FastFourier(N,N); // NxM matrix Fourier Transform
-
-        // implementing ifft2(fft2(GF).*fft2(RRS)
-        Complex[][] GF_cox = fft2.double2Complex(GF);
-        Complex[][] GF_Fourier = fft2.FTransform(GF_cox);
-
-        Complex[][] RRS_cox = fft2.double2Complex(RandomRoughSurf);
-        Complex[][] RRS_Fourier = fft2.FTransform(RRS_cox);
-
-        Complex[][] MultOut = new Complex[N][N];
-        fft2.ComplexArray_mult(GF_Fourier,RRS_Fourier,MultOut);
-        Complex[][] Res = fft2.iFTransform(MultOut);
-        // end
-
-        Surf = new double[N][N];
-
-        for (int i=0 ; i<N ; i++) {
-            for (int j=0 ; j<N ; j++) {
-                if( round(Res[i][j].im(),10)!=0 ) // must be real number after rounding
-                    throw new ImError();
-                Surf[i][j] = 2 * rL / N / Math.sqrt(clx * cly) * Res[i][j].re();
-            }
-        }
-
+        this(args, cly, StageMetrics.DISABLED);
     }
 
-
     /**
-     * <p>For an isotropic surface</p>
+     * <p>For a non-isotropic surface, recording time spent in each stage</p>
      *
      * @param args      Passed from input
+     * @param cly       Correlation length in y
+     * @param metrics   Where stage timings are recorded
      * @throws ImError  If Fourier transformation did not succeed
      */
-    RandomGaussSurfaceGenerator(double[] args) throws ImError{
-        this.N   = (int)args[0];
-        this.rL  = args[1];
-        this.H   = args[2];
-        this.clx = args[3];
-        this.cly = 0.0;
-
-        meshGrid();       // init members meshGridX, meshGridY
-        RandomSurfaceH(); // init member RandomRoughSurf
-        double[][] GF = GaussianFilter();
-
-        /*
-         * correlation of surface including convolution (faltung), inverse
-         * Fourier transform and normalizing prefactors
-         */
-
-        FastFourier fft2 = new FastFourier(N,N); // NxM matrix Fourier Transform
-
-        // implementing ifft2(fft2(GF).*fft2(RRS)
-        Complex[][] GF_cox = fft2.double2Complex(GF);
-        Complex[][] GF_Fourier = fft2.FTransform(GF_cox);
-
-        Complex[][] RRS_cox = fft2.double2Complex(RandomRoughSurf);
-        Complex[][] RRS_Fourier = fft2.FTransform(RRS_cox);
-
-        Complex[][] MultOut = new Complex[N][N];
-        fft2.ComplexArray_mult(GF_Fourier,RRS_Fourier,MultOut);
-        Complex[][] Res = fft2.iFTransform(MultOut);
-        // end
-
-        Surf = new double[N][N];
-
-        for (int i=0 ; i<N ; i++) {
-            for (int j=0 ; j<N ; j++) {
-                if( round(Res[i][j].im(),10)!=0 ) // must be real number after rounding
-                    throw new ImError();
-                Surf[i][j] = 2 * rL / N / clx * Res[i][j].re();
-            }
-        }
-
+    RandomGaussSurfaceGenerator(double[] args, double cly, StageMetrics metrics) throws ImError{
+        this(new SurfaceParameters((int)args[0], args[1], args[2], args[3], cly), metrics);
     }
 
     /**
-     * <p>Function to create matrices X,Y of absolute values where
-     * <ul>
-     * <li>X: same vector in each row</li>
-     * <li>Y: same vector in each column</li>
-     * </ul>
-     * <br>of evenly spaced points between -rL/2 and rL/2</p>
-     */
-    protected void meshGrid() {
-        double begin = -rL/2;
-        double end = rL/2;
-
-        meshGridX = new double[N][N];
-        meshGridY = new double[N][N];
-
-        Linspace linspace = new Linspace(begin,end,N);
-        double[] L = linspace.op();
-
-        for (int j=0 ; j<N ; j++) {
-            for (int i=0 ; i<N ; i++) {
-                meshGridX[i][j] = Math.abs(L[j]);
-            }
-        }
-        for (int i=0 ; i<N ; i++) {
-            for (int j=0 ; j<N ; j++) {
-                meshGridY[i][j] = Math.abs(L[i]);
-            }
-        }
-
-    }
-
-    /**
-     *
-     * <p>Create matrix NxN of random normal distributed values
-     * multiplied by h (rms height)</p>
+     * <p>For an isotropic surface</p>
      *
+     * @param args      Passed from input
+     * @throws ImError  If Fourier transformation did not succeed
      */
-    protected void RandomSurfaceH() {
-        RandomRoughSurf = new double[N][N];
-        Random rand = new Random();
-        for (int i=0 ; i<N ; i++) {
-            for (int j=0 ; j<N ; j++) {
-                RandomRoughSurf[i][j] = H*rand.nextGaussian(); //standard normal distribution
-            }
-        }
-
+    RandomGaussSurfaceGenerator(double[] args) throws ImError{
+        this(args, StageMetrics.DISABLED);
     }
 
     /**
-     * <p>Compute the Gaussian filter
-     * of non-isotropic</p>
+     * <p>For an isotropic surface, recording time spent in each stage</p>
      *
-     * <p>F is size N*N</p>
+     * @param args      Passed from input
+     * @param metrics   Where stage timings are recorded
+     * @throws ImError  If Fourier transformation did not succeed
      */
-    protected double[][] GaussianFilter(double arg) {
-        double[][] F = new double[N][N];
-        for (int i=0 ; i<N ; i++) {
-            for (int j=0 ; j<N ; j++) {
-                F[i][j] = Math.exp( -( meshGridX[i][j]/(clx/2) + meshGridY[i][j]/(cly/2)) );
-            }
-        }
-        return F;
-
+    RandomGaussSurfaceGenerator(double[] args, StageMetrics metrics) throws ImError{
+        this(new SurfaceParameters((int)args[0], args[1], args[2], args[3]), metrics);
     }
 
     /**
-     * <p>Compute the Gaussian filter
-     * of isotropic</p>
-     *
-     * <p>F is size N*N</p>
+     * @param params    Surface parameters
+     * @param metrics   Where stage timings are recorded
+     * @throws ImError  If Fourier transformation did not succeed
      */
-    protected double[][] GaussianFilter() {
-        double[][] F = new double[N][N];
-        for (int i=0 ; i<N ; i++) {
-            for (int j=0 ; j<N ; j++) {
-                F[i][j] = Math.exp( -( (meshGridX[i][j] + meshGridY[i][j])/(clx/2) ) );
-            }
-        }
-        return F;
-
+    RandomGaussSurfaceGenerator(SurfaceParameters params, StageMetrics metrics) throws ImError{
+        this.metrics = metrics;
+        this.N   = params.getN();
+        this.rL  = params.getLength();
+        this.H   = params.getRms();
+        this.clx = params.getClx();
+        this.cly = params.getCly();
+
+        SurfaceBuffer buffer = new SurfaceBuffer(N);
+        new SurfaceGenerator(metrics).generate(params, buffer);
+        Surf = buffer.toArray();
     }
 
     /**
@@ -265,6 +136,7 @@ public class RandomGaussSurfaceGenerator {
      * @see  java.io.FileWriter
      */
     void printArray(FileWriter writer, double[][] X) throws IOException { // one surface per line, height per column
+        StageMetrics.Timer timer = metrics.start(N);
         StringBuilder sb = new StringBuilder();
         sb.append("rms:").append(String.valueOf((this.H))); // printing parameters in first column as: <param_name>:<param_value>
         sb.append(":clx:").append(String.valueOf(this.clx));
@@ -283,6 +155,7 @@ public class RandomGaussSurfaceGenerator {
         sb.append("\n");
         writer.append(sb.toString());
         writer.close();
+        timer.lap(Stage.PRINT);
     }
 
     /**
@@ -293,6 +166,7 @@ public class RandomGaussSurfaceGenerator {
      * @see                 java.io.FileWriter
      */
     void printArray(double[][] X) throws IOException { // one line of surface per line of output
+        StageMetrics.Timer timer = metrics.start(N);
         System.out.println("rms:"+this.H+" clx:"+this.clx+" cly:"+this.cly+" N:"+this.N);
         for (int i=0 ; i<N ; i++) {
             for (int j=0 ; j<N ; j++) {
@@ -305,19 +179,7 @@ public class RandomGaussSurfaceGenerator {
             System.out.println();
         }
         System.out.println();
-    }
-
-
-    /**
-     * <p>Round double value to n decimals</p>
-     *
-     */
-    protected static double round(double value, int places) {
-        if (places < 0) throw new IllegalArgumentException();
-
-        BigDecimal bd = new BigDecimal(Double.toString(value));
-        bd = bd.setScale(places, RoundingMode.HALF_UP);
-        return bd.doubleValue();
+        timer.lap(Stage.PRINT);
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,175 @@
+/** 
+* Copyright 2018 Antonia Tsili NCSR Demokritos
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package gr.demokritos.iit.sproduce.generator;
+
+import gr.demokritos.iit.sproduce.utils.DoubleGrid;
+
+
+/**
+ * <p>Convolution of random heights with the exponential filter of {@link SurfaceGenerator}
+ * by recursive sweeps, without Fourier transforms.</p>
+ *
+ * <p>Along a side of N points the filter is a<sup>|k-(N-1)/2|</sup>, k=0..N-1, where
+ * a=exp(-2d/cl) and d=rL/(N-1) is the spacing of the mesh. The circular convolution of
+ * x with it, which is what ifft2(fft2(GF).*fft2(RRS)) computes, is s(f[p]+b[p+1]) shifted
+ * by N/2, where s=&radic;a and f, b are sums of N/2 terms a<sup>j</sup>x[p&#8723;j].
+ * Each of them follows from its neighbour in one step, f[p]=x[p]+a&middot;f[p-1]-a<sup>N/2</sup>x[p-N/2]
+ * (and likewise backwards for b), so a sweep costs O(N) and the surface O(N&sup2;),
+ * with the same result as the transforms up to rounding.</p>
+ *
+ * <p>The filter is separable: all columns are swept at once, a row of values at a time,
+ * and then every row on its own, so that each row of the result is finished as soon as
+ * it is swept.</p>
+ */
+final class RecursiveFilter {
+
+    private RecursiveFilter() {
+    }
+
+    /**
+     * <p>Convolve random heights with the exponential filter and write the
+     * scaled result, the surface, into the given grid</p>
+     *
+     * @param params    Surface parameters, of the exponential filter family
+     * @param noise     NxN random heights, left unchanged
+     * @param out       NxN destination of surface heights
+     */
+    static void apply(SurfaceParameters params, DoubleGrid noise, DoubleGrid out) {
+        int N = params.getN();
+        double d = params.getLength() / (N-1);
+        double clx = params.getClx();
+        double cly = params.isIsotropic() ? clx : params.getCly();
+
+        columns(noise, out, Math.exp(-2*d/cly));
+        rows(out, Math.exp(-2*d/clx), SurfaceGenerator.scale(params));
+    }
+
+    /**
+     * <p>Sweep all columns of the grid down and up, writing s(f[p]+b[p+1]) into row p
+     * of the destination (not yet shifted by N/2)</p>
+     */
+    private static void columns(DoubleGrid x, DoubleGrid y, double a) {
+        int N = x.rows();
+        int h = N/2;
+        double aH = Math.pow(a, h);
+        double s = Math.sqrt(a);
+
+        double[] xp = new double[N];
+        double[] xh = new double[N];
+        double[] f = new double[N];
+        double[] b = new double[N];
+
+        // f[0] and b[0] in full, the rest by recursion
+        double w = 1;
+        for (int j=0 ; j<h ; j++) {
+            x.getRow((N-j)%N, xp, 0);
+            x.getRow(j, xh, 0);
+            for (int c=0 ; c<N ; c++) {
+                f[c] += w*xp[c];
+                b[c] += w*xh[c];
+            }
+            w *= a;
+        }
+        y.setRow(0, f, 0);
+        for (int p=1 ; p<N ; p++) {
+            x.getRow(p, xp, 0);
+            x.getRow((p-h+N)%N, xh, 0);
+            for (int c=0 ; c<N ; c++) {
+                f[c] = xp[c] + a*f[c] - aH*xh[c];
+            }
+            y.setRow(p, f, 0);
+        }
+
+        // b holds b[p+1] on entering each step
+        for (int p=N-1 ; p>=0 ; p--) {
+            y.getRow(p, f, 0);
+            for (int c=0 ; c<N ; c++) {
+                f[c] = s*(f[c] + b[c]);
+            }
+            y.setRow(p, f, 0);
+            if( p==0 ) break;
+
+            x.getRow(p, xp, 0);
+            x.getRow((p+h)%N, xh, 0);
+            for (int c=0 ; c<N ; c++) {
+                b[c] = xp[c] + a*b[c] - aH*xh[c];
+            }
+        }
+    }
+
+    /**
+     * <p>Sweep every row in place and multiply it by the normalizing prefactor;
+     * rows i and i+N/2 trade places, completing the shift of the column sweep</p>
+     */
+    private static void rows(DoubleGrid y, double a, double scale) {
+        int N = y.rows();
+        int h = N/2;
+        double[] upper = new double[N];
+        double[] lower = new double[N];
+        double[] out = new double[N];
+        double[] f = new double[N];
+
+        for (int i=0 ; i<h ; i++) {
+            y.getRow(i, upper, 0);
+            y.getRow(i+h, lower, 0);
+            sweep(lower, f, out, a, scale);
+            y.setRow(i, out, 0);
+            sweep(upper, f, out, a, scale);
+            y.setRow(i+h, out, 0);
+        }
+    }
+
+    /**
+     * <p>Circular convolution of one row with the filter, shifted by N/2 and scaled</p>
+     *
+     * @param x         Row of N values
+     * @param f         Scratch space of N values
+     * @param y         Destination of N values (not x)
+     * @param a         Ratio of neighbouring filter values
+     * @param scale     Factor of the result
+     */
+    static void sweep(double[] x, double[] f, double[] y, double a, double scale) {
+        int N = x.length;
+        int h = N/2;
+        double aH = Math.pow(a, h);
+        double s = scale*Math.sqrt(a);
+
+        double f0 = 0, b = 0, w = 1;
+        for (int j=0 ; j<h ; j++) {
+            f0 += w*x[(N-j)%N];
+            b += w*x[j];
+            w *= a;
+        }
+        f[0] = f0;
+        for (int p=1 ; p<h ; p++) {
+            f[p] = x[p] + a*f[p-1] - aH*x[p-h+N];
+        }
+        for (int p=h ; p<N ; p++) {
+            f[p] = x[p] + a*f[p-1] - aH*x[p-h];
+        }
+
+        // b holds b[p+1] on entering each step, b[0] for p=N-1
+        for (int p=N-1 ; p>=h ; p--) {
+            y[p-h] = s*(f[p] + b);
+            b = x[p] + a*b - aH*x[p-h];
+        }
+        for (int p=h-1 ; p>=0 ; p--) {
+            y[p+h] = s*(f[p] + b);
+            b = x[p] + a*b - aH*x[p+h];
+        }
+    }
+}
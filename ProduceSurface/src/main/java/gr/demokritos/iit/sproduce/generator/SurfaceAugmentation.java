@@ -0,0 +1,230 @@
+/** 
+* Copyright 2018 Antonia Tsili NCSR Demokritos
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package gr.demokritos.iit.sproduce.generator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import gr.demokritos.iit.sproduce.utils.DoubleGrid;
+
+
+/**
+ * <p>Prints, besides each surface, variants of it obtained by symmetry operations
+ * that keep its statistics: mirror images, rotations by multiples of 90&deg;,
+ * transposition and circular shifts (surfaces are periodic, so a shifted surface
+ * continues from the opposite edge).</p>
+ *
+ * <p>Every variant is an index remapping of the original heights and is read
+ * straight from the surface buffer, without a copy of the whole surface: variants
+ * that keep rows as rows (flips, 180&deg; rotation, shifts) are printed one row at a
+ * time, and those that turn columns into rows are gathered in blocks of
+ * {@link #BLOCK} rows. Variants that turn columns into rows also swap the correlation
+ * lengths of a non-isotropic surface in their header.</p>
+ *
+ * <p>The original surface is printed first, then each variant as one line in the
+ * format of whole surfaces with its name appended to the parameters:
+ * <br><i>rms:&lt;v&gt;:clx:&lt;v&gt;:cly:&lt;v&gt;:N:&lt;N&gt;:augment:&lt;variant&gt;,(&lt;height&gt;,)*&lt;height&gt;</i></p>
+ */
+final class SurfaceAugmentation {
+
+    /**
+     * Rows of a transposed variant gathered at once
+     */
+    static final int BLOCK = 32;
+
+    /**
+     * <p>Symmetry operation, as the source (i,j) of height (r,c) of the variant:
+     * (i,j) is (r,c), or (c,r) if transposed, then mirrored along either axis</p>
+     */
+    enum Variant {
+        FLIP_X(false, false, true),
+        FLIP_Y(false, true, false),
+        ROT90(true, false, true),
+        ROT180(false, true, true),
+        ROT270(true, true, false),
+        TRANSPOSE(true, false, false),
+        ANTITRANSPOSE(true, true, true),
+        SHIFT(false, false, false);
+
+        /**
+         * Whether rows of the variant are columns of the surface
+         */
+        final boolean transposed;
+        /**
+         * Whether source rows, or columns, are taken from the opposite edge
+         */
+        final boolean flipRows, flipCols;
+
+        Variant(boolean transposed, boolean flipRows, boolean flipCols) {
+            this.transposed = transposed;
+            this.flipRows = flipRows;
+            this.flipCols = flipCols;
+        }
+
+        /**
+         * @return      Name of variant, as given in option and header
+         */
+        String label() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /**
+     * Variants printed after each surface
+     */
+    private final List<Variant> variants;
+    /**
+     * Rows and columns of circular shifts, one pair per {@link Variant#SHIFT} in variants
+     */
+    private final List<int[]> shifts;
+
+    /**
+     * @param spec      Comma separated variants: flip_x, flip_y, rot90, rot180, rot270,
+     *                  transpose, antitranspose, shift:&lt;rows&gt;:&lt;cols&gt;,
+     *                  or all for the seven mirror images and rotations
+     */
+    SurfaceAugmentation(String spec) {
+        List<Variant> variants = new ArrayList<>();
+        List<int[]> shifts = new ArrayList<>();
+        for (String item : spec.split(",")) {
+            String name = item.trim().toLowerCase(Locale.ROOT);
+            if( name.equals("all") ) {
+                for (Variant v : Variant.values()) {
+                    if( v!=Variant.SHIFT ) variants.add(v);
+                }
+            } else if( name.startsWith("shift") ) {
+                String[] parts = name.split(":");
+                if( parts.length!=3 || !parts[0].equals("shift") )
+                    throw new IllegalArgumentException("Shift must be given as shift:<rows>:<cols>: " + item);
+                try {
+                    shifts.add(new int[] { Integer.parseInt(parts[1]), Integer.parseInt(parts[2]) });
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Shift must be given as shift:<rows>:<cols>: " + item);
+                }
+                variants.add(Variant.SHIFT);
+            } else {
+                try {
+                    variants.add(Variant.valueOf(name.toUpperCase(Locale.ROOT)));
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("Unknown augmentation: " + item);
+                }
+            }
+        }
+        if( variants.isEmpty() )
+            throw new IllegalArgumentException("No augmentation given");
+        this.variants = Collections.unmodifiableList(variants);
+        this.shifts = Collections.unmodifiableList(shifts);
+    }
+
+    /**
+     * @return      Variants as comma separated list, in the form accepted by the constructor
+     */
+    String spec() {
+        StringBuilder sb = new StringBuilder();
+        int s = 0;
+        for (Variant v : variants) {
+            if( sb.length()>0 ) sb.append(',');
+            sb.append(v.label());
+            if( v==Variant.SHIFT ) {
+                int[] shift = shifts.get(s++);
+                sb.append(':').append(shift[0]).append(':').append(shift[1]);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * <p>Hand a surface and then all its variants to a sink</p>
+     *
+     * @param sink          Destination
+     * @param S             Surface
+     * @param tag           Appended to header of every surface, such as ":frame:&lt;t&gt;" (may be empty)
+     * @throws IOException
+     */
+    void writeVariants(SurfaceSink sink, SurfaceBuffer S, String tag) throws IOException {
+        SurfaceWriter.write(sink, S, tag);
+
+        int N = S.getN();
+        SurfaceParameters params = S.getParameters();
+        String header = SurfaceWriter.header(params, N);
+        String transposedHeader = SurfaceWriter.header(params.transposed(), N);
+        double[] src = new double[N];
+        double[][] rows = null;
+        int s = 0;
+        for (Variant v : variants) {
+            int di = 0, dj = 0;
+            String name = v.label();
+            if( v==Variant.SHIFT ) {
+                int[] shift = shifts.get(s++);
+                di = Math.floorMod(shift[0], N);
+                dj = Math.floorMod(shift[1], N);
+                name += ":" + shift[0] + ":" + shift[1];
+            }
+            sink.begin((v.transposed ? transposedHeader : header) + ":augment:" + name + tag, N, N);
+            if( v.transposed ) {
+                if( rows==null ) rows = new double[Math.min(BLOCK, N)][N];
+                writeTransposed(sink, S.grid(), v, rows);
+            } else {
+                writeRows(sink, S.grid(), v, di, dj, src);
+            }
+            sink.end();
+        }
+    }
+
+    /**
+     * <p>Rows of a variant that keeps rows as rows: each is one source row,
+     * reversed or rotated by dj</p>
+     */
+    private static void writeRows(SurfaceSink sink, DoubleGrid grid, Variant v, int di, int dj, double[] src) throws IOException {
+        int N = grid.rows();
+        double[] row = new double[N];
+        for (int r=0 ; r<N ; r++) {
+            int i = v.flipRows ? N-1-r : r;
+            i = (i+di) % N;
+            if( v.flipCols ) {
+                grid.getRow(i, src, 0);
+                for (int c=0 ; c<N ; c++) row[c] = src[N-1-c];
+            } else {
+                grid.getRow(i, dj, row, 0, N-dj);
+                grid.getRow(i, 0, row, N-dj, dj);
+            }
+            sink.row(row);
+        }
+    }
+
+    /**
+     * <p>Rows of a variant whose rows are columns of the surface, gathered for
+     * a block of rows at once so that each source row is visited once per block</p>
+     */
+    private static void writeTransposed(SurfaceSink sink, DoubleGrid grid, Variant v, double[][] rows) throws IOException {
+        int N = grid.rows();
+        for (int r0=0 ; r0<N ; r0+=rows.length) {
+            int b = Math.min(rows.length, N-r0);
+            for (int c=0 ; c<N ; c++) {
+                int i = v.flipRows ? N-1-c : c;
+                for (int k=0 ; k<b ; k++) {
+                    int j = v.flipCols ? N-1-(r0+k) : r0+k;
+                    rows[k][c] = grid.get(i, j);
+                }
+            }
+            for (int k=0 ; k<b ; k++) sink.row(rows[k]);
+        }
+    }
+}
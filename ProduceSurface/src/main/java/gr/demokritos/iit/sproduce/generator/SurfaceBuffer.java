@@ -0,0 +1,215 @@
+/** 
+* Copyright 2018 Antonia Tsili NCSR Demokritos
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package gr.demokritos.iit.sproduce.generator;
+
+import gr.demokritos.iit.sproduce.utils.DoubleGrid;
+
+/**
+ * <p>Reusable storage of the NxN heights of a generated surface, kept
+ * row-major either in one array of doubles or outside the Java heap.</p>
+ *
+ * <p>The same buffer may be passed to {@link SurfaceGenerator#generate(SurfaceParameters, SurfaceBuffer)}
+ * for any number of surfaces; its storage is replaced only when a larger N
+ * (or, off the heap, a different N) is requested, and never when it is owned by the caller.
+ * A buffer is not safe for use by more than one thread at a time.</p>
+ *
+ * <p>An off-heap buffer also makes the generator keep its working grids off the heap.
+ * Its memory is released by {@link #close()}.</p>
+ */
+public final class SurfaceBuffer implements AutoCloseable {
+
+    /**
+     * Heights, point (i,j) at i*N+j (null off the heap)
+     */
+    private double[] heights;
+    /**
+     * Heights of current surface
+     */
+    private DoubleGrid grid;
+    /**
+     * Whether heights are kept outside the Java heap
+     */
+    private final boolean offHeap;
+    /**
+     * Whether heights are written into storage owned by the caller, which is never replaced
+     */
+    private final boolean callerOwned;
+    /**
+     * Number of surface points (along square side) of the current surface
+     */
+    private int N;
+    /**
+     * Parameters of the current surface
+     */
+    private SurfaceParameters parameters;
+
+    /**
+     * <p>Empty buffer, storage is allocated on first use</p>
+     */
+    public SurfaceBuffer() {
+        this(new double[0], false);
+    }
+
+    /**
+     * <p>Buffer with room for a surface of NxN points</p>
+     *
+     * @param N     Number of surface points (along square side)
+     */
+    public SurfaceBuffer(int N) {
+        this(new double[N*N], false);
+    }
+
+    /**
+     * <p>Buffer writing into storage owned by the caller. The storage is never replaced:
+     * generating a surface of more points than it holds is rejected.</p>
+     *
+     * @param storage   Array of at least NxN elements for the surfaces to be generated
+     */
+    public SurfaceBuffer(double[] storage) {
+        this(storage, true);
+    }
+
+    private SurfaceBuffer(double[] storage, boolean callerOwned) {
+        this.heights = storage;
+        this.offHeap = false;
+        this.callerOwned = callerOwned;
+    }
+
+    private SurfaceBuffer(boolean offHeap) {
+        this.offHeap = offHeap;
+        this.callerOwned = false;
+    }
+
+    /**
+     * @return      Empty buffer keeping heights outside the Java heap
+     */
+    public static SurfaceBuffer offHeap() {
+        return new SurfaceBuffer(true);
+    }
+
+    /**
+     * <p>Make room for a surface with the given parameters</p>
+     *
+     * @param params    Parameters of the next surface
+     * @throws IllegalArgumentException If storage owned by the caller has fewer than NxN elements
+     */
+    void prepare(SurfaceParameters params) {
+        int n = params.getN();
+        if( offHeap ) {
+            if( grid==null || grid.rows()!=n ) {
+                if( grid!=null ) grid.close();
+                grid = null; // not left pointing at released memory if allocation fails
+                grid = DoubleGrid.offHeap(n, n);
+            }
+        } else {
+            if( heights.length<n*n ) {
+                if( callerOwned )
+                    throw new IllegalArgumentException("Storage of " + heights.length + " heights cannot hold a surface of " + n + "x" + n + " points");
+                heights = new double[n*n];
+            }
+            if( grid==null || grid.rows()!=n || grid.array()!=heights ) {
+                grid = DoubleGrid.wrap(heights, n, n);
+            }
+        }
+        this.N = n;
+        this.parameters = params;
+    }
+
+    /**
+     * @return      Whether heights are kept outside the Java heap
+     */
+    public boolean isOffHeap() {
+        return offHeap;
+    }
+
+    /**
+     * @return      Number of surface points (along square side), 0 before any generation
+     */
+    public int getN() {
+        return N;
+    }
+
+    /**
+     * @return      Parameters of the current surface, null before any generation
+     */
+    public SurfaceParameters getParameters() {
+        return parameters;
+    }
+
+    /**
+     * @param i     Row
+     * @param j     Column
+     * @return      Height of point (i,j)
+     */
+    public double get(int i, int j) {
+        return grid.get(i, j);
+    }
+
+    /**
+     * <p>Backing array, only the first NxN elements belong to the current surface</p>
+     *
+     * @return      Heights in row-major order
+     * @throws IllegalStateException    For an off-heap buffer
+     */
+    public double[] heights() {
+        if( offHeap )
+            throw new IllegalStateException("Off-heap buffer has no backing array");
+        return heights;
+    }
+
+    /**
+     * @return      Heights of the current surface as NxN grid, null before any generation
+     */
+    public DoubleGrid grid() {
+        return grid;
+    }
+
+    /**
+     * <p>Copy one row of heights</p>
+     *
+     * @param i     Row
+     * @param dst   Destination
+     * @param off   Position of first height in destination
+     */
+    public void copyRow(int i, double[] dst, int off) {
+        grid.getRow(i, dst, off);
+    }
+
+    /**
+     * @return      Copy of heights as NxN matrix
+     */
+    public double[][] toArray() {
+        double[][] X = new double[N][N];
+        for (int i=0 ; i<N ; i++) {
+            copyRow(i, X[i], 0);
+        }
+        return X;
+    }
+
+    /**
+     * <p>Release off-heap memory; the buffer may be used again afterwards</p>
+     */
+    @Override
+    public void close() {
+        if( offHeap && grid!=null ) {
+            grid.close();
+            grid = null;
+            N = 0;
+            parameters = null;
+        }
+    }
+}
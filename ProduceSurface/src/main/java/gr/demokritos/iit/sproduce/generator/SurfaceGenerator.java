@@ -0,0 +1,454 @@
+/** 
+* Copyright 2018 Antonia Tsili NCSR Demokritos
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package gr.demokritos.iit.sproduce.generator;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import gr.demokritos.iit.sproduce.utils.DoubleGrid;
+import gr.demokritos.iit.sproduce.utils.FastFourier;
+import gr.demokritos.iit.sproduce.utils.Linspace;
+import gr.demokritos.iit.sproduce.utils.StageMetrics;
+import gr.demokritos.iit.sproduce.utils.StageMetrics.Stage;
+
+
+/**
+ * <p>Generator of square 2-dimensional random rough surfaces with a Gaussian
+ * height distribution and exponential autocovariance, for use inside other
+ * applications. Parameters are given as {@link SurfaceParameters} and heights
+ * are written into a {@link SurfaceBuffer} supplied by the caller.</p>
+ *
+ * <p>The surface is ifft2(fft2(GF).*fft2(RRS)) scaled by 2rL/(N&radic;(clx&middot;cly)),
+ * where RRS are random normal heights multiplied by h and GF is the exponential filter.
+ * For the analytic {@link Autocovariance} families it is ifft2(W.*fft2(RRS)), where W
+ * is the amplitude spectrum evaluated on the frequency grid, so no filter is transformed.
+ * A generator made to be recursive computes the filtered surface with {@link RecursiveFilter}
+ * instead, in O(N&sup2;) and with two NxN grids, to the same result up to rounding.
+ * Above a cutoff frequency the spectrum is zero, and the inverse transform skips
+ * what is known to be zero ({@link FastFourier#iFTransform(DoubleGrid, DoubleGrid, int)}).
+ * Surfaces of other skewness and kurtosis than Gaussian are then passed through
+ * {@link MomentCorrection}, whose buffers are on the Java heap.</p>
+ *
+ * <p>Working grids are taken from a {@link SurfaceWorkspace}, which callers generating
+ * many surfaces keep (one per thread) so that nothing but single rows is allocated per
+ * surface; otherwise they are kept in the same kind of memory as the given buffer, so that
+ * nothing of an off-heap surface is placed on the Java heap apart from single rows,
+ * and released before returning.</p>
+ *
+ * <p>An instance keeps no state between calls, so it may be shared by any number
+ * of threads as long as each thread generates into its own buffer.</p>
+ */
+public final class SurfaceGenerator {
+
+    /**
+     * Imaginary parts at or above this value do not round to zero at 10 decimals
+     */
+    static final double IMAGINARY_TOLERANCE = 0.5e-10;
+
+    /**
+     * Timing and allocations of generation stages
+     */
+    private final StageMetrics metrics;
+    /**
+     * Whether the exponential filter is applied by recursive sweeps instead of Fourier transforms
+     */
+    private final boolean recursive;
+
+    /**
+     * <p>Generator that records no metrics</p>
+     */
+    public SurfaceGenerator() {
+        this(StageMetrics.DISABLED);
+    }
+
+    /**
+     * @param metrics   Where stage timings are recorded
+     */
+    public SurfaceGenerator(StageMetrics metrics) {
+        this(metrics, false);
+    }
+
+    /**
+     * @param metrics   Where stage timings are recorded
+     * @param recursive Whether surfaces of the exponential filter family are generated
+     *                  by recursive sweeps instead of Fourier transforms
+     */
+    public SurfaceGenerator(StageMetrics metrics, boolean recursive) {
+        this.metrics = metrics;
+        this.recursive = recursive;
+    }
+
+    /**
+     * @return      Whether the exponential filter is applied by recursive sweeps
+     */
+    public boolean isRecursive() {
+        return recursive;
+    }
+
+    /**
+     * @param params    Surface parameters
+     * @return          Whether the surface is generated by recursive sweeps
+     */
+    boolean isRecursive(SurfaceParameters params) {
+        return recursive && params.getAutocovariance()==Autocovariance.EXPONENTIAL_FILTER && params.getN()>1
+                && params.getCutoff()==0;
+    }
+
+    /**
+     * <p>Generate a surface into a new buffer</p>
+     *
+     * @param params    Surface parameters
+     * @return          Buffer holding the surface
+     * @throws ImError  If Fourier transformation did not succeed
+     */
+    public SurfaceBuffer generate(SurfaceParameters params) throws ImError {
+        SurfaceBuffer out = new SurfaceBuffer(params.getN());
+        generate(params, out);
+        return out;
+    }
+
+    /**
+     * <p>Generate a surface into the given buffer, replacing its contents.
+     * <br>Working storage is allocated for this surface alone, in the same kind of
+     * memory as the buffer.</p>
+     *
+     * @param params    Surface parameters
+     * @param out       Buffer to receive the heights
+     * @throws ImError  If Fourier transformation did not succeed
+     * @throws IllegalArgumentException If the buffer writes into storage of the caller with fewer than NxN elements
+     */
+    public void generate(SurfaceParameters params, SurfaceBuffer out) throws ImError {
+        try (SurfaceWorkspace workspace = out.isOffHeap() ? SurfaceWorkspace.offHeap() : new SurfaceWorkspace()) {
+            generate(params, out, workspace);
+        }
+    }
+
+    /**
+     * <p>Generate a surface into the given buffer, replacing its contents,
+     * with working storage lent by the caller</p>
+     *
+     * @param params    Surface parameters
+     * @param out       Buffer to receive the heights
+     * @param workspace Working storage, kept for the next surfaces
+     * @throws ImError  If Fourier transformation did not succeed
+     * @throws IllegalArgumentException If the buffer writes into storage of the caller with fewer than NxN elements
+     */
+    public void generate(SurfaceParameters params, SurfaceBuffer out, SurfaceWorkspace workspace) throws ImError {
+        int N = params.getN();
+        out.prepare(params); // storage too small is rejected before any work
+        StageMetrics.Timer timer = metrics.start(N);
+
+        if( isRecursive(params) ) {
+            DoubleGrid noise = workspace.grid(0, N, false);
+            randomHeights(params, noise);
+            timer.lap(Stage.RANDOM_SURFACE);
+
+            RecursiveFilter.apply(params, noise, out.grid());
+            timer.lap(Stage.RECURSIVE_FILTER);
+            correctMoments(params, out, workspace, timer);
+            return;
+        }
+
+        DoubleGrid surfRe = workspace.grid(0, N, false);
+        DoubleGrid surfIm = workspace.grid(1, N, true);
+        randomHeights(params, surfRe);
+        timer.lap(Stage.RANDOM_SURFACE);
+
+        FastFourier fft2 = workspace.fourier(N);
+        double scale;
+        if( params.getAutocovariance().isSpectral() ) {
+            // implementing ifft2(W.*fft2(RRS)) with amplitudes W in closed form
+            fft2.FTransform(surfRe, surfIm);
+            timer.lap(Stage.FORWARD_FFT);
+
+            scale = spectrum(params, surfRe, surfIm);
+            timer.lap(Stage.SPECTRUM_MULT);
+        } else {
+            double[] L = meshLine(params);
+            timer.lap(Stage.MESH_GRID);
+
+            DoubleGrid filterRe = workspace.grid(2, N, false);
+            DoubleGrid filterIm = workspace.grid(3, N, true);
+            filter(params, L, filterRe);
+            timer.lap(Stage.GAUSSIAN_FILTER);
+
+            // implementing ifft2(fft2(GF).*fft2(RRS)
+            fft2.FTransform(filterRe, filterIm);
+            fft2.FTransform(surfRe, surfIm);
+            timer.lap(Stage.FORWARD_FFT);
+
+            double gain = lowPass(params, filterRe, filterIm);
+            fft2.ComplexArray_mult(filterRe, filterIm, surfRe, surfIm, surfRe, surfIm);
+            timer.lap(Stage.SPECTRUM_MULT);
+            scale = scale(params) * gain;
+        }
+
+        fft2.iFTransform(surfRe, surfIm, band(params));
+        timer.lap(Stage.INVERSE_FFT);
+
+        scaleInto(params, scale, surfRe, surfIm, out.grid());
+        timer.lap(Stage.REAL_CHECK);
+        correctMoments(params, out, workspace, timer);
+    }
+
+    /**
+     * <p>Give a non-Gaussian surface its skewness and kurtosis</p>
+     */
+    private static void correctMoments(SurfaceParameters params, SurfaceBuffer out, SurfaceWorkspace workspace,
+                                       StageMetrics.Timer timer) {
+        if( !params.isGaussian() ) {
+            workspace.correction().apply(params, out.grid());
+            timer.lap(Stage.MOMENT_CORRECTION);
+        }
+    }
+
+    /**
+     * <p>Check that the result of the inverse transform is real and
+     * write its real part multiplied by the normalizing prefactor</p>
+     *
+     * @param params    Surface parameters
+     * @param scale     Normalizing prefactor
+     * @param re        Real parts of inverse transform
+     * @param im        Imaginary parts of inverse transform
+     * @param heights   Destination of surface heights
+     * @throws ImError  If an imaginary part does not round to zero
+     */
+    static void scaleInto(SurfaceParameters params, double scale, DoubleGrid re, DoubleGrid im, DoubleGrid heights) throws ImError {
+        int N = params.getN();
+        double[] rowRe = new double[N];
+        double[] rowIm = new double[N];
+        for (int i=0 ; i<N ; i++) {
+            re.getRow(i, rowRe, 0);
+            im.getRow(i, rowIm, 0);
+            for (int j=0 ; j<N ; j++) {
+                if( Math.abs(rowIm[j])>=IMAGINARY_TOLERANCE ) // must be real number after rounding
+                    throw new ImError();
+                rowRe[j] *= scale;
+            }
+            heights.setRow(i, rowRe, 0);
+        }
+    }
+
+    /**
+     * <p>Absolute values of N evenly spaced points between -rL/2 and rL/2,
+     * the distance from the centre along either axis</p>
+     *
+     * @param params    Surface parameters
+     * @return          Array of N distances
+     */
+    static double[] meshLine(SurfaceParameters params) {
+        double rL = params.getLength();
+        double[] L = new Linspace(-rL/2, rL/2, params.getN()).op();
+        for (int i=0 ; i<L.length ; i++) {
+            L[i] = Math.abs(L[i]);
+        }
+        return L;
+    }
+
+    /**
+     * <p>Fill an array with NxN random normal distributed values
+     * multiplied by h (rms height)</p>
+     *
+     * @param params    Surface parameters
+     * @param re        NxN destination
+     */
+    static void randomHeights(SurfaceParameters params, DoubleGrid re) {
+        Random rand = params.hasSeed() ? new Random(params.getSeed()) : new Random();
+        double H = params.getRms();
+        int N = params.getN();
+        double[] row = new double[N];
+        for (int i=0 ; i<N ; i++) {
+            for (int j=0 ; j<N ; j++) {
+                row[j] = H*rand.nextGaussian(); //standard normal distribution
+            }
+            re.setRow(i, row, 0);
+        }
+    }
+
+    /**
+     * <p>Compute the exponential filter exp(-(|x|/(clx/2) + |y|/(cly/2))), cly=clx for isotropic.
+     * <br>The filter is separable, so it is the product of one row and one column factor.</p>
+     *
+     * @param params    Surface parameters
+     * @param L         Distances from centre along side, as given by {@link #meshLine(SurfaceParameters)}
+     * @param F         NxN destination
+     */
+    static void filter(SurfaceParameters params, double[] L, DoubleGrid F) {
+        int N = params.getN();
+        double clx = params.getClx();
+        double cly = params.isIsotropic() ? clx : params.getCly();
+
+        double[] fx = new double[N];
+        double[] fy = new double[N];
+        for (int k=0 ; k<N ; k++) {
+            fx[k] = Math.exp( -L[k]/(clx/2) );
+            fy[k] = Math.exp( -L[k]/(cly/2) );
+        }
+        double[] row = new double[N];
+        for (int i=0 ; i<N ; i++) {
+            for (int j=0 ; j<N ; j++) {
+                row[j] = fy[i]*fx[j];
+            }
+            F.setRow(i, row, 0);
+        }
+    }
+
+    /**
+     * <p>Multiply the transform of the random heights by the amplitude spectrum of the
+     * autocovariance family, evaluated on the frequency grid (rows along y, columns along x)
+     * or taken from the measured spectrum, and zero above the cutoff frequency</p>
+     *
+     * @param params    Surface parameters, of an analytic or measured family
+     * @param re        Real parts of forward transform, multiplied in place
+     * @param im        Imaginary parts of forward transform, multiplied in place (may be null,
+     *                  so that a grid of ones gives the amplitudes themselves)
+     * @return          Normalizing prefactor of the inverse transform, N/&radic;(&Sigma;W&sup2;),
+     *                  which makes the RMS height h (also below a cutoff)
+     */
+    static double spectrum(SurfaceParameters params, DoubleGrid re, DoubleGrid im) {
+        int N = params.getN();
+        double clx = params.getClx();
+        double cly = params.isIsotropic() ? clx : params.getCly();
+        AnalyticSpectrum analytic = params.getAutocovariance().analytic();
+        double hurst = params.getHurst();
+
+        MeasuredSpectrum measured = params.getSpectrum();
+        double[] columns = null;
+        if( analytic!=null ) {
+            double[] qx2 = new double[N];
+            for (int j=0 ; j<N ; j++) {
+                double q = wavenumber(params, j) * clx;
+                qx2[j] = q*q;
+            }
+            columns = analytic.columns(qx2, hurst);
+        }
+
+        double[] w = new double[N];
+        double[] rowRe = new double[N];
+        double[] rowIm = new double[N];
+        double sum = 0;
+        for (int i=0 ; i<N ; i++) {
+            if( columns==null ) {
+                measured.amplitudes(i, w);
+            } else {
+                double q = wavenumber(params, i) * cly;
+                analytic.row(q*q, columns, hurst, w);
+            }
+            cut(params, i, w);
+            re.getRow(i, rowRe, 0);
+            for (int j=0 ; j<N ; j++) {
+                rowRe[j] *= w[j];
+                sum += w[j]*w[j];
+            }
+            re.setRow(i, rowRe, 0);
+            if( im!=null ) {
+                im.getRow(i, rowIm, 0);
+                for (int j=0 ; j<N ; j++) {
+                    rowIm[j] *= w[j];
+                }
+                im.setRow(i, rowIm, 0);
+            }
+        }
+        return sum>0 ? N / Math.sqrt(sum) : 0;
+    }
+
+    /**
+     * <p>Zero the values of a row of the spectrum above the cutoff frequency, if any</p>
+     *
+     * @param params    Surface parameters
+     * @param i         Row of the spectrum
+     * @param w         Values of row i
+     */
+    static void cut(SurfaceParameters params, int i, double[] w) {
+        double cutoff = params.getCutoff();
+        if( cutoff==0 ) return;
+        int N = params.getN();
+        double limit = cutoff * params.getLength(); // in frequency indices
+        double mi = i<=N/2 ? i : i-N;
+        for (int j=0 ; j<N ; j++) {
+            double mj = j<=N/2 ? j : j-N;
+            if( mi*mi + mj*mj > limit*limit ) w[j] = 0;
+        }
+    }
+
+    /**
+     * <p>Zero the transform of the filter above the cutoff frequency, if any</p>
+     *
+     * @param params    Surface parameters
+     * @param re        Real parts of the transform of the filter, cut in place
+     * @param im        Imaginary parts of the transform of the filter, cut in place
+     * @return          Factor of the normalizing prefactor restoring the RMS height,
+     *                  &radic;(total/kept power) of the filter (1 without cutoff)
+     */
+    static double lowPass(SurfaceParameters params, DoubleGrid re, DoubleGrid im) {
+        if( params.getCutoff()==0 ) return 1;
+        int N = params.getN();
+        double[] rowRe = new double[N];
+        double[] rowIm = new double[N];
+        double[] mask = new double[N];
+        double total = 0, kept = 0;
+        for (int i=0 ; i<N ; i++) {
+            re.getRow(i, rowRe, 0);
+            im.getRow(i, rowIm, 0);
+            Arrays.fill(mask, 1);
+            cut(params, i, mask);
+            for (int j=0 ; j<N ; j++) {
+                double p = rowRe[j]*rowRe[j] + rowIm[j]*rowIm[j];
+                total += p;
+                kept += p*mask[j];
+                rowRe[j] *= mask[j];
+                rowIm[j] *= mask[j];
+            }
+            re.setRow(i, rowRe, 0);
+            im.setRow(i, rowIm, 0);
+        }
+        return kept>0 ? Math.sqrt(total/kept) : 0;
+    }
+
+    /**
+     * @param params    Surface parameters
+     * @return          Highest absolute frequency index (along either side) below the cutoff frequency
+     */
+    static int band(SurfaceParameters params) {
+        int N = params.getN();
+        double limit = params.getCutoff() * params.getLength();
+        if( params.getCutoff()==0 || limit>=N/2 ) return N/2;
+        return (int) Math.floor(limit);
+    }
+
+    /**
+     * <p>Wavenumber 2&pi;m/rL of index k of the transform, where m is k
+     * folded into (-N/2,N/2] so that the spectrum is symmetric and the surface real</p>
+     */
+    static double wavenumber(SurfaceParameters params, int k) {
+        int N = params.getN();
+        int m = k<=N/2 ? k : k-N;
+        return 2 * Math.PI * m / params.getLength();
+    }
+
+    /**
+     * @param params    Surface parameters
+     * @return          Normalizing prefactor of the inverse transform of the filtered surface
+     */
+    static double scale(SurfaceParameters params) {
+        double rL = params.getLength();
+        int N = params.getN();
+        if( params.isIsotropic() )
+            return 2 * rL / N / params.getClx();
+        return 2 * rL / N / Math.sqrt(params.getClx() * params.getCly());
+    }
+}
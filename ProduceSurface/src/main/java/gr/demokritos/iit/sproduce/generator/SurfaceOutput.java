@@ -0,0 +1,155 @@
+/** 
+* Copyright 2018 Antonia Tsili NCSR Demokritos
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package gr.demokritos.iit.sproduce.generator;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+
+/**
+ * <p>Where and how generated surfaces are printed: standard output or appended
+ * to a file, as text or quantized and compressed, whole or cut into tiles,
+ * alone or followed by its symmetry variants.</p>
+ *
+ * <p>Quantized surfaces go through one {@link QuantizedSurfaceWriter}, whose buffers
+ * and compressor are kept for the whole run and released by {@link #close()}.
+ * An output must be used by one thread at a time.</p>
+ */
+final class SurfaceOutput implements AutoCloseable {
+
+    /**
+     * Name of output file (null for standard output)
+     */
+    final String filename;
+    /**
+     * Tiles to print instead of whole surfaces (null for whole surfaces)
+     */
+    final SurfaceTiling tiling;
+    /**
+     * Variants printed after each surface (null for the surface alone)
+     */
+    final SurfaceAugmentation augmentation;
+    /**
+     * Step of quantized heights (0 for text output)
+     */
+    final double resolution;
+    /**
+     * Whether the output file is synced to disk after every surface
+     */
+    final boolean sync;
+    /**
+     * Writer of quantized records (null until the first one)
+     */
+    private QuantizedSurfaceWriter quantized;
+
+    /**
+     * @param filename      Name of output file (null for standard output)
+     * @param tiling        Tiles to print instead of whole surfaces (null for whole surfaces)
+     * @param augmentation  Variants printed after each surface (null for the surface alone)
+     * @param resolution    Step of quantized heights (0 for text output)
+     * @param sync          Whether the output file is synced to disk after every surface
+     */
+    SurfaceOutput(String filename, SurfaceTiling tiling, SurfaceAugmentation augmentation, double resolution, boolean sync) {
+        if( resolution>0 && filename==null )
+            throw new IllegalArgumentException("Quantized output needs an output file");
+        if( tiling!=null && augmentation!=null )
+            throw new IllegalArgumentException("Tiles and augmentation variants cannot be combined");
+        this.filename = filename;
+        this.tiling = tiling;
+        this.augmentation = augmentation;
+        this.resolution = resolution;
+        this.sync = sync;
+    }
+
+    /**
+     * <p>Print one surface</p>
+     *
+     * @param S             Surface
+     * @param id            Identifier of surface in output (position of parameters in input)
+     * @return              Size of output file after writing (-1 for standard output)
+     * @throws IOException  If there was an error creating or writing to file
+     */
+    long write(SurfaceBuffer S, int id) throws IOException {
+        return write(S, id, "");
+    }
+
+    /**
+     * <p>Print one surface with a tag appended to its parameters</p>
+     *
+     * @param S             Surface
+     * @param id            Identifier of surface in output (position of parameters in input)
+     * @param tag           Appended to parameters, such as ":frame:&lt;t&gt;" (may be empty)
+     * @return              Size of output file after writing (-1 for standard output)
+     * @throws IOException  If there was an error creating or writing to file
+     */
+    long write(SurfaceBuffer S, int id, String tag) throws IOException {
+        if( filename==null ) {
+            if( tiling!=null )
+                tiling.writeTiles(new SurfaceWriter.TextSink(System.out), S, id, tag);
+            else if( augmentation!=null )
+                augmentation.writeVariants(new SurfaceWriter.TextSink(System.out), S, tag);
+            else
+                SurfaceWriter.printArray(System.out, S, tag);
+            return -1;
+        }
+
+        try (FileOutputStream stream = new FileOutputStream(filename, true)) {
+            OutputStream out = new BufferedOutputStream(stream, 1 << 16);
+            if( resolution>0 ) {
+                if( quantized==null ) quantized = new QuantizedSurfaceWriter(resolution);
+                quantized.redirect(out);
+                try {
+                    write(quantized, S, id, tag);
+                    quantized.flush();
+                } catch (IOException | RuntimeException e) {
+                    quantized = null; // record left incomplete: next one starts from a new writer
+                    throw e;
+                }
+            } else {
+                Writer writer = new OutputStreamWriter(out);
+                write(new SurfaceWriter.TextSink(writer), S, id, tag);
+                writer.flush();
+            }
+            if( sync ) stream.getFD().sync();
+            return stream.getChannel().position();
+        }
+    }
+
+    private void write(SurfaceSink sink, SurfaceBuffer S, int id, String tag) throws IOException {
+        if( tiling!=null )
+            tiling.writeTiles(sink, S, id, tag);
+        else if( augmentation!=null )
+            augmentation.writeVariants(sink, S, tag);
+        else
+            SurfaceWriter.write(sink, S, tag);
+    }
+
+    /**
+     * <p>Release the compressor of quantized output</p>
+     *
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        if( quantized!=null ) quantized.finish();
+        quantized = null;
+    }
+}
@@ -0,0 +1,338 @@
+/** 
+* Copyright 2018 Antonia Tsili NCSR Demokritos
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package gr.demokritos.iit.sproduce.generator;
+
+import java.util.Locale;
+
+
+/**
+ * <p>Immutable set of parameters of one random rough surface:
+ * number of points N along the square side, side length rL, RMS height h and
+ * correlation lengths clx and cly. A zero cly makes the surface isotropic.
+ * The autocovariance family defaults to {@link Autocovariance#EXPONENTIAL_FILTER},
+ * and the Hurst exponent of {@link Autocovariance#POWER_LAW} to 0.5.
+ * Heights are Gaussian (skewness 0, kurtosis 3) unless other moments are given,
+ * and all spatial frequencies are kept unless a cutoff frequency is given.</p>
+ *
+ * <p>A seed may be attached so that the same surface can be produced again;
+ * without one every generation gives a new realization.</p>
+ */
+public final class SurfaceParameters {
+
+    /**
+     * Number of surface points (along square side)
+     */
+    private final int N;
+    /**
+     * Length of surface (along square side)
+     */
+    private final double rL;
+    /**
+     * RMS height
+     */
+    private final double h;
+    /**
+     * Correlation length x axis
+     */
+    private final double clx;
+    /**
+     * Correlation length y axis (0 for isotropic)
+     */
+    private final double cly;
+    /**
+     * Seed of the random heights
+     */
+    private final long seed;
+    /**
+     * Whether seed is used
+     */
+    private final boolean seeded;
+    /**
+     * Family of autocovariance function
+     */
+    private final Autocovariance acf;
+    /**
+     * Hurst exponent of power-law spectrum
+     */
+    private final double hurst;
+    /**
+     * Spectrum of measured family (null for others)
+     */
+    private final MeasuredSpectrum spectrum;
+    /**
+     * Skewness of heights
+     */
+    private final double skewness;
+    /**
+     * Kurtosis of heights (3 for Gaussian)
+     */
+    private final double kurtosis;
+    /**
+     * Highest spatial frequency kept, in cycles per unit of length (0 for all)
+     */
+    private final double cutoff;
+
+    /**
+     * <p>For an isotropic surface</p>
+     *
+     * @param N         Number (power of 2) of surface points along square side
+     * @param rL        Length of surface along square side
+     * @param h         RMS height
+     * @param clx       Correlation length
+     */
+    public SurfaceParameters(int N, double rL, double h, double clx) {
+        this(N, rL, h, clx, 0.0);
+    }
+
+    /**
+     * <p>For a non-isotropic surface (isotropic if cly is 0)</p>
+     *
+     * @param N         Number (power of 2) of surface points along square side
+     * @param rL        Length of surface along square side
+     * @param h         RMS height
+     * @param clx       Correlation length x axis
+     * @param cly       Correlation length y axis
+     */
+    public SurfaceParameters(int N, double rL, double h, double clx, double cly) {
+        this(N, rL, h, clx, cly, 0L, false, Autocovariance.EXPONENTIAL_FILTER, 0.5, null, 0.0, 3.0, 0.0);
+    }
+
+    private SurfaceParameters(int N, double rL, double h, double clx, double cly, long seed, boolean seeded,
+                              Autocovariance acf, double hurst, MeasuredSpectrum spectrum,
+                              double skewness, double kurtosis, double cutoff) {
+        if( N<2 || Integer.bitCount(N)!=1 )
+            throw new IllegalArgumentException("Number of points must be a power of 2: " + N);
+        if( !(rL>0) )
+            throw new IllegalArgumentException("Length must be positive: " + rL);
+        if( !(h>=0) )
+            throw new IllegalArgumentException("RMS height must not be negative: " + h);
+        if( !(clx>0) )
+            throw new IllegalArgumentException("Correlation length x must be positive: " + clx);
+        if( !(cly>=0) )
+            throw new IllegalArgumentException("Correlation length y must not be negative: " + cly);
+        if( acf==null )
+            throw new IllegalArgumentException("Autocovariance family must be given");
+        if( !(hurst>0 && hurst<=1) )
+            throw new IllegalArgumentException("Hurst exponent must be in (0,1]: " + hurst);
+        if( acf==Autocovariance.MEASURED && (spectrum==null || spectrum.getN()!=N) )
+            throw new IllegalArgumentException("Measured family needs a spectrum of " + N + " points along side");
+        if( !(kurtosis > skewness*skewness + 1) )
+            throw new IllegalArgumentException("Kurtosis must exceed skewness squared plus one: " + skewness + ", " + kurtosis);
+        if( !(cutoff>=0) )
+            throw new IllegalArgumentException("Cutoff frequency must not be negative: " + cutoff);
+
+        this.N = N;
+        this.rL = rL;
+        this.h = h;
+        this.clx = clx;
+        this.cly = cly;
+        this.seed = seed;
+        this.seeded = seeded;
+        this.acf = acf;
+        this.hurst = hurst;
+        this.spectrum = spectrum;
+        this.skewness = skewness;
+        this.kurtosis = kurtosis;
+        this.cutoff = cutoff;
+    }
+
+    /**
+     * @param seed      Seed of the random heights
+     * @return          Same parameters with given seed
+     */
+    public SurfaceParameters withSeed(long seed) {
+        return new SurfaceParameters(N, rL, h, clx, cly, seed, true, acf, hurst, spectrum, skewness, kurtosis, cutoff);
+    }
+
+    /**
+     * @param acf       Family of autocovariance function
+     * @return          Same parameters with given family
+     */
+    public SurfaceParameters withAutocovariance(Autocovariance acf) {
+        return new SurfaceParameters(N, rL, h, clx, cly, seed, seeded, acf, hurst, spectrum, skewness, kurtosis, cutoff);
+    }
+
+    /**
+     * @param hurst     Hurst exponent (0,1] of power-law spectrum
+     * @return          Same parameters with given exponent
+     */
+    public SurfaceParameters withHurst(double hurst) {
+        return new SurfaceParameters(N, rL, h, clx, cly, seed, seeded, acf, hurst, spectrum, skewness, kurtosis, cutoff);
+    }
+
+    /**
+     * @param spectrum  Spectrum estimated from measured height maps, of N points along side
+     * @return          Same parameters of the measured family with given spectrum
+     */
+    public SurfaceParameters withSpectrum(MeasuredSpectrum spectrum) {
+        return new SurfaceParameters(N, rL, h, clx, cly, seed, seeded, Autocovariance.MEASURED, hurst, spectrum, skewness, kurtosis, cutoff);
+    }
+
+    /**
+     * @return      Number of surface points (along square side)
+     */
+    public int getN() {
+        return N;
+    }
+
+    /**
+     * @return      Length of surface (along square side)
+     */
+    public double getLength() {
+        return rL;
+    }
+
+    /**
+     * @return      RMS height
+     */
+    public double getRms() {
+        return h;
+    }
+
+    /**
+     * @return      Correlation length x axis
+     */
+    public double getClx() {
+        return clx;
+    }
+
+    /**
+     * @return      Correlation length y axis (0 for isotropic)
+     */
+    public double getCly() {
+        return cly;
+    }
+
+    /**
+     * @return      Whether correlation length y is omitted
+     */
+    public boolean isIsotropic() {
+        return cly==0.0;
+    }
+
+    /**
+     * @return      Whether a seed is attached
+     */
+    public boolean hasSeed() {
+        return seeded;
+    }
+
+    /**
+     * @return      Seed of the random heights (meaningful only if {@link #hasSeed()})
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * @param skewness  Skewness of heights
+     * @param kurtosis  Kurtosis of heights (3 for Gaussian)
+     * @return          Same parameters with given height distribution moments
+     */
+    public SurfaceParameters withMoments(double skewness, double kurtosis) {
+        return new SurfaceParameters(N, rL, h, clx, cly, seed, seeded, acf, hurst, spectrum, skewness, kurtosis, cutoff);
+    }
+
+    /**
+     * <p>Band-limited surface: Fourier components of spatial frequency
+     * &radic;(f<sub>x</sub>&sup2;+f<sub>y</sub>&sup2;) above the cutoff are zero,
+     * and the remaining ones are scaled up so that the RMS height stays h</p>
+     *
+     * @param cutoff    Highest spatial frequency kept, in cycles per unit of length (0 for all)
+     * @return          Same parameters with given cutoff frequency
+     */
+    public SurfaceParameters withCutoff(double cutoff) {
+        return new SurfaceParameters(N, rL, h, clx, cly, seed, seeded, acf, hurst, spectrum, skewness, kurtosis, cutoff);
+    }
+
+    /**
+     * @return      Same parameters with correlation lengths x and y swapped, as
+     *              for the surface transposed (same parameters if isotropic)
+     */
+    SurfaceParameters transposed() {
+        if( isIsotropic() ) return this;
+        return new SurfaceParameters(N, rL, h, cly, clx, seed, seeded, acf, hurst, spectrum, skewness, kurtosis, cutoff);
+    }
+
+    /**
+     * @return      Family of autocovariance function
+     */
+    public Autocovariance getAutocovariance() {
+        return acf;
+    }
+
+    /**
+     * @return      Hurst exponent of power-law spectrum
+     */
+    public double getHurst() {
+        return hurst;
+    }
+
+    /**
+     * @return      Spectrum of measured family (null for others)
+     */
+    public MeasuredSpectrum getSpectrum() {
+        return spectrum;
+    }
+
+    /**
+     * @return      Skewness of heights
+     */
+    public double getSkewness() {
+        return skewness;
+    }
+
+    /**
+     * @return      Kurtosis of heights (3 for Gaussian)
+     */
+    public double getKurtosis() {
+        return kurtosis;
+    }
+
+    /**
+     * @return      Highest spatial frequency kept, in cycles per unit of length (0 for all)
+     */
+    public double getCutoff() {
+        return cutoff;
+    }
+
+    /**
+     * @return      Whether heights are Gaussian (skewness 0 and kurtosis 3)
+     */
+    public boolean isGaussian() {
+        return skewness==0.0 && kurtosis==3.0;
+    }
+
+    /**
+     * @return      Parameters other than the original ones (family, Hurst exponent, moments, cutoff)
+     *              as &lt;param_name&gt;:&lt;param_value&gt; pairs following a colon,
+     *              empty for a Gaussian surface of the original exponential filter
+     */
+    String optionalSuffix() {
+        String suffix = "";
+        if( acf!=Autocovariance.EXPONENTIAL_FILTER ) suffix += ":acf:" + acf.name().toLowerCase(Locale.ROOT);
+        if( acf==Autocovariance.POWER_LAW ) suffix += ":hurst:" + hurst;
+        if( !isGaussian() ) suffix += ":skewness:" + skewness + ":kurtosis:" + kurtosis;
+        if( cutoff>0 ) suffix += ":cutoff:" + cutoff;
+        return suffix;
+    }
+
+    @Override
+    public String toString() {
+        return "rms:" + h + ":clx:" + clx + ":cly:" + cly + ":N:" + N + optionalSuffix();
+    }
+}
@@ -0,0 +1,318 @@
+/** 
+* Copyright 2018 Antonia Tsili NCSR Demokritos
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package gr.demokritos.iit.sproduce.generator;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import gr.demokritos.iit.sproduce.utils.StageMetrics;
+import gr.demokritos.iit.sproduce.utils.StageMetrics.Stage;
+
+
+/**
+ * <p>Generates surfaces of an input file on several threads and prints them
+ * in input order, as many at a time as the {@link MemoryGovernor} admits and
+ * at most {@value #IN_FLIGHT_PER_THREAD} per thread.</p>
+ *
+ * <p>Surfaces are submitted by one thread, which also prints them: while the
+ * next surface does not fit, the oldest one is awaited, printed (and journaled)
+ * and its memory is released. Output is therefore the same as that of a
+ * sequential run with the same seeds.</p>
+ *
+ * <p>Every generating thread owns one {@link SurfaceWorkspace}, created on its first
+ * surface and kept until the pipeline is closed. Each surface reserves its result;
+ * the workspaces are reserved together, for the most they can grow to with the
+ * surfaces submitted so far. When nothing is in progress and the next surface
+ * still does not fit, the workspaces are emptied and their reservation released.</p>
+ */
+final class SurfacePipeline implements AutoCloseable {
+
+    /**
+     * Most surfaces in progress or awaiting print per generating thread
+     */
+    static final int IN_FLIGHT_PER_THREAD = 2;
+
+    /**
+     * <p>Surface submitted but not yet printed</p>
+     */
+    private static final class Pending {
+        final SurfaceParameters params;
+        final int row;
+        final String id;
+        final long bytes;
+        final Future<SurfaceBuffer> result;
+
+        Pending(SurfaceParameters params, int row, String id, long bytes, Future<SurfaceBuffer> result) {
+            this.params = params;
+            this.row = row;
+            this.id = id;
+            this.bytes = bytes;
+            this.result = result;
+        }
+    }
+
+    private final SurfaceGenerator generator;
+    private final SurfaceOutput output;
+    private final BatchJournal journal;
+    private final MemoryGovernor governor;
+    private final boolean offHeap;
+    private final StageMetrics metrics;
+    private final int threads;
+    private final ExecutorService workers;
+    private final ArrayDeque<Pending> pending = new ArrayDeque<>();
+
+    /**
+     * Workspace of each generating thread
+     */
+    private final ThreadLocal<SurfaceWorkspace> workspace;
+    /**
+     * Workspaces of all generating threads, released on close
+     */
+    private final ArrayList<SurfaceWorkspace> workspaces = new ArrayList<>();
+    /**
+     * Most bytes any workspace may hold: largest grid k and moment correction buffers
+     * of the surfaces submitted since the workspaces were last emptied
+     */
+    private final long[] gridBytes = new long[SurfaceWorkspace.GRIDS];
+    private long correctionBytes = 0;
+    /**
+     * Surfaces submitted since the workspaces were last emptied (workspaces in use are no more)
+     */
+    private int submitted = 0;
+    /**
+     * Bytes reserved for the workspaces
+     */
+    private long workspaceBytes = 0;
+
+    /**
+     * @param generator     Surface generator
+     * @param output        Where and how surfaces are printed
+     * @param journal       Journal of printed surfaces (null if not resumable)
+     * @param governor      Budget of surfaces in progress
+     * @param threads       Number of generating threads
+     * @param offHeap       Whether surfaces are kept outside the Java heap
+     * @param metrics       Where stage timings are recorded
+     */
+    SurfacePipeline(SurfaceGenerator generator, SurfaceOutput output, BatchJournal journal,
+                    MemoryGovernor governor, int threads, boolean offHeap, StageMetrics metrics) {
+        if( threads<1 )
+            throw new IllegalArgumentException("Number of threads must be positive: " + threads);
+        this.generator = generator;
+        this.output = output;
+        this.journal = journal;
+        this.governor = governor;
+        this.offHeap = offHeap;
+        this.metrics = metrics;
+        this.threads = threads;
+        this.workspace = ThreadLocal.withInitial(() -> {
+            SurfaceWorkspace w = offHeap ? SurfaceWorkspace.offHeap() : new SurfaceWorkspace();
+            synchronized (workspaces) {
+                workspaces.add(w);
+            }
+            return w;
+        });
+        this.workers = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "surface-generator");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * <p>Start generating a surface, first printing older ones until it fits into the budget</p>
+     *
+     * @param params        Parameters of the surface (with seed)
+     * @param row           Position of parameters in input file
+     * @param id            ID column of input file
+     * @throws ImError      If Fourier transformation of an older surface did not succeed
+     * @throws IOException  If there was an error writing to a synced file
+     */
+    void submit(SurfaceParameters params, int row, String id) throws ImError, IOException {
+        long result = MemoryGovernor.result(params);
+        while( pending.size() >= IN_FLIGHT_PER_THREAD*threads ) {
+            printOldest();
+        }
+        while( true ) {
+            long growth = Math.max(workspaceBound(params) - workspaceBytes, 0);
+            if( governor.tryAcquire(result + growth) ) {
+                workspaceBytes += growth;
+                break;
+            }
+            if( !pending.isEmpty() ) {
+                printOldest();
+            } else if( workspaceBytes>0 ) { // no thread is busy: empty the workspaces and reserve them again along with the surface
+                emptyWorkspaces();
+            } else { // nothing of ours is reserved, so the budget is held elsewhere
+                throw new IllegalStateException("Memory budget is reserved outside the pipeline");
+            }
+        }
+        submitted++;
+        include(params);
+
+        Future<SurfaceBuffer> future = workers.submit(() -> {
+            SurfaceBuffer S = offHeap ? SurfaceBuffer.offHeap() : new SurfaceBuffer(params.getN());
+            try {
+                generator.generate(params, S, workspace.get());
+            } catch (ImError | RuntimeException | Error e) {
+                S.close();
+                throw e;
+            }
+            return S;
+        });
+        pending.addLast(new Pending(params, row, id, result, future));
+    }
+
+    /**
+     * <p>Bytes the workspaces may hold once a surface is submitted: every workspace
+     * in use may have grown to the largest grids and buffers asked for</p>
+     */
+    private long workspaceBound(SurfaceParameters params) {
+        long N = params.getN();
+        long need = Double.BYTES * N * N;
+        int used = SurfaceWorkspace.grids(params, generator.isRecursive(params));
+        long bytes = 0;
+        for (int k=0 ; k<gridBytes.length ; k++) {
+            bytes += k<used ? Math.max(need, gridBytes[k]) : gridBytes[k];
+        }
+        bytes += params.isGaussian() ? correctionBytes : Math.max(correctionBytes, MomentCorrection.bytes(params.getN()));
+        return Math.min(submitted+1, threads) * bytes;
+    }
+
+    /**
+     * <p>Grow the bound of workspaces by what a submitted surface asks for</p>
+     */
+    private void include(SurfaceParameters params) {
+        long N = params.getN();
+        int used = SurfaceWorkspace.grids(params, generator.isRecursive(params));
+        for (int k=0 ; k<used ; k++) {
+            gridBytes[k] = Math.max(gridBytes[k], Double.BYTES * N * N);
+        }
+        if( !params.isGaussian() ) correctionBytes = Math.max(correctionBytes, MomentCorrection.bytes(params.getN()));
+    }
+
+    /**
+     * <p>Release the storage of all workspaces and its reservation, while no thread is generating</p>
+     */
+    private void emptyWorkspaces() {
+        synchronized (workspaces) {
+            for (SurfaceWorkspace w : workspaces) {
+                w.close(); // allocated again on next use
+            }
+        }
+        governor.release(workspaceBytes);
+        workspaceBytes = 0;
+        Arrays.fill(gridBytes, 0);
+        correctionBytes = 0;
+        submitted = 0;
+    }
+
+    /**
+     * <p>Print all surfaces still in progress</p>
+     *
+     * @throws ImError      If Fourier transformation did not succeed
+     * @throws IOException  If there was an error writing to a synced file
+     */
+    void finish() throws ImError, IOException {
+        while( !pending.isEmpty() ) {
+            printOldest();
+        }
+    }
+
+    /**
+     * <p>Wait for the oldest surface, print it and release its memory</p>
+     */
+    private void printOldest() throws ImError, IOException {
+        Pending p = pending.removeFirst();
+        SurfaceBuffer S = null;
+        try {
+            S = await(p.result);
+            StageMetrics.Timer timer = metrics.start(p.params.getN());
+            long offset = -1;
+            try {
+                offset = output.write(S, p.row);
+            } catch (IOException ex){
+                if( output.sync ) throw ex; // must not be journaled as written
+                System.out.println("There was a problem creating/writing to the file");
+                ex.printStackTrace();
+            }
+            timer.lap(Stage.PRINT);
+            if( journal!=null ) journal.record(p.row, p.id, p.params.getSeed(), offset);
+        } finally {
+            if( S!=null ) S.close();
+            governor.release(p.bytes);
+        }
+    }
+
+    private static SurfaceBuffer await(Future<SurfaceBuffer> result) throws ImError {
+        boolean interrupted = false;
+        try {
+            while( true ) {
+                try {
+                    return result.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if( cause instanceof ImError ) throw (ImError) cause;
+            if( cause instanceof RuntimeException ) throw (RuntimeException) cause;
+            if( cause instanceof Error ) throw (Error) cause;
+            throw new IllegalStateException(cause);
+        } finally {
+            if( interrupted ) Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * <p>Stop the generating threads, discarding surfaces not yet printed,
+     * and release all workspaces</p>
+     */
+    public void close() {
+        workers.shutdownNow();
+        for (Pending p : pending) {
+            if( !p.result.cancel(true) && p.result.isDone() ) {
+                try {
+                    p.result.get().close();
+                } catch (InterruptedException | ExecutionException ignored) {
+                    // nothing to release
+                }
+            } // else may still be in use by its thread, left to be released when unreachable
+            governor.release(p.bytes);
+        }
+        pending.clear();
+        boolean idle = false;
+        try {
+            idle = workers.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if( idle ) {
+            emptyWorkspaces();
+        } else { // a thread still generates into its workspace, left to be released when unreachable
+            governor.release(workspaceBytes);
+            workspaceBytes = 0;
+        }
+    }
+}
@@ -0,0 +1,289 @@
+/** 
+* Copyright 2018 Antonia Tsili NCSR Demokritos
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package gr.demokritos.iit.sproduce.generator;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import gr.demokritos.iit.sproduce.utils.DoubleGrid;
+import gr.demokritos.iit.sproduce.utils.FastFourier;
+import gr.demokritos.iit.sproduce.utils.StageMetrics;
+import gr.demokritos.iit.sproduce.utils.StageMetrics.Stage;
+
+
+/**
+ * <p>Sequence of correlated surfaces (frames) that evolve in time, all with the
+ * statistics of the given {@link SurfaceParameters}.</p>
+ *
+ * <p>The Fourier coefficients Z of the random heights stay in memory together with
+ * the spectrum of the autocovariance family. Every frame advances each coefficient
+ * by an Ornstein&ndash;Uhlenbeck step
+ * <br><i>Z &larr; &rho;Z + &radic;(1-&rho;&sup2;)&xi;</i>,
+ * <br>where &xi; are new coefficients of white noise with RMS h, drawn directly in
+ * the frequency domain with the conjugate symmetry of a real surface. The variance
+ * of every coefficient is kept, so every frame is a surface of the given parameters,
+ * and neighbouring frames are correlated by &rho; (frames k apart by &rho;<sup>k</sup>).
+ * Each frame costs one inverse transform and no forward transform.</p>
+ *
+ * <p>Non-Gaussian frames are corrected one by one through {@link MomentCorrection},
+ * which keeps its buffers for the whole sequence.</p>
+ *
+ * <p>The first frame is an independent surface. Working grids are kept in the
+ * memory of the kind asked for until the sequence is closed.</p>
+ */
+public final class SurfaceSequence implements AutoCloseable {
+
+    private final SurfaceParameters params;
+    /**
+     * Correlation of neighbouring frames
+     */
+    private final double rho;
+    private final Random rand;
+    private final StageMetrics metrics;
+    private final FastFourier fft2;
+    /**
+     * Normalizing prefactor of the inverse transform
+     */
+    private final double scale;
+
+    /**
+     * Fourier coefficients of the random heights
+     */
+    private final DoubleGrid zRe, zIm;
+    /**
+     * Spectrum multiplying the coefficients (imaginary part null for analytic families)
+     */
+    private final DoubleGrid wRe, wIm;
+    /**
+     * Product of spectrum and coefficients, transformed in place
+     */
+    private final DoubleGrid yRe, yIm;
+
+    /**
+     * Single rows of the spectrum
+     */
+    private final double[] w, v;
+
+    /**
+     * Correction of non-Gaussian frames (null for Gaussian)
+     */
+    private final MomentCorrection correction;
+
+    /**
+     * Number of frames produced
+     */
+    private int frames = 0;
+
+    /**
+     * @param params        Surface parameters (with seed, for a repeatable sequence)
+     * @param rho           Correlation of neighbouring frames in [0,1)
+     * @param offHeap       Whether working grids are kept outside the Java heap
+     */
+    public SurfaceSequence(SurfaceParameters params, double rho, boolean offHeap) {
+        this(params, rho, offHeap, StageMetrics.DISABLED);
+    }
+
+    /**
+     * @param params        Surface parameters (with seed, for a repeatable sequence)
+     * @param rho           Correlation of neighbouring frames in [0,1)
+     * @param offHeap       Whether working grids are kept outside the Java heap
+     * @param metrics       Where stage timings are recorded
+     */
+    public SurfaceSequence(SurfaceParameters params, double rho, boolean offHeap, StageMetrics metrics) {
+        if( !(rho>=0 && rho<1) )
+            throw new IllegalArgumentException("Correlation of frames must be in [0,1): " + rho);
+        int N = params.getN();
+        this.params = params;
+        this.rho = rho;
+        this.rand = params.hasSeed() ? new Random(params.getSeed()) : new Random();
+        this.metrics = metrics;
+        this.fft2 = new FastFourier(N,N);
+
+        DoubleGrid[] grids = new DoubleGrid[6];
+        try {
+            for (int k=0 ; k<grids.length ; k++) {
+                grids[k] = offHeap ? DoubleGrid.offHeap(N, N) : DoubleGrid.onHeap(N, N);
+            }
+            if( params.getAutocovariance().isSpectral() ) {
+                double[] ones = new double[N];
+                Arrays.fill(ones, 1.0);
+                for (int i=0 ; i<N ; i++) {
+                    grids[2].setRow(i, ones, 0);
+                }
+                this.scale = SurfaceGenerator.spectrum(params, grids[2], null);
+                grids[3].close();
+                grids[3] = null;
+            } else {
+                SurfaceGenerator.filter(params, SurfaceGenerator.meshLine(params), grids[2]);
+                fft2.FTransform(grids[2], grids[3]);
+                this.scale = SurfaceGenerator.scale(params) * SurfaceGenerator.lowPass(params, grids[2], grids[3]);
+            }
+        } catch (RuntimeException | Error e) {
+            for (DoubleGrid g : grids) {
+                if( g!=null ) g.close();
+            }
+            throw e;
+        }
+        this.zRe = grids[0];
+        this.zIm = grids[1];
+        this.wRe = grids[2];
+        this.wIm = grids[3];
+        this.yRe = grids[4];
+        this.yIm = grids[5];
+        this.w = new double[N];
+        this.v = new double[N];
+        this.correction = params.isGaussian() ? null : new MomentCorrection();
+    }
+
+    /**
+     * @param tau       Correlation time, in frames
+     * @return          Correlation of neighbouring frames, exp(-1/tau)
+     */
+    public static double correlation(double tau) {
+        if( !(tau>0) )
+            throw new IllegalArgumentException("Correlation time must be positive: " + tau);
+        return Math.exp(-1/tau);
+    }
+
+    /**
+     * @return      Surface parameters of every frame
+     */
+    public SurfaceParameters getParameters() {
+        return params;
+    }
+
+    /**
+     * @return      Number of frames produced so far
+     */
+    public int frames() {
+        return frames;
+    }
+
+    /**
+     * <p>Produce the next frame into the given buffer, replacing its contents</p>
+     *
+     * @param out       Buffer to receive the heights
+     * @throws ImError  If Fourier transformation did not succeed
+     */
+    public void next(SurfaceBuffer out) throws ImError {
+        out.prepare(params); // storage too small is rejected before any work
+        StageMetrics.Timer timer = metrics.start(params.getN());
+        advance(frames==0 ? 0.0 : rho); // first frame from zero coefficients: independent surface
+        timer.lap(Stage.SPECTRUM_MULT);
+
+        fft2.iFTransform(yRe, yIm, SurfaceGenerator.band(params));
+        timer.lap(Stage.INVERSE_FFT);
+
+        SurfaceGenerator.scaleInto(params, scale, yRe, yIm, out.grid());
+        timer.lap(Stage.REAL_CHECK);
+
+        if( correction!=null ) {
+            correction.apply(params, out.grid());
+            timer.lap(Stage.MOMENT_CORRECTION);
+        }
+        frames++;
+    }
+
+    /**
+     * <p>Ornstein&ndash;Uhlenbeck step of all coefficients, then their product with the
+     * spectrum into Y. Row i is handled along with its mirror row N-i, so that the
+     * coefficient at (N-i,N-j) receives the conjugate noise of (i,j).</p>
+     */
+    private void advance(double rho) {
+        int N = params.getN();
+        double c = Math.sqrt(1 - rho*rho);
+        double sd = N * params.getRms(); // |xi|^2 of transform of white noise with RMS h
+        double sdPair = sd / Math.sqrt(2); // real and imaginary part of a conjugate pair
+
+        double[] aRe = new double[N], aIm = new double[N];
+        double[] bRe = new double[N], bIm = new double[N];
+        for (int i=0 ; i<=N/2 ; i++) {
+            int i2 = (N-i) % N;
+            zRe.getRow(i, aRe, 0);
+            zIm.getRow(i, aIm, 0);
+            if( i2==i ) { // row is its own mirror
+                for (int j=0 ; j<=N/2 ; j++) {
+                    int j2 = (N-j) % N;
+                    if( j2==j ) {
+                        aRe[j] = rho*aRe[j] + c*sd*rand.nextGaussian();
+                        aIm[j] = 0;
+                    } else {
+                        double re = c*sdPair*rand.nextGaussian();
+                        double im = c*sdPair*rand.nextGaussian();
+                        aRe[j] = rho*aRe[j] + re;
+                        aIm[j] = rho*aIm[j] + im;
+                        aRe[j2] = rho*aRe[j2] + re;
+                        aIm[j2] = rho*aIm[j2] - im;
+                    }
+                }
+            } else {
+                zRe.getRow(i2, bRe, 0);
+                zIm.getRow(i2, bIm, 0);
+                for (int j=0 ; j<N ; j++) {
+                    int j2 = (N-j) % N;
+                    double re = c*sdPair*rand.nextGaussian();
+                    double im = c*sdPair*rand.nextGaussian();
+                    aRe[j] = rho*aRe[j] + re;
+                    aIm[j] = rho*aIm[j] + im;
+                    bRe[j2] = rho*bRe[j2] + re;
+                    bIm[j2] = rho*bIm[j2] - im;
+                }
+                zRe.setRow(i2, bRe, 0);
+                zIm.setRow(i2, bIm, 0);
+                multiply(i2, bRe, bIm);
+            }
+            zRe.setRow(i, aRe, 0);
+            zIm.setRow(i, aIm, 0);
+            multiply(i, aRe, aIm);
+        }
+    }
+
+    /**
+     * <p>Write row i of spectrum times coefficients into Y (overwrites the coefficient arrays)</p>
+     */
+    private void multiply(int i, double[] re, double[] im) {
+        int N = params.getN();
+        wRe.getRow(i, w, 0);
+        if( wIm==null ) {
+            for (int j=0 ; j<N ; j++) {
+                re[j] *= w[j];
+                im[j] *= w[j];
+            }
+        } else {
+            wIm.getRow(i, v, 0);
+            for (int j=0 ; j<N ; j++) {
+                double r = w[j]*re[j] - v[j]*im[j];
+                im[j] = w[j]*im[j] + v[j]*re[j];
+                re[j] = r;
+            }
+        }
+        yRe.setRow(i, re, 0);
+        yIm.setRow(i, im, 0);
+    }
+
+    /**
+     * <p>Release working grids</p>
+     */
+    public void close() {
+        zRe.close();
+        zIm.close();
+        wRe.close();
+        if( wIm!=null ) wIm.close();
+        yRe.close();
+        yIm.close();
+    }
+}
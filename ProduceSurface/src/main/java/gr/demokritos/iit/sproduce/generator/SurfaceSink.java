@@ -0,0 +1,50 @@
+/** 
+* Copyright 2018 Antonia Tsili NCSR Demokritos
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package gr.demokritos.iit.sproduce.generator;
+
+import java.io.IOException;
+
+
+/**
+ * <p>Destination of surfaces (or parts of surfaces) which are handed over
+ * one row of heights at a time, so that no copy of a whole surface is needed.</p>
+ */
+interface SurfaceSink {
+
+    /**
+     * <p>Start a new surface</p>
+     *
+     * @param header        Parameters as &lt;param_name&gt;:&lt;param_value&gt; pairs, separated by colons
+     * @param rows          Number of rows to follow
+     * @param cols          Number of heights per row
+     * @throws IOException
+     */
+    void begin(String header, int rows, int cols) throws IOException;
+
+    /**
+     * @param heights       Next row of heights, cols values
+     * @throws IOException
+     */
+    void row(double[] heights) throws IOException;
+
+    /**
+     * <p>Finish surface after all of its rows</p>
+     *
+     * @throws IOException
+     */
+    void end() throws IOException;
+}
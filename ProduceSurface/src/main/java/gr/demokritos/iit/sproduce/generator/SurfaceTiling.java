@@ -0,0 +1,107 @@
+/** 
+* Copyright 2018 Antonia Tsili NCSR Demokritos
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package gr.demokritos.iit.sproduce.generator;
+
+import java.io.IOException;
+
+
+/**
+ * <p>Cuts a surface into square tiles (patches) of side <i>tile</i> whose
+ * top-left corners are <i>stride</i> points apart along both axes, so that
+ * neighbouring tiles overlap by tile-stride points (or are apart, if negative).</p>
+ *
+ * <p>Surfaces produced through the Fourier transform are periodic, so tiles that
+ * cross the right or bottom edge continue from the opposite edge. Tiles begin at
+ * every multiple of stride below N, giving (N/stride)&sup2; tiles, rounded up.</p>
+ *
+ * <p>Each tile is printed as one line, in the format of whole surfaces with its
+ * origin appended to the parameters:
+ * <br><i>rms:&lt;v&gt;:clx:&lt;v&gt;:cly:&lt;v&gt;:N:&lt;tile&gt;:parent:&lt;id&gt;:parentN:&lt;N&gt;:row:&lt;i&gt;:col:&lt;j&gt;,(&lt;height&gt;,)*&lt;height&gt;</i></p>
+ */
+final class SurfaceTiling {
+
+    /**
+     * Points along side of tile
+     */
+    final int tile;
+    /**
+     * Points between origins of neighbouring tiles
+     */
+    final int stride;
+
+    /**
+     * @param tile      Points along side of tile
+     * @param stride    Points between origins of neighbouring tiles
+     */
+    SurfaceTiling(int tile, int stride) {
+        if( tile<1 )
+            throw new IllegalArgumentException("Tile side must be positive: " + tile);
+        if( stride<1 )
+            throw new IllegalArgumentException("Stride must be positive: " + stride);
+        this.tile = tile;
+        this.stride = stride;
+    }
+
+    /**
+     * @param N     Points along side of surface
+     * @return      Number of tiles cut out of surface
+     */
+    int count(int N) {
+        int perSide = (N + stride - 1) / stride;
+        return perSide*perSide;
+    }
+
+    /**
+     * <p>Hand all tiles of a surface to a sink, row of tiles after row of tiles</p>
+     *
+     * @param sink          Destination
+     * @param S             Surface
+     * @param parent        Identifier of surface (position of its parameters in input)
+     * @param tag           Appended to header of every tile, such as ":frame:&lt;t&gt;" (may be empty)
+     * @throws IOException
+     */
+    void writeTiles(SurfaceSink sink, SurfaceBuffer S, int parent, String tag) throws IOException {
+        int N = S.getN();
+        if( tile>N )
+            throw new IllegalArgumentException("Tile side " + tile + " is larger than surface side " + N);
+
+        String header = SurfaceWriter.header(S.getParameters(), tile) + ":parent:" + parent + ":parentN:" + N;
+        double[] row = new double[tile];
+        for (int i0=0 ; i0<N ; i0+=stride) {
+            for (int j0=0 ; j0<N ; j0+=stride) {
+                sink.begin(header + ":row:" + i0 + ":col:" + j0 + tag, tile, tile);
+                for (int r=0 ; r<tile ; r++) {
+                    copyRow(S, (i0+r) % N, j0, row);
+                    sink.row(row);
+                }
+                sink.end();
+            }
+        }
+    }
+
+    /**
+     * <p>Copy tile-many heights of row i beginning at column j0, continuing from column 0 past the edge</p>
+     */
+    private void copyRow(SurfaceBuffer S, int i, int j0, double[] dst) {
+        int N = S.getN();
+        int first = Math.min(tile, N-j0);
+        S.grid().getRow(i, j0, dst, 0, first);
+        if( first<tile ) {
+            S.grid().getRow(i, 0, dst, first, tile-first);
+        }
+    }
+}
@@ -0,0 +1,219 @@
+/** 
+* Copyright 2018 Antonia Tsili NCSR Demokritos
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package gr.demokritos.iit.sproduce.generator;
+
+import gr.demokritos.iit.sproduce.utils.DoubleGrid;
+import gr.demokritos.iit.sproduce.utils.FastFourier;
+
+
+/**
+ * <p>Working storage lent to {@link SurfaceGenerator#generate(SurfaceParameters, SurfaceBuffer, SurfaceWorkspace)}:
+ * the NxN grids of random heights, filter and spectra, the twiddle factors of the
+ * transforms and the buffers of {@link MomentCorrection}.</p>
+ *
+ * <p>Storage is kept between surfaces and replaced only when a larger N
+ * (or, off the heap, a different N) is requested, so that generating a batch of
+ * surfaces allocates nothing per surface apart from single rows.
+ * A workspace is not safe for use by more than one thread at a time; each
+ * generating thread should own one.</p>
+ *
+ * <p>An off-heap workspace keeps its grids outside the Java heap; the buffers of
+ * moment correction are always on the heap. Memory is released by {@link #close()}.</p>
+ */
+public final class SurfaceWorkspace implements AutoCloseable {
+
+    /**
+     * Most working grids of one surface
+     */
+    static final int GRIDS = 4;
+
+    /**
+     * Whether grids are kept outside the Java heap
+     */
+    private final boolean offHeap;
+    /**
+     * Storage of on-heap grids, each of at least NxN elements
+     */
+    private final double[][] arrays = new double[GRIDS][];
+    /**
+     * Working grids of the last surface
+     */
+    private final DoubleGrid[] grids = new DoubleGrid[GRIDS];
+    /**
+     * Transforms of the last N
+     */
+    private FastFourier fourier;
+    /**
+     * N of transforms
+     */
+    private int fourierN;
+    /**
+     * Moment correction (null until a non-Gaussian surface)
+     */
+    private MomentCorrection correction;
+
+    /**
+     * <p>Empty workspace on the Java heap, storage is allocated on first use</p>
+     */
+    public SurfaceWorkspace() {
+        this(false);
+    }
+
+    private SurfaceWorkspace(boolean offHeap) {
+        this.offHeap = offHeap;
+    }
+
+    /**
+     * @return      Empty workspace keeping grids outside the Java heap
+     */
+    public static SurfaceWorkspace offHeap() {
+        return new SurfaceWorkspace(true);
+    }
+
+    /**
+     * @return      Whether grids are kept outside the Java heap
+     */
+    public boolean isOffHeap() {
+        return offHeap;
+    }
+
+    /**
+     * <p>Working grid k (0..{@value #GRIDS}-1) of NxN values</p>
+     *
+     * @param k     Index of grid
+     * @param N     Number of surface points (along square side)
+     * @param clear Whether values must be zero; otherwise they are left from an earlier surface
+     * @return      Grid owned by the workspace, valid until it is asked for another N
+     */
+    DoubleGrid grid(int k, int N, boolean clear) {
+        DoubleGrid g = grids[k];
+        if( offHeap ) {
+            if( g==null || g.rows()!=N ) {
+                if( g!=null ) g.close();
+                grids[k] = null; // not left pointing at released memory if allocation fails
+                g = grids[k] = DoubleGrid.offHeap(N, N);
+                return g;
+            }
+        } else {
+            if( arrays[k]==null || arrays[k].length<N*N ) {
+                arrays[k] = new double[N*N];
+                g = grids[k] = DoubleGrid.wrap(arrays[k], N, N);
+                return g;
+            }
+            if( g.rows()!=N ) {
+                g = grids[k] = DoubleGrid.wrap(arrays[k], N, N);
+            }
+        }
+        if( clear ) g.clear();
+        return g;
+    }
+
+    /**
+     * @param N     Number of surface points (along square side)
+     * @return      Transforms of NxN grids
+     */
+    FastFourier fourier(int N) {
+        if( fourier==null || fourierN!=N ) {
+            fourier = new FastFourier(N,N);
+            fourierN = N;
+        }
+        return fourier;
+    }
+
+    /**
+     * @return      Moment correction with buffers of the last N
+     */
+    MomentCorrection correction() {
+        if( correction==null ) {
+            correction = new MomentCorrection();
+        }
+        return correction;
+    }
+
+    /**
+     * @return      Bytes held at the moment
+     */
+    public long bytes() {
+        long bytes = 0;
+        for (int k=0 ; k<GRIDS ; k++) {
+            bytes += gridBytes(k);
+        }
+        return bytes + (correction==null ? 0 : correction.bytes());
+    }
+
+    /**
+     * <p>Bytes held after generating a surface</p>
+     *
+     * @param params    Surface parameters
+     * @param recursive Whether the surface is generated by recursive sweeps
+     * @return          Bytes held afterwards
+     */
+    long bytesAfter(SurfaceParameters params, boolean recursive) {
+        long N = params.getN();
+        long need = Double.BYTES * N * N;
+        int used = grids(params, recursive);
+        long bytes = 0;
+        for (int k=0 ; k<GRIDS ; k++) {
+            bytes += k>=used ? gridBytes(k) : offHeap ? need : Math.max(need, gridBytes(k));
+        }
+        long held = correction==null ? 0 : correction.bytes();
+        return bytes + (params.isGaussian() ? held : Math.max(held, MomentCorrection.bytes(params.getN())));
+    }
+
+    /**
+     * <p>Bytes a new workspace holds after generating a surface</p>
+     *
+     * @param params    Surface parameters
+     * @param recursive Whether the surface is generated by recursive sweeps
+     * @return          Bytes held afterwards
+     */
+    static long bytes(SurfaceParameters params, boolean recursive) {
+        long N = params.getN();
+        long bytes = grids(params, recursive) * Double.BYTES * N * N;
+        return bytes + (params.isGaussian() ? 0 : MomentCorrection.bytes(params.getN()));
+    }
+
+    /**
+     * <p>Working grids of a surface: one for recursive sweeps, two for analytic
+     * spectra and four for the transformed filter</p>
+     */
+    static int grids(SurfaceParameters params, boolean recursive) {
+        return recursive ? 1 : params.getAutocovariance().isSpectral() ? 2 : 4;
+    }
+
+    private long gridBytes(int k) {
+        if( offHeap ) {
+            DoubleGrid g = grids[k];
+            return g==null ? 0 : (long) Double.BYTES * g.rows() * g.cols();
+        }
+        return arrays[k]==null ? 0 : (long) Double.BYTES * arrays[k].length;
+    }
+
+    /**
+     * <p>Release all storage; the workspace may be used again afterwards</p>
+     */
+    @Override
+    public void close() {
+        for (int k=0 ; k<GRIDS ; k++) {
+            if( grids[k]!=null ) grids[k].close();
+            grids[k] = null;
+            arrays[k] = null;
+        }
+        fourier = null;
+        correction = null;
+    }
+}
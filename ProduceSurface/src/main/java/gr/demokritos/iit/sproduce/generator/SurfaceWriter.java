@@ -0,0 +1,143 @@
+/** 
+* Copyright 2018 Antonia Tsili NCSR Demokritos
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package gr.demokritos.iit.sproduce.generator;
+
+import java.io.IOException;
+import java.io.PrintStream;
+
+
+/**
+ * <p>Text output of surfaces held in a {@link SurfaceBuffer}, in the same
+ * formats as {@link RandomGaussSurfaceGenerator}.</p>
+ */
+final class SurfaceWriter {
+
+    private SurfaceWriter() {}
+
+    /**
+     * @param params        Surface parameters
+     * @param N             Number of points along side, as printed
+     * @return              Parameters as &lt;param_name&gt;:&lt;param_value&gt;
+     */
+    static String header(SurfaceParameters params, int N) {
+        return "rms:" + params.getRms() + ":clx:" + params.getClx() + ":cly:" + params.getCly() + ":N:" + N + params.optionalSuffix();
+    }
+
+    /**
+     * <p>Hand a whole surface to a sink, row by row</p>
+     *
+     * @param sink          Destination
+     * @param S             Surface
+     * @throws IOException
+     */
+    static void write(SurfaceSink sink, SurfaceBuffer S) throws IOException {
+        write(sink, S, "");
+    }
+
+    /**
+     * @param sink          Destination
+     * @param S             Surface
+     * @param tag           Appended to header, such as ":frame:&lt;t&gt;" (may be empty)
+     * @throws IOException
+     */
+    static void write(SurfaceSink sink, SurfaceBuffer S, String tag) throws IOException {
+        int N = S.getN();
+        double[] row = new double[N];
+        sink.begin(header(S.getParameters(), N) + tag, N, N);
+        for (int i=0 ; i<N ; i++) {
+            S.copyRow(i, row, 0);
+            sink.row(row);
+        }
+        sink.end();
+    }
+
+    /**
+     * <p>Print surface as one line: parameters as &lt;param_name&gt;:&lt;param_value&gt;
+     * in the first column, then one height per column</p>
+     *
+     * @param out           Output, left open
+     * @param S             Surface
+     * @throws IOException
+     */
+    static void printArray(Appendable out, SurfaceBuffer S) throws IOException {
+        write(new TextSink(out), S);
+    }
+
+    /**
+     * <p>Print surface with one line of surface per line of output</p>
+     *
+     * @param out           Output stream
+     * @param S             Surface
+     */
+    static void printArray(PrintStream out, SurfaceBuffer S) {
+        printArray(out, S, "");
+    }
+
+    /**
+     * @param out           Output stream
+     * @param S             Surface
+     * @param tag           Appended to parameters line (may be empty)
+     */
+    static void printArray(PrintStream out, SurfaceBuffer S, String tag) {
+        int N = S.getN();
+        SurfaceParameters params = S.getParameters();
+        double[] row = new double[N];
+
+        out.println("rms:"+params.getRms()+" clx:"+params.getClx()+" cly:"+params.getCly()+" N:"+N+tag);
+        StringBuilder sb = new StringBuilder(N*24);
+        for (int i=0 ; i<N ; i++) {
+            S.copyRow(i, row, 0);
+            for (int j=0 ; j<N ; j++) {
+                if( j>0 ) sb.append(',');
+                sb.append(row[j]);
+            }
+            out.println(sb);
+            sb.setLength(0);
+        }
+        out.println();
+    }
+
+    /**
+     * <p>Prints each surface as one line: header in the first column, then one height per column</p>
+     */
+    static final class TextSink implements SurfaceSink {
+        private final Appendable out;
+        private final StringBuilder sb = new StringBuilder();
+
+        TextSink(Appendable out) {
+            this.out = out;
+        }
+
+        public void begin(String header, int rows, int cols) throws IOException {
+            sb.setLength(0);
+            sb.append(header);
+        }
+
+        public void row(double[] heights) throws IOException { // written one row at a time
+            for (double h : heights) {
+                sb.append(',').append(h);
+            }
+            out.append(sb);
+            sb.setLength(0);
+        }
+
+        public void end() throws IOException {
+            out.append(sb).append('\n');
+            sb.setLength(0);
+        }
+    }
+}
@@ -0,0 +1,333 @@
+/**
+ * Copyright 2018 Antonia Tsili NCSR Demokritos
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package gr.demokritos.iit.sproduce.utils;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
+
+
+/**
+ * <p>Matrix of doubles kept either in a Java array or in memory outside the Java heap.</p>
+ *
+ * <p>Off-heap grids do not add to garbage collection work, however large they are.
+ * Their memory is released by {@link #close()}, after which the grid may not be used;
+ * a grid that is never closed is released when it becomes unreachable.
+ * <br>Grids are not safe for use by more than one thread at a time.</p>
+ */
+public abstract class DoubleGrid implements AutoCloseable {
+
+    /**
+     * Number of rows
+     */
+    protected final int rows;
+    /**
+     * Number of columns
+     */
+    protected final int cols;
+
+    DoubleGrid(int rows, int cols) {
+        this.rows = rows;
+        this.cols = cols;
+    }
+
+    /**
+     * @param rows      Number of rows
+     * @param cols      Number of columns
+     * @return          Zeroed grid in a new Java array
+     */
+    public static DoubleGrid onHeap(int rows, int cols) {
+        return new HeapGrid(new double[rows*cols], rows, cols);
+    }
+
+    /**
+     * @param data      Row-major array of at least rows*cols elements
+     * @param rows      Number of rows
+     * @param cols      Number of columns
+     * @return          Grid reading and writing the given array
+     */
+    public static DoubleGrid wrap(double[] data, int rows, int cols) {
+        if( data.length<rows*cols )
+            throw new IllegalArgumentException("Array is smaller than " + rows + "x" + cols);
+        return new HeapGrid(data, rows, cols);
+    }
+
+    /**
+     * @param rows      Number of rows
+     * @param cols      Number of columns
+     * @return          Zeroed grid outside the Java heap
+     */
+    public static DoubleGrid offHeap(int rows, int cols) {
+        return new OffHeapGrid(rows, cols);
+    }
+
+    /**
+     * @return      Number of rows
+     */
+    public int rows() {
+        return rows;
+    }
+
+    /**
+     * @return      Number of columns
+     */
+    public int cols() {
+        return cols;
+    }
+
+    /**
+     * @return      Whether values are kept outside the Java heap
+     */
+    public abstract boolean isOffHeap();
+
+    /**
+     * @param i     Row
+     * @param j     Column
+     * @return      Value at (i,j)
+     */
+    public abstract double get(int i, int j);
+
+    /**
+     * @param i     Row
+     * @param j     Column
+     * @param v     New value at (i,j)
+     */
+    public abstract void set(int i, int j, double v);
+
+    /**
+     * <p>Copy len values of row i, beginning at column j, into dst</p>
+     */
+    public abstract void getRow(int i, int j, double[] dst, int off, int len);
+
+    /**
+     * <p>Copy len values from src into row i, beginning at column j</p>
+     */
+    public abstract void setRow(int i, int j, double[] src, int off, int len);
+
+    /**
+     * <p>Copy whole row i into dst</p>
+     */
+    public void getRow(int i, double[] dst, int off) {
+        getRow(i, 0, dst, off, cols);
+    }
+
+    /**
+     * <p>Copy src into whole row i</p>
+     */
+    public void setRow(int i, double[] src, int off) {
+        setRow(i, 0, src, off, cols);
+    }
+
+    /**
+     * <p>Set all values to zero</p>
+     */
+    public void clear() {
+        double[] zero = new double[cols];
+        for (int i=0 ; i<rows ; i++) {
+            setRow(i, zero, 0);
+        }
+    }
+
+    /**
+     * <p>Row-major backing array of on-heap grids</p>
+     *
+     * @return      Backing array, null for off-heap grids
+     */
+    public abstract double[] array();
+
+    /**
+     * <p>Release memory; has no effect on on-heap grids</p>
+     */
+    @Override
+    public void close() {}
+}
+
+/**
+ * <p>Grid backed by a row-major Java array</p>
+ */
+class HeapGrid extends DoubleGrid {
+    private final double[] data;
+
+    HeapGrid(double[] data, int rows, int cols) {
+        super(rows, cols);
+        this.data = data;
+    }
+
+    public boolean isOffHeap() {
+        return false;
+    }
+
+    public double get(int i, int j) {
+        return data[i*cols+j];
+    }
+
+    public void set(int i, int j, double v) {
+        data[i*cols+j] = v;
+    }
+
+    public void getRow(int i, int j, double[] dst, int off, int len) {
+        System.arraycopy(data, i*cols+j, dst, off, len);
+    }
+
+    public void setRow(int i, int j, double[] src, int off, int len) {
+        System.arraycopy(src, off, data, i*cols+j, len);
+    }
+
+    public void clear() {
+        Arrays.fill(data, 0, rows*cols, 0);
+    }
+
+    public double[] array() {
+        return data;
+    }
+}
+
+/**
+ * <p>Grid backed by direct byte buffers. Each buffer holds whole rows and
+ * stays below the 2GB limit of a single buffer.</p>
+ */
+class OffHeapGrid extends DoubleGrid {
+    /**
+     * Largest size of one buffer
+     */
+    private static final int CHUNK_BYTES = 1 << 30;
+    /**
+     * Method releasing a direct buffer (null if unavailable)
+     */
+    private static final Method RELEASE = releaseMethod();
+    /**
+     * Receiver of RELEASE (null for a static or instance method of the buffer)
+     */
+    private static final Object RELEASER = releaser();
+
+    /**
+     * Rows per buffer
+     */
+    private final int rowsPerChunk;
+    /**
+     * Allocated memory
+     */
+    private ByteBuffer[] chunks;
+    /**
+     * Same memory seen as doubles, null once closed
+     */
+    private DoubleBuffer[] views;
+
+    OffHeapGrid(int rows, int cols) {
+        super(rows, cols);
+        this.rowsPerChunk = Math.max(1, CHUNK_BYTES / (Math.max(cols,1) * 8));
+
+        int count = (rows + rowsPerChunk - 1) / rowsPerChunk;
+        chunks = new ByteBuffer[count];
+        views = new DoubleBuffer[count];
+        for (int c=0 ; c<count ; c++) {
+            int chunkRows = Math.min(rowsPerChunk, rows - c*rowsPerChunk);
+            chunks[c] = ByteBuffer.allocateDirect(chunkRows * cols * 8).order(ByteOrder.nativeOrder());
+            views[c] = chunks[c].asDoubleBuffer();
+        }
+    }
+
+    private DoubleBuffer view(int i) {
+        DoubleBuffer[] v = views;
+        if( v==null )
+            throw new IllegalStateException("Grid is closed");
+        return v[i / rowsPerChunk];
+    }
+
+    public boolean isOffHeap() {
+        return true;
+    }
+
+    public double get(int i, int j) {
+        return view(i).get((i % rowsPerChunk)*cols + j);
+    }
+
+    public void set(int i, int j, double v) {
+        view(i).put((i % rowsPerChunk)*cols + j, v);
+    }
+
+    public void getRow(int i, int j, double[] dst, int off, int len) {
+        DoubleBuffer v = view(i);
+        v.position((i % rowsPerChunk)*cols + j);
+        v.get(dst, off, len);
+    }
+
+    public void setRow(int i, int j, double[] src, int off, int len) {
+        DoubleBuffer v = view(i);
+        v.position((i % rowsPerChunk)*cols + j);
+        v.put(src, off, len);
+    }
+
+    public double[] array() {
+        return null;
+    }
+
+    @Override
+    public void close() {
+        if( views==null ) return;
+        views = null;
+        for (ByteBuffer chunk : chunks) {
+            release(chunk);
+        }
+        chunks = null;
+    }
+
+    /**
+     * <p>Free the memory of a direct buffer now instead of at garbage collection</p>
+     */
+    private static void release(ByteBuffer buffer) {
+        if( RELEASE==null ) return; // left to garbage collection
+        try {
+            if( RELEASER!=null ) { // Java 9+: Unsafe.invokeCleaner(buffer)
+                RELEASE.invoke(RELEASER, buffer);
+            } else { // Java 8: buffer.cleaner().clean()
+                Object cleaner = RELEASE.invoke(buffer);
+                if( cleaner!=null ) cleaner.getClass().getMethod("clean").invoke(cleaner);
+            }
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // left to garbage collection
+        }
+    }
+
+    private static Method releaseMethod() {
+        try {
+            return Class.forName("sun.misc.Unsafe").getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            try {
+                Method cleaner = ByteBuffer.allocateDirect(1).getClass().getMethod("cleaner");
+                cleaner.setAccessible(true);
+                return cleaner;
+            } catch (ReflectiveOperationException | RuntimeException e2) {
+                return null;
+            }
+        }
+    }
+
+    private static Object releaser() {
+        if( RELEASE==null || !RELEASE.getName().equals("invokeCleaner") ) return null;
+        try {
+            Field f = Class.forName("sun.misc.Unsafe").getDeclaredField("theUnsafe");
+            f.setAccessible(true);
+            return f.get(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+}
@@ -13,9 +13,16 @@ import edu.princeton.cs.algs4.FFT;
 import edu.princeton.cs.algs4.Complex;
 import edu.princeton.cs.algs4.StdOut;
 
+import java.util.Arrays;
+
 
 /**
- * Two dimensional Fast Fourier Transformation
+ * <p>Two dimensional Fast Fourier Transformation</p>
+ *
+ * <p>Besides the transforms on matrices of {@link Complex}, the same transforms are
+ * offered in place on flat row-major arrays of real and imaginary parts, which
+ * allocate no object per element. An instance holds only its twiddle factors and
+ * may be shared between threads.</p>
  */
 public class FastFourier {
 
@@ -31,6 +38,18 @@ public class FastFourier {
      * Dimension M
      */
     protected int M;
+    /**
+     * Columns of a grid transformed together
+     */
+    private static final int COLUMN_BLOCK = 32;
+    /**
+     * cos(2&pi;k/N) and -sin(2&pi;k/N) for k&lt;N/2 (null if N is not a power of 2)
+     */
+    private final double[] cosN, sinN;
+    /**
+     * cos(2&pi;k/M) and -sin(2&pi;k/M) for k&lt;M/2 (null if M is not a power of 2)
+     */
+    private final double[] cosM, sinM;
 
     /**
      * <p>Initialization</p>
@@ -41,6 +60,29 @@ public class FastFourier {
     public FastFourier(int dim1, int dim2) {
         this.N = dim1;
         this.M = dim2;
+
+        this.cosN = twiddles(N, true);
+        this.sinN = twiddles(N, false);
+        if( M==N ) {
+            this.cosM = cosN;
+            this.sinM = sinN;
+        } else {
+            this.cosM = twiddles(M, true);
+            this.sinM = twiddles(M, false);
+        }
+    }
+
+    /**
+     * <p>Cosines or negative sines of the n-th roots of unity</p>
+     */
+    private static double[] twiddles(int n, boolean cos) {
+        if( n<1 || Integer.bitCount(n)!=1 ) return null;
+        double[] w = new double[Math.max(n/2,1)];
+        for (int k=0 ; k<n/2 ; k++) {
+            double angle = -2 * k * Math.PI / n;
+            w[k] = cos ? Math.cos(angle) : Math.sin(angle);
+        }
+        return w;
     }
 
     /**
@@ -141,6 +183,375 @@ public class FastFourier {
 
     }
 
+    /**
+     * <p>Two dimensional Fast Fourier Transformation in place</p>
+     *
+     * @param re    Real parts, NxM row-major
+     * @param im    Imaginary parts, NxM row-major
+     */
+    public void FTransform(double[] re, double[] im) {
+        transform2D(re, im, false);
+    }
+
+    /**
+     * <p>Two dimensional inverse Fast Fourier Transformation in place</p>
+     *
+     * @param re    Real parts, NxM row-major
+     * @param im    Imaginary parts, NxM row-major
+     */
+    public void iFTransform(double[] re, double[] im) {
+        transform2D(re, im, true);
+    }
+
+    /**
+     * <p>Two dimensional Fast Fourier Transformation in place, on grids of any kind of storage</p>
+     *
+     * @param re    Real parts, NxM
+     * @param im    Imaginary parts, NxM
+     */
+    public void FTransform(DoubleGrid re, DoubleGrid im) {
+        transform2D(re, im, false);
+    }
+
+    /**
+     * <p>Two dimensional inverse Fast Fourier Transformation in place, on grids of any kind of storage</p>
+     *
+     * @param re    Real parts, NxM
+     * @param im    Imaginary parts, NxM
+     */
+    public void iFTransform(DoubleGrid re, DoubleGrid im) {
+        transform2D(re, im, true);
+    }
+
+    /**
+     * <p>Two dimensional inverse Fast Fourier Transformation in place of a band-limited
+     * spectrum, on grids of any kind of storage: values are zero unless both frequency
+     * indices, folded into [-N/2,N/2), are at most band in absolute value.
+     * <br>Rows outside the band are not transformed at all, and the transforms of the
+     * others skip the butterflies whose inputs are known zeroes (pruned transform).
+     * The result is that of {@link #iFTransform(DoubleGrid, DoubleGrid)} up to rounding.</p>
+     *
+     * @param re    Real parts, NxM, zero outside the band
+     * @param im    Imaginary parts, NxM, zero outside the band
+     * @param band  Highest absolute frequency index of non-zero values, along either side
+     */
+    public void iFTransform(DoubleGrid re, DoubleGrid im, int band) {
+        if( cosN==null || cosM==null )
+            throw new IllegalArgumentException("Dimensions are not powers of 2");
+        if( re.rows()!=N || re.cols()!=M || im.rows()!=N || im.cols()!=M )
+            throw new IllegalArgumentException("Grids are not " + N + "x" + M);
+        if( band<0 || 2*band+1>=Math.min(N,M) ) { // no zero row or column
+            iFTransform(re, im);
+            return;
+        }
+
+        int L = band==0 ? 1 : Integer.highestOneBit(2*band) << 1; // at least 2band+1
+        boolean pruneM = 4*L<=M; // otherwise pruning saves next to nothing
+        boolean pruneN = 4*L<=N;
+        double[] xr = new double[2*band+1], xi = new double[2*band+1];
+        double[] zr = new double[L], zi = new double[L];
+
+        double[] rowRe = new double[M];
+        double[] rowIm = new double[M];
+        for (int m=-band ; m<=band ; m++) { // rows outside the band stay zero
+            int i = m<0 ? m+N : m;
+            re.getRow(i, rowRe, 0);
+            im.getRow(i, rowIm, 0);
+            if( pruneM )
+                prunedInverse(rowRe, rowIm, 0, M, band, cosM, sinM, xr, xi, zr, zi);
+            else
+                transform(rowRe, rowIm, 0, M, cosM, sinM, true);
+            re.setRow(i, rowRe, 0);
+            im.setRow(i, rowIm, 0);
+        }
+
+        int block = Math.min(M, COLUMN_BLOCK);
+        double[] colRe = new double[block*N]; // column b of block at b*N
+        double[] colIm = new double[block*N];
+        for (int j0=0 ; j0<M ; j0+=block) { // for each block of columns
+            if( !pruneN ) {
+                Arrays.fill(colRe, 0);
+                Arrays.fill(colIm, 0);
+            }
+            for (int m=-band ; m<=band ; m++) { // only rows of the band are read
+                int i = m<0 ? m+N : m;
+                re.getRow(i, j0, rowRe, 0, block);
+                im.getRow(i, j0, rowIm, 0, block);
+                for (int b=0 ; b<block ; b++) {
+                    colRe[b*N+i] = rowRe[b];
+                    colIm[b*N+i] = rowIm[b];
+                }
+            }
+            for (int b=0 ; b<block ; b++) {
+                if( pruneN )
+                    prunedInverse(colRe, colIm, b*N, N, band, cosN, sinN, xr, xi, zr, zi);
+                else
+                    transform(colRe, colIm, b*N, N, cosN, sinN, true);
+            }
+            for (int i=0 ; i<N ; i++) {
+                for (int b=0 ; b<block ; b++) {
+                    rowRe[b] = colRe[b*N+i];
+                    rowIm[b] = colIm[b*N+i];
+                }
+                re.setRow(i, j0, rowRe, 0, block);
+                im.setRow(i, j0, rowIm, 0, block);
+            }
+        }
+    }
+
+    /**
+     * <p>Columns of grids are copied a block at a time, so that
+     * off-heap memory is always read and written in runs of contiguous values</p>
+     */
+    private void transform2D(DoubleGrid re, DoubleGrid im, boolean inverse) {
+        if( re.array()!=null && im.array()!=null ) {
+            transform2D(re.array(), im.array(), inverse);
+            return;
+        }
+        if( cosN==null || cosM==null )
+            throw new IllegalArgumentException("Dimensions are not powers of 2");
+        if( re.rows()!=N || re.cols()!=M || im.rows()!=N || im.cols()!=M )
+            throw new IllegalArgumentException("Grids are not " + N + "x" + M);
+
+        double[] rowRe = new double[M];
+        double[] rowIm = new double[M];
+        for (int i=0 ; i<N ; i++) { // for each row
+            re.getRow(i, rowRe, 0);
+            im.getRow(i, rowIm, 0);
+            transform(rowRe, rowIm, 0, M, cosM, sinM, inverse);
+            re.setRow(i, rowRe, 0);
+            im.setRow(i, rowIm, 0);
+        }
+
+        int block = Math.min(M, COLUMN_BLOCK);
+        double[] colRe = new double[block*N]; // column b of block at b*N
+        double[] colIm = new double[block*N];
+        for (int j0=0 ; j0<M ; j0+=block) { // for each block of columns
+            for (int i=0 ; i<N ; i++) {
+                re.getRow(i, j0, rowRe, 0, block);
+                im.getRow(i, j0, rowIm, 0, block);
+                for (int b=0 ; b<block ; b++) {
+                    colRe[b*N+i] = rowRe[b];
+                    colIm[b*N+i] = rowIm[b];
+                }
+            }
+            for (int b=0 ; b<block ; b++) {
+                transform(colRe, colIm, b*N, N, cosN, sinN, inverse);
+            }
+            for (int i=0 ; i<N ; i++) {
+                for (int b=0 ; b<block ; b++) {
+                    rowRe[b] = colRe[b*N+i];
+                    rowIm[b] = colIm[b*N+i];
+                }
+                re.setRow(i, j0, rowRe, 0, block);
+                im.setRow(i, j0, rowIm, 0, block);
+            }
+        }
+    }
+
+    /**
+     * <p>1D transform on each row, then on each column (through a copy of the column)</p>
+     */
+    private void transform2D(double[] re, double[] im, boolean inverse) {
+        if( cosN==null || cosM==null )
+            throw new IllegalArgumentException("Dimensions are not powers of 2");
+        if( re.length<N*M || im.length<N*M )
+            throw new IllegalArgumentException("Arrays are smaller than " + N + "x" + M);
+
+        for (int i=0 ; i<N ; i++) { // for each row
+            transform(re, im, i*M, M, cosM, sinM, inverse);
+        }
+
+        double[] colRe = new double[N];
+        double[] colIm = new double[N];
+        for (int j=0 ; j<M ; j++) { // for each column
+            for (int i=0 ; i<N ; i++) {
+                colRe[i] = re[i*M+j];
+                colIm[i] = im[i*M+j];
+            }
+            transform(colRe, colIm, 0, N, cosN, sinN, inverse);
+            for (int i=0 ; i<N ; i++) {
+                re[i*M+j] = colRe[i];
+                im[i*M+j] = colIm[i];
+            }
+        }
+    }
+
+    /**
+     * <p>Iterative radix-2 transform of n elements starting at off.
+     * <br>The inverse transform is divided by n, as in {@link FFT#ifft(Complex[])}.</p>
+     */
+    private static void transform(double[] re, double[] im, int off, int n,
+                                  double[] cos, double[] sin, boolean inverse) {
+        // bit reversal permutation
+        for (int i=1, j=0 ; i<n ; i++) {
+            int bit = n >> 1;
+            for ( ; (j & bit)!=0 ; bit >>= 1) {
+                j ^= bit;
+            }
+            j ^= bit;
+            if( i<j ) {
+                double t = re[off+i]; re[off+i] = re[off+j]; re[off+j] = t;
+                t = im[off+i]; im[off+i] = im[off+j]; im[off+j] = t;
+            }
+        }
+
+        // butterflies
+        int tableN = cos.length*2; // size the twiddles were made for
+        for (int len=2 ; len<=n ; len <<= 1) {
+            int half = len >> 1;
+            int step = tableN / len;
+            for (int k=0 ; k<half ; k++) {
+                double wr = cos[k*step];
+                double wi = inverse ? -sin[k*step] : sin[k*step];
+                for (int a=off+k ; a<off+n ; a+=len) {
+                    int b = a + half;
+                    double xr = re[b]*wr - im[b]*wi;
+                    double xi = re[b]*wi + im[b]*wr;
+                    re[b] = re[a] - xr;
+                    im[b] = im[a] - xi;
+                    re[a] += xr;
+                    im[a] += xi;
+                }
+            }
+        }
+
+        if( inverse ) {
+            double scale = 1.0 / n;
+            for (int i=off ; i<off+n ; i++) {
+                re[i] *= scale;
+                im[i] *= scale;
+            }
+        }
+    }
+
+    /**
+     * <p>Inverse transform of n elements starting at off, of which only those at
+     * indices -band..band (modulo n) may be non-zero.
+     * <br>With L the power of 2 above 2band, output n=Ps+r is, for every r&lt;P=n/L,
+     * an L-point transform of the inputs multiplied by e<sup>2&pi;ijr/n</sup>, so the
+     * cost is n(log<sub>2</sub>L+1) instead of n&middot;log<sub>2</sub>n.
+     * <br>xr, xi are scratch space of 2band+1 elements, zr, zi of L elements.</p>
+     */
+    private static void prunedInverse(double[] re, double[] im, int off, int n, int band,
+                                      double[] cos, double[] sin,
+                                      double[] xr, double[] xi, double[] zr, double[] zi) {
+        int L = zr.length;
+        int P = n / L;
+        int stride = cos.length*2 / n; // of the twiddles for n
+        for (int j=-band ; j<=band ; j++) {
+            int k = off + (j<0 ? j+n : j);
+            xr[band+j] = re[k];
+            xi[band+j] = im[k];
+        }
+
+        double scale = 1.0 / P; // the L-point transform divides by L
+        int half = n/2;
+        for (int r=0 ; r<P ; r++) {
+            zr[0] = xr[band];
+            zi[0] = xi[band];
+            for (int j=1, t=r ; j<=band ; j++, t=(t+r)%n) { // t = jr mod n
+                double wr, wi; // e^(2 pi i t/n), conjugate for -j
+                if( t<half ) {
+                    wr = cos[t*stride];
+                    wi = -sin[t*stride];
+                } else {
+                    wr = -cos[(t-half)*stride];
+                    wi = sin[(t-half)*stride];
+                }
+                double ar = xr[band+j], ai = xi[band+j];
+                zr[j] = ar*wr - ai*wi;
+                zi[j] = ar*wi + ai*wr;
+                ar = xr[band-j];
+                ai = xi[band-j];
+                zr[L-j] = ar*wr + ai*wi;
+                zi[L-j] = ai*wr - ar*wi;
+            }
+            for (int z=band+1 ; z<L-band ; z++) {
+                zr[z] = 0;
+                zi[z] = 0;
+            }
+            transform(zr, zi, 0, L, cos, sin, true);
+            for (int s=0 ; s<L ; s++) {
+                re[off+P*s+r] = zr[s]*scale;
+                im[off+P*s+r] = zi[s]*scale;
+            }
+        }
+    }
+
+    /**
+     * Matrix multiplication on flat arrays (implementing fft2(GF).*fft2(RRS)).
+     * <br>Result may be written over either multiplier.
+     *
+     * @param Xre   Real parts of multiplier
+     * @param Xim   Imaginary parts of multiplier
+     * @param Yre   Real parts of multiplier
+     * @param Yim   Imaginary parts of multiplier
+     * @param OutRe Real parts of result
+     * @param OutIm Imaginary parts of result
+     * @return      False if sizes do not match
+     */
+    public boolean ComplexArray_mult(double[] Xre, double[] Xim, double[] Yre, double[] Yim,
+                                     double[] OutRe, double[] OutIm) {
+        int size = N*M;
+        if( Xre.length<size || Xim.length<size || Yre.length<size || Yim.length<size )
+            return false;
+        if( OutRe.length<size || OutIm.length<size )
+            return false;
+
+        for (int k=0 ; k<size ; k++) {
+            double re = Xre[k]*Yre[k] - Xim[k]*Yim[k];
+            double im = Xre[k]*Yim[k] + Xim[k]*Yre[k];
+            OutRe[k] = re;
+            OutIm[k] = im;
+        }
+        return true;
+
+    }
+
+    /**
+     * Matrix multiplication on grids of any kind of storage, one row at a time.
+     * <br>Result may be written over either multiplier.
+     *
+     * @param Xre   Real parts of multiplier
+     * @param Xim   Imaginary parts of multiplier
+     * @param Yre   Real parts of multiplier
+     * @param Yim   Imaginary parts of multiplier
+     * @param OutRe Real parts of result
+     * @param OutIm Imaginary parts of result
+     * @return      False if sizes do not match
+     */
+    public boolean ComplexArray_mult(DoubleGrid Xre, DoubleGrid Xim, DoubleGrid Yre, DoubleGrid Yim,
+                                     DoubleGrid OutRe, DoubleGrid OutIm) {
+        DoubleGrid[] all = { Xre, Xim, Yre, Yim, OutRe, OutIm };
+        boolean heap = true;
+        for (DoubleGrid g : all) {
+            if( g.rows()!=N || g.cols()!=M )
+                return false;
+            heap &= g.array()!=null;
+        }
+        if( heap )
+            return ComplexArray_mult(Xre.array(), Xim.array(), Yre.array(), Yim.array(), OutRe.array(), OutIm.array());
+
+        double[] xr = new double[M], xi = new double[M], yr = new double[M], yi = new double[M];
+        for (int i=0 ; i<N ; i++) {
+            Xre.getRow(i, xr, 0);
+            Xim.getRow(i, xi, 0);
+            Yre.getRow(i, yr, 0);
+            Yim.getRow(i, yi, 0);
+            for (int j=0 ; j<M ; j++) {
+                double re = xr[j]*yr[j] - xi[j]*yi[j];
+                double im = xr[j]*yi[j] + xi[j]*yr[j];
+                xr[j] = re;
+                xi[j] = im;
+            }
+            OutRe.setRow(i, xr, 0);
+            OutIm.setRow(i, xi, 0);
+        }
+        return true;
+
+    }
+
     public void printArray(Complex[][] X) {
         for (int i=0 ; i<N ; i++) {
             for (int j=0 ; j<M ; j++) {
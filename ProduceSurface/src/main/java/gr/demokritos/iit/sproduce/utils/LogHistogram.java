@@ -0,0 +1,143 @@
+/**
+ * Copyright 2018 Antonia Tsili NCSR Demokritos
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package gr.demokritos.iit.sproduce.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * <p>Histogram of non-negative long values with logarithmic buckets.
+ * <br>Every power of two is split into 8 equal sub-buckets, so a reported
+ * percentile is within 12.5% of the recorded value. Recording is lock free
+ * and may be done by many threads at once.</p>
+ */
+public class LogHistogram {
+
+    /**
+     * Sub-buckets per power of two (as bits)
+     */
+    private static final int SUB_BITS = 3;
+    /**
+     * Sub-buckets per power of two
+     */
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    /**
+     * Enough buckets for any non-negative long
+     */
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_COUNT;
+
+    /**
+     * Number of values per bucket
+     */
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    /**
+     * Number of recorded values
+     */
+    private final AtomicLong total = new AtomicLong();
+    /**
+     * Sum of recorded values
+     */
+    private final AtomicLong sum = new AtomicLong();
+    /**
+     * Largest recorded value
+     */
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * <p>Add a value to the histogram. Negative values are counted as zero.</p>
+     *
+     * @param value     Value to record
+     */
+    public void record(long value) {
+        if( value<0 ) value = 0;
+        counts.incrementAndGet(bucketOf(value));
+        total.incrementAndGet();
+        sum.addAndGet(value);
+
+        long prev = max.get();
+        while( value>prev && !max.compareAndSet(prev,value) ) {
+            prev = max.get();
+        }
+    }
+
+    /**
+     * @return      Number of recorded values
+     */
+    public long count() {
+        return total.get();
+    }
+
+    /**
+     * @return      Largest recorded value
+     */
+    public long max() {
+        return max.get();
+    }
+
+    /**
+     * @return      Mean of recorded values
+     */
+    public double mean() {
+        long n = total.get();
+        return n==0 ? 0 : (double) sum.get() / n;
+    }
+
+    /**
+     * <p>Approximate value below which the given fraction of values falls</p>
+     *
+     * @param q     Fraction in [0,1] (0.5 for median)
+     * @return      Midpoint of the bucket holding the percentile
+     */
+    public long percentile(double q) {
+        long n = total.get();
+        if( n==0 ) return 0;
+
+        long rank = (long) Math.ceil(q*n);
+        if( rank<1 ) rank = 1;
+        long seen = 0;
+        for (int b=0; b<BUCKETS; b++) {
+            seen += counts.get(b);
+            if( seen>=rank ) {
+                long low = lowerBound(b);
+                long high = (b+1<BUCKETS) ? lowerBound(b+1) : Long.MAX_VALUE;
+                return Math.min(low + (high-low)/2, max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * <p>Bucket of value: exact below 2*SUB_COUNT, else by exponent and leading mantissa bits</p>
+     */
+    static int bucketOf(long value) {
+        if( value<SUB_COUNT ) return (int) value;
+        int exp = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) ((value >>> (exp-SUB_BITS)) & (SUB_COUNT-1));
+        return (exp-SUB_BITS+1)*SUB_COUNT + sub;
+    }
+
+    /**
+     * <p>Smallest value that falls in bucket</p>
+     */
+    static long lowerBound(int bucket) {
+        if( bucket<SUB_COUNT ) return bucket;
+        int exp = bucket/SUB_COUNT + SUB_BITS - 1;
+        long sub = bucket % SUB_COUNT;
+        return (SUB_COUNT + sub) << (exp-SUB_BITS);
+    }
+}
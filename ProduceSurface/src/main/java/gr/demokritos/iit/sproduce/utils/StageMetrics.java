@@ -0,0 +1,246 @@
+/**
+ * Copyright 2018 Antonia Tsili NCSR Demokritos
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package gr.demokritos.iit.sproduce.utils;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * <p>Wall time and allocated bytes spent in each stage of surface generation,
+ * kept separately for every number of points N.</p>
+ *
+ * <p>A {@link Timer} is started for every surface and its {@link Timer#lap(Stage)}
+ * is called at the end of each stage, so the cost is two clock reads per stage.
+ * Allocated bytes are those of the current thread, as reported by the JVM
+ * (zero where the JVM does not support it).
+ * <br>Results are aggregated into histograms and may be written as JSON or CSV.</p>
+ */
+public class StageMetrics {
+
+    /**
+     * Stages of surface generation
+     */
+    public enum Stage {
+        MESH_GRID, RANDOM_SURFACE, GAUSSIAN_FILTER, FORWARD_FFT, SPECTRUM_MULT, INVERSE_FFT, REAL_CHECK, RECURSIVE_FILTER, MOMENT_CORRECTION, PRINT
+    }
+
+    /**
+     * Instance that records nothing
+     */
+    public static final StageMetrics DISABLED = new StageMetrics(false);
+
+    /**
+     * Whether anything is recorded
+     */
+    private final boolean enabled;
+    /**
+     * Timer handed out when disabled
+     */
+    private final Timer idle;
+    /**
+     * Source of per thread allocated bytes (null if not supported)
+     */
+    private final com.sun.management.ThreadMXBean threads;
+    /**
+     * Histograms per (stage,N), key is stage ordinal in the high and N in the low 32 bits
+     */
+    private final ConcurrentHashMap<Long,LogHistogram[]> histograms = new ConcurrentHashMap<>();
+
+    /**
+     * <p>Initialization of enabled metrics</p>
+     */
+    public StageMetrics() {
+        this(true);
+    }
+
+    private StageMetrics(boolean enabled) {
+        this.enabled = enabled;
+        this.idle = new Timer(this, 0);
+
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if( enabled && bean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported() ) {
+            this.threads = (com.sun.management.ThreadMXBean) bean;
+            this.threads.setThreadAllocatedMemoryEnabled(true);
+        } else {
+            this.threads = null;
+        }
+    }
+
+    /**
+     * @return      Whether anything is recorded
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * <p>Start timing the stages of one surface on the current thread</p>
+     *
+     * @param N     Number of surface points (along square side)
+     * @return      Timer to call at the end of every stage
+     */
+    public Timer start(int N) {
+        if( !enabled ) return idle;
+        return new Timer(this, N);
+    }
+
+    /**
+     * Allocated bytes of current thread
+     */
+    private long allocatedBytes() {
+        if( threads==null ) return 0;
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * <p>Add one measurement of a stage</p>
+     */
+    private void record(Stage stage, int N, long nanos, long bytes) {
+        Long key = ((long) stage.ordinal() << 32) | (N & 0xffffffffL);
+        LogHistogram[] h = histograms.get(key);
+        if( h==null ) {
+            h = histograms.computeIfAbsent(key, k -> new LogHistogram[]{ new LogHistogram(), new LogHistogram() });
+        }
+        h[0].record(nanos);
+        h[1].record(bytes);
+    }
+
+    /**
+     * <p>Write results to file, as JSON if the name ends with ".json", otherwise as CSV</p>
+     *
+     * @param filename      Name of output file
+     * @throws IOException  If there was an error creating or writing to file
+     */
+    public void dump(String filename) throws IOException {
+        try (Writer writer = new FileWriter(filename)) {
+            if( filename.toLowerCase().endsWith(".json") )
+                dumpJson(writer);
+            else
+                dumpCsv(writer);
+        }
+    }
+
+    /**
+     * <p>Write results as a JSON object with one entry per (stage,N)</p>
+     *
+     * @param writer        Output
+     * @throws IOException
+     */
+    public void dumpJson(Writer writer) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"stages\":[");
+        boolean first = true;
+        for (Map.Entry<Long,LogHistogram[]> e : sorted().entrySet()) {
+            if( !first ) sb.append(',');
+            first = false;
+            sb.append("\n  {\"stage\":\"").append(stageOf(e.getKey())).append('"');
+            sb.append(",\"N\":").append(nOf(e.getKey()));
+            sb.append(",\"count\":").append(e.getValue()[0].count());
+            sb.append(",\"time_ns\":");
+            appendJson(sb, e.getValue()[0]);
+            sb.append(",\"allocated_bytes\":");
+            appendJson(sb, e.getValue()[1]);
+            sb.append('}');
+        }
+        sb.append("\n]}\n");
+        writer.write(sb.toString());
+    }
+
+    /**
+     * <p>Write results as CSV with one line per (stage,N)</p>
+     *
+     * @param writer        Output
+     * @throws IOException
+     */
+    public void dumpCsv(Writer writer) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        sb.append("stage,N,count,time_p50_ns,time_p99_ns,time_max_ns,time_mean_ns,")
+          .append("bytes_p50,bytes_p99,bytes_max,bytes_mean\n");
+        for (Map.Entry<Long,LogHistogram[]> e : sorted().entrySet()) {
+            LogHistogram t = e.getValue()[0];
+            LogHistogram b = e.getValue()[1];
+            sb.append(stageOf(e.getKey())).append(',').append(nOf(e.getKey())).append(',').append(t.count());
+            sb.append(',').append(t.percentile(0.5)).append(',').append(t.percentile(0.99));
+            sb.append(',').append(t.max()).append(',').append((long) t.mean());
+            sb.append(',').append(b.percentile(0.5)).append(',').append(b.percentile(0.99));
+            sb.append(',').append(b.max()).append(',').append((long) b.mean());
+            sb.append('\n');
+        }
+        writer.write(sb.toString());
+    }
+
+    private TreeMap<Long,LogHistogram[]> sorted() {
+        return new TreeMap<>(histograms);
+    }
+
+    private static Stage stageOf(long key) {
+        return Stage.values()[(int) (key >>> 32)];
+    }
+
+    private static int nOf(long key) {
+        return (int) key;
+    }
+
+    private static void appendJson(StringBuilder sb, LogHistogram h) {
+        sb.append("{\"p50\":").append(h.percentile(0.5));
+        sb.append(",\"p99\":").append(h.percentile(0.99));
+        sb.append(",\"max\":").append(h.max());
+        sb.append(",\"mean\":").append((long) h.mean()).append('}');
+    }
+
+    /**
+     * <p>Measures consecutive stages of one surface on one thread</p>
+     */
+    public static final class Timer {
+        private final StageMetrics owner;
+        private final int N;
+        private long lastNanos;
+        private long lastBytes;
+
+        private Timer(StageMetrics owner, int N) {
+            this.owner = owner;
+            this.N = N;
+            if( owner.enabled ) {
+                this.lastBytes = owner.allocatedBytes();
+                this.lastNanos = System.nanoTime();
+            }
+        }
+
+        /**
+         * <p>Record the time and allocations since the previous lap (or start) as the given stage</p>
+         *
+         * @param stage     Stage that has just finished
+         */
+        public void lap(Stage stage) {
+            if( !owner.enabled ) return;
+            long now = System.nanoTime();
+            long bytes = owner.allocatedBytes();
+            owner.record(stage, N, now-lastNanos, bytes-lastBytes);
+            // reread the clock so that reading the allocation counter is not charged to the next stage
+            lastBytes = owner.allocatedBytes();
+            lastNanos = System.nanoTime();
+        }
+    }
+}